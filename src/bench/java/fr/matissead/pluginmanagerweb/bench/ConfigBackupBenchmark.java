@@ -0,0 +1,151 @@
+package fr.matissead.pluginmanagerweb.bench;
+
+import fr.matissead.pluginmanagerweb.config.DatabaseConfig;
+import fr.matissead.pluginmanagerweb.model.ConfigBackup;
+import fr.matissead.pluginmanagerweb.persistence.ConfigBackupDao;
+import fr.matissead.pluginmanagerweb.persistence.DataSourceFactory;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Measures config backup storage size and reconstruction latency for successive revisions of
+ * a large file, each changing a few lines, with every backup stored in full (keyframe interval 1)
+ * and with delta chains. Run with
+ * {@code ./gradlew bench -PbenchMain=fr.matissead.pluginmanagerweb.bench.ConfigBackupBenchmark -PbenchArgs="revisions sizeMb interval"}.
+ */
+public final class ConfigBackupBenchmark {
+    private static final String PLUGIN = "BenchShop";
+    private static final String PATH = "messages.yml";
+
+    private ConfigBackupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int revisions = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int sizeMb = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int interval = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        System.out.printf("%d revisions of a %d MB file%n", revisions, sizeMb);
+
+        List<String> revisionsContent = generate(revisions, sizeMb * 1024 * 1024);
+        Path dir = Files.createTempDirectory("pmw-bench");
+        try {
+            run(dir.resolve("full"), 1, revisionsContent);
+            run(dir.resolve("delta"), interval, revisionsContent);
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    /**
+     * A YAML-like file, then revisions each editing, inserting or deleting a few lines.
+     */
+    private static List<String> generate(int revisions, int size) {
+        Random random = new Random(42);
+        List<String> lines = new ArrayList<>();
+        int length = 0;
+        for (int i = 0; length < size; i++) {
+            String line = "  item-" + i + ": \"&7Price: &e" + random.nextInt(100_000) + " coins &8(" + i % 97 + ")\"\n";
+            lines.add(line);
+            length += line.length();
+        }
+
+        List<String> contents = new ArrayList<>(revisions);
+        for (int revision = 0; revision < revisions; revision++) {
+            for (int edit = 0; edit < 3; edit++) {
+                int line = random.nextInt(lines.size());
+                switch (random.nextInt(3)) {
+                    case 0 -> lines.set(line, "  item-" + line + ": \"&7Price: &e" + random.nextInt(100_000) + " coins\"\n");
+                    case 1 -> lines.add(line, "  added-" + revision + "-" + edit + ": true\n");
+                    default -> lines.remove(line);
+                }
+            }
+            contents.add(String.join("", lines));
+        }
+        return contents;
+    }
+
+    private static void run(Path dir, int interval, List<String> contents) throws SQLException, IOException {
+        Files.createDirectories(dir);
+        YamlConfiguration yaml = new YamlConfiguration();
+        yaml.set("pluginmanager.database.type", "sqlite");
+        yaml.set("pluginmanager.database.sqlite_path", "bench.sqlite");
+        yaml.set("pluginmanager.database.backup_keyframe_interval", interval);
+        DataSourceFactory factory = new DataSourceFactory(new DatabaseConfig(yaml), dir.toFile());
+        try {
+            ConfigBackupDao dao = new ConfigBackupDao(factory.getDataSource(), factory.getWriteQueue(), factory.getDialect(),
+                    interval);
+
+            long[] ids = new long[contents.size()];
+            long start = System.nanoTime();
+            for (int i = 0; i < contents.size(); i++) {
+                ConfigBackup backup = new ConfigBackup(PLUGIN, PATH, contents.get(i));
+                dao.save(backup);
+                ids[i] = backup.getId();
+            }
+            double saveMillis = (System.nanoTime() - start) / 1e6 / contents.size();
+
+            // Reconstruct every revision, checking it against the original
+            long[] latencies = new long[contents.size()];
+            for (int i = 0; i < contents.size(); i++) {
+                long readStart = System.nanoTime();
+                ConfigBackup backup = dao.getById(ids[i]);
+                latencies[i] = System.nanoTime() - readStart;
+                if (backup == null || !contents.get(i).equals(backup.getContent())) {
+                    throw new IllegalStateException("Revision " + i + " was not rebuilt identically");
+                }
+            }
+            Arrays.sort(latencies);
+
+            Map<String, Object> stats = dao.getStorageStats();
+            System.out.printf("%-22s stored %8.1f MB of %8.1f MB, database file %8.1f MB, save %6.1f ms%n",
+                    interval == 1 ? "full copies" : "deltas, keyframe/" + interval,
+                    mb((long) stats.get("storedBytes")), mb((long) stats.get("logicalBytes")),
+                    mb(databaseBytes(factory)), saveMillis);
+            System.out.printf("%-22s getById p50 %6.1f ms, p99 %6.1f ms, max %6.1f ms%n", "",
+                    latencies[latencies.length / 2] / 1e6,
+                    latencies[(int) (latencies.length * 0.99)] / 1e6,
+                    latencies[latencies.length - 1] / 1e6);
+        } finally {
+            factory.close();
+        }
+    }
+
+    private static long databaseBytes(DataSourceFactory factory) throws SQLException {
+        try (Connection conn = factory.getConnection(); Statement stmt = conn.createStatement()) {
+            long pages = pragma(stmt, "page_count") - pragma(stmt, "freelist_count");
+            return pages * pragma(stmt, "page_size");
+        }
+    }
+
+    private static long pragma(Statement stmt, String name) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA " + name)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static double mb(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
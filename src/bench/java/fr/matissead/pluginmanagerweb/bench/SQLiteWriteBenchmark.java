@@ -0,0 +1,219 @@
+package fr.matissead.pluginmanagerweb.bench;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import fr.matissead.pluginmanagerweb.config.DatabaseConfig;
+import fr.matissead.pluginmanagerweb.persistence.DataSourceFactory;
+import fr.matissead.pluginmanagerweb.persistence.WriteQueue;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Measures audit-like insert throughput while other threads keep querying the same table.
+ * <p>
+ * Compares the previous setup (one 10-connection pool in rollback-journal mode, every thread
+ * committing its own insert) with WAL mode, the single-writer {@link WriteQueue} and the
+ * query-only read pool. Run with {@code ./gradlew bench -PbenchArgs="writers readers seconds"}.
+ */
+public final class SQLiteWriteBenchmark {
+    private static final String INSERT_SQL =
+            "INSERT INTO audit_logs (timestamp, user, action, target, ip_address, metadata, success) " +
+            "VALUES (?, ?, ?, ?, ?, ?, 1)";
+    private static final String QUERY_SQL =
+            "SELECT * FROM audit_logs WHERE user = ? ORDER BY timestamp DESC LIMIT 50";
+
+    private SQLiteWriteBenchmark() {
+    }
+
+    /**
+     * Performs one insert, however the mode under test commits it.
+     */
+    @FunctionalInterface
+    private interface Inserter {
+        void insert(int thread, long sequence) throws SQLException;
+    }
+
+    private record Result(String mode, long writes, long reads, long busyErrors, double seconds) {
+        void print() {
+            System.out.printf("%-32s %10.0f writes/s %10.0f reads/s %8d SQLITE_BUSY%n",
+                    mode, writes / seconds, reads / seconds, busyErrors);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int writers = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int readers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        System.out.printf("%d writer threads, %d reader threads, %d s per mode%n", writers, readers, seconds);
+
+        Path dir = Files.createTempDirectory("pmw-bench");
+        try {
+            legacy(dir.resolve("legacy"), writers, readers, seconds).print();
+            writeQueue(dir.resolve("wal"), writers, readers, seconds).print();
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    /**
+     * The setup used before the write queue: shared pool, default journal mode, autocommit inserts.
+     */
+    private static Result legacy(Path dir, int writers, int readers, int seconds) throws Exception {
+        Files.createDirectories(dir);
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setJdbcUrl("jdbc:sqlite:" + dir.resolve("bench.sqlite"));
+        hikariConfig.setDriverClassName("org.sqlite.JDBC");
+        hikariConfig.setMaximumPoolSize(10);
+        hikariConfig.setConnectionTestQuery("SELECT 1");
+        try (HikariDataSource pool = new HikariDataSource(hikariConfig)) {
+            try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+                stmt.execute("""
+                    CREATE TABLE audit_logs (
+                        id INTEGER PRIMARY KEY AUTOINCREMENT,
+                        timestamp TEXT NOT NULL,
+                        user TEXT,
+                        action TEXT NOT NULL,
+                        target TEXT,
+                        ip_address TEXT,
+                        metadata TEXT,
+                        success INTEGER NOT NULL DEFAULT 1
+                    )
+                    """);
+                stmt.execute("CREATE INDEX idx_audit_logs_user ON audit_logs(user)");
+            }
+            return run("pool of 10, rollback journal", writers, readers, seconds, pool,
+                    (thread, sequence) -> {
+                        try (Connection conn = pool.getConnection();
+                             PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+                            bind(stmt, thread, sequence);
+                            stmt.executeUpdate();
+                        }
+                    });
+        }
+    }
+
+    /**
+     * WAL mode with every insert committed by the single writer connection.
+     */
+    private static Result writeQueue(Path dir, int writers, int readers, int seconds) throws Exception {
+        YamlConfiguration yaml = new YamlConfiguration();
+        yaml.set("pluginmanager.database.type", "sqlite");
+        yaml.set("pluginmanager.database.sqlite_path", "bench.sqlite");
+        DataSourceFactory factory = new DataSourceFactory(new DatabaseConfig(yaml), dir.toFile());
+        try {
+            WriteQueue queue = factory.getWriteQueue();
+            Result result = run("WAL, write queue + read pool", writers, readers, seconds, factory.getDataSource(),
+                    (thread, sequence) -> queue.execute(conn -> {
+                        try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+                            bind(stmt, thread, sequence);
+                            return stmt.executeUpdate();
+                        }
+                    }));
+            System.out.println("  write queue: " + queue.getStats());
+            return result;
+        } finally {
+            factory.close();
+        }
+    }
+
+    private static Result run(String mode, int writers, int readers, int seconds,
+                              DataSource readSource, Inserter inserter) throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder writes = new LongAdder();
+        LongAdder reads = new LongAdder();
+        LongAdder busy = new LongAdder();
+        CountDownLatch done = new CountDownLatch(writers + readers);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int w = 0; w < writers; w++) {
+            int thread = w;
+            threads.add(new Thread(() -> {
+                long sequence = 0;
+                while (running.get()) {
+                    try {
+                        inserter.insert(thread, sequence++);
+                        writes.increment();
+                    } catch (SQLException e) {
+                        if (isBusy(e)) {
+                            busy.increment();
+                        } else {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                }
+                done.countDown();
+            }, "bench-writer-" + w));
+        }
+        for (int r = 0; r < readers; r++) {
+            int thread = r;
+            threads.add(new Thread(() -> {
+                while (running.get()) {
+                    try (Connection conn = readSource.getConnection();
+                         PreparedStatement stmt = conn.prepareStatement(QUERY_SQL)) {
+                        stmt.setString(1, "user-" + (thread % Math.max(1, writers)));
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            while (rs.next()) {
+                                rs.getString("action");
+                            }
+                        }
+                        reads.increment();
+                    } catch (SQLException e) {
+                        if (isBusy(e)) {
+                            busy.increment();
+                        } else {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                }
+                done.countDown();
+            }, "bench-reader-" + r));
+        }
+
+        long start = System.nanoTime();
+        threads.forEach(Thread::start);
+        TimeUnit.SECONDS.sleep(seconds);
+        running.set(false);
+        done.await();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        return new Result(mode, writes.sum(), reads.sum(), busy.sum(), elapsed);
+    }
+
+    private static void bind(PreparedStatement stmt, int thread, long sequence) throws SQLException {
+        stmt.setString(1, Instant.now().toString());
+        stmt.setString(2, "user-" + thread);
+        stmt.setString(3, "CONFIG_UPDATE");
+        stmt.setString(4, "Plugin" + (sequence % 50));
+        stmt.setString(5, "127.0.0.1");
+        stmt.setString(6, "{\"sequence\":" + sequence + "}");
+    }
+
+    private static boolean isBusy(SQLException e) {
+        String message = e.getMessage();
+        return message != null && (message.contains("SQLITE_BUSY") || message.contains("database is locked"));
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
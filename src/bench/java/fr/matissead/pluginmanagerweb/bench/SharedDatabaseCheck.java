@@ -0,0 +1,192 @@
+package fr.matissead.pluginmanagerweb.bench;
+
+import fr.matissead.pluginmanagerweb.config.AuditConfig;
+import fr.matissead.pluginmanagerweb.config.DatabaseConfig;
+import fr.matissead.pluginmanagerweb.model.AuditLog;
+import fr.matissead.pluginmanagerweb.model.ConfigBackup;
+import fr.matissead.pluginmanagerweb.model.ConfigBackupSummary;
+import fr.matissead.pluginmanagerweb.persistence.AuditLogDao;
+import fr.matissead.pluginmanagerweb.persistence.AuditQuery;
+import fr.matissead.pluginmanagerweb.persistence.ConfigBackupDao;
+import fr.matissead.pluginmanagerweb.persistence.DataSourceFactory;
+import fr.matissead.pluginmanagerweb.persistence.SqlDialect;
+import fr.matissead.pluginmanagerweb.persistence.WriteQueue;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Runs the audit, config backup and metric queries against a database server and checks their
+ * results, timing the writes. Point it at a scratch database, for instance one launched with
+ * {@code docker run --rm -p 5432:5432 -e POSTGRES_PASSWORD=test postgres:16}, and run
+ * {@code ./gradlew bench -PbenchMain=fr.matissead.pluginmanagerweb.bench.SharedDatabaseCheck
+ * -PbenchArgs="postgresql localhost 5432 postgres postgres test"}. Rows are tagged with a random
+ * run id and left in place, so the check can run again on the same database.
+ */
+public final class SharedDatabaseCheck {
+    private SharedDatabaseCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 6) {
+            System.err.println("Arguments: type host port database username password [auditEntries]");
+            System.exit(2);
+        }
+        int entries = args.length > 6 ? Integer.parseInt(args[6]) : 10_000;
+        String run = UUID.randomUUID().toString().substring(0, 8);
+
+        YamlConfiguration yaml = new YamlConfiguration();
+        yaml.set("pluginmanager.database.type", args[0]);
+        yaml.set("pluginmanager.database.server_id", "check-" + run);
+        yaml.set("pluginmanager.database.network.host", args[1]);
+        yaml.set("pluginmanager.database.network.port", Integer.parseInt(args[2]));
+        yaml.set("pluginmanager.database.network.database", args[3]);
+        yaml.set("pluginmanager.database.network.username", args[4]);
+        yaml.set("pluginmanager.database.network.password", args[5]);
+        yaml.set("pluginmanager.audit.retention.max_age_days", 0);
+
+        Path dir = Files.createTempDirectory("pmw-check");
+        DataSourceFactory factory = new DataSourceFactory(new DatabaseConfig(yaml), dir.toFile());
+        try {
+            System.out.printf("%s, run %s%n", factory.getDialect().getDisplayName(), run);
+            checkAudit(factory, new AuditConfig(yaml), dir, run, entries);
+            checkBackups(factory, run);
+            checkMetricUpsert(factory, run);
+            System.out.println("write queue: " + factory.getWriteQueue().getStats());
+        } finally {
+            factory.close();
+            deleteRecursively(dir);
+        }
+    }
+
+    private static void checkAudit(DataSourceFactory factory, AuditConfig config, Path dir, String run, int entries)
+            throws SQLException, IOException {
+        AuditLogDao dao = new AuditLogDao(factory.getDataSource(), factory.getWriteQueue(), factory.getDialect(),
+                config, dir.toFile(), "check-" + run);
+        long start = System.nanoTime();
+        long base = System.currentTimeMillis();
+        for (int i = 0; i < entries; i++) {
+            AuditLog log = new AuditLog("user-" + run, i % 2 == 0 ? "CONFIG_SAVE" : "PLUGIN_RELOAD",
+                    "Plugin" + (i % 10) + "/config.yml", "127.0.0.1");
+            log.setTimestamp(Instant.ofEpochMilli(base + i / 4));
+            dao.save(log);
+        }
+        // Closing writes the queued entries
+        dao.close();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("audit: %d entries written in %.2f s (%.0f entries/s)%n", entries, seconds, entries / seconds);
+
+        // Walk every page of the user's entries, checking the (timestamp, id) order across pages
+        AuditQuery query = new AuditQuery(null, "Plugin1", "user-" + run, null, null, null, null, null, 500);
+        List<long[]> keys = new ArrayList<>();
+        while (true) {
+            List<long[]> page = new ArrayList<>();
+            dao.forEach(query, log -> page.add(new long[] {log.getTimestamp().toEpochMilli(), log.getId()}));
+            keys.addAll(page);
+            if (page.size() < query.limit()) {
+                break;
+            }
+            long[] last = page.get(page.size() - 1);
+            query = query.continueBefore(last[0], last[1], query.limit());
+        }
+        check(keys.size() == entries / 10 + (entries % 10 > 1 ? 1 : 0), "target prefix pages returned " + keys.size() + " entries");
+        for (int i = 1; i < keys.size(); i++) {
+            long[] previous = keys.get(i - 1);
+            long[] current = keys.get(i);
+            check(current[0] < previous[0] || (current[0] == previous[0] && current[1] < previous[1]),
+                    "audit pages are not in (timestamp, id) order at row " + i);
+        }
+        System.out.printf("audit: %d entries read back in %d pages%n", keys.size(), keys.size() / 500 + 1);
+    }
+
+    private static void checkBackups(DataSourceFactory factory, String run) throws SQLException {
+        ConfigBackupDao dao = new ConfigBackupDao(factory.getDataSource(), factory.getWriteQueue(), factory.getDialect(), 4);
+        String plugin = "Check-" + run;
+        StringBuilder content = new StringBuilder();
+        for (int line = 0; line < 2000; line++) {
+            content.append("key-").append(line).append(": value ").append(line).append('\n');
+        }
+        List<String> revisions = new ArrayList<>();
+        for (int revision = 0; revision < 10; revision++) {
+            content.append("revision-").append(revision).append(": true\n");
+            revisions.add(content.toString());
+            ConfigBackup backup = new ConfigBackup(plugin, "config.yml", content.toString());
+            backup.setTimestamp(Instant.ofEpochMilli(System.currentTimeMillis() + revision));
+            dao.save(backup);
+            check(backup.getId() != null, "backup " + revision + " was not saved");
+        }
+
+        List<ConfigBackupSummary> summaries = dao.listSummaries(plugin, "config.yml", null, null, 100);
+        check(summaries.size() == revisions.size(), "listed " + summaries.size() + " backups");
+        for (int i = 0; i < summaries.size(); i++) {
+            ConfigBackup backup = dao.getMetadataById(summaries.get(i).id());
+            String expected = revisions.get(revisions.size() - 1 - i);
+            check(expected.equals(new String(dao.getContent(backup), StandardCharsets.UTF_8)),
+                    "backup " + backup.getId() + " was not rebuilt identically");
+        }
+        for (ConfigBackupSummary summary : summaries) {
+            check(dao.delete(summary.id()), "backup " + summary.id() + " was not deleted");
+        }
+        System.out.printf("backups: %d revisions saved as deltas, rebuilt and deleted%n", revisions.size());
+    }
+
+    private static void checkMetricUpsert(DataSourceFactory factory, String run) throws SQLException {
+        SqlDialect dialect = factory.getDialect();
+        String upsert = dialect.upsert("plugin_metrics",
+                List.of("server_id", "plugin_name", "metric_key", "metric_value", "metric_type", "timestamp"),
+                List.of("server_id", "plugin_name", "metric_key"));
+        WriteQueue queue = factory.getWriteQueue();
+        for (int value = 1; value <= 3; value++) {
+            int written = value;
+            queue.execute(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(upsert)) {
+                    stmt.setString(1, "check-" + run);
+                    stmt.setString(2, "Check");
+                    stmt.setString(3, "counter");
+                    stmt.setString(4, String.valueOf(written));
+                    stmt.setString(5, "COUNTER");
+                    stmt.setLong(6, System.currentTimeMillis());
+                    return stmt.executeUpdate();
+                }
+            });
+        }
+        try (Connection conn = factory.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT COUNT(*), MAX(metric_value) FROM plugin_metrics WHERE server_id = ?")) {
+            stmt.setString(1, "check-" + run);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                check(rs.getInt(1) == 1 && "3".equals(rs.getString(2)),
+                        "upserts left " + rs.getInt(1) + " rows, value " + rs.getString(2));
+            }
+        }
+        System.out.println("metrics: upsert updated the row in place");
+    }
+
+    private static void check(boolean condition, String failure) {
+        if (!condition) {
+            throw new IllegalStateException(failure);
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package fr.matissead.pluginmanagerweb;
 
+import fr.matissead.pluginmanagerweb.api.Counter;
+import fr.matissead.pluginmanagerweb.api.Gauge;
+import fr.matissead.pluginmanagerweb.api.Histogram;
 import fr.matissead.pluginmanagerweb.api.PluginManagerWebAPI;
 import fr.matissead.pluginmanagerweb.config.PluginManagerConfig;
 import fr.matissead.pluginmanagerweb.github.GitHubClient;
@@ -15,6 +18,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.time.Duration;
 import java.util.Map;
 
 /**
@@ -25,6 +29,53 @@ import java.util.Map;
  */
 public class PluginManagerWeb extends JavaPlugin implements PluginManagerWebAPI {
 
+    // Handles returned while the metrics service is not running
+    private static final Counter NOOP_COUNTER = new Counter() {
+        @Override
+        public void increment() {
+        }
+
+        @Override
+        public void add(long delta) {
+        }
+
+        @Override
+        public long get() {
+            return 0;
+        }
+    };
+    private static final Gauge NOOP_GAUGE = new Gauge() {
+        @Override
+        public void set(long value) {
+        }
+
+        @Override
+        public void set(double value) {
+        }
+
+        @Override
+        public void add(double delta) {
+        }
+
+        @Override
+        public double get() {
+            return Double.NaN;
+        }
+    };
+    private static final Histogram NOOP_HISTOGRAM = new Histogram() {
+        @Override
+        public void record(long value) {
+        }
+
+        @Override
+        public void recordDuration(Duration duration) {
+        }
+
+        @Override
+        public void recordNanos(long nanos) {
+        }
+    };
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private WebServer webServer;
     private PluginManagerConfig pluginConfig;
@@ -59,13 +110,18 @@ public class PluginManagerWeb extends JavaPlugin implements PluginManagerWebAPI
 
             // Initialize database
             dataSourceFactory = new DataSourceFactory(pluginConfig.getDatabaseConfig(), getDataFolder());
-            auditLogDao = new AuditLogDao(dataSourceFactory.getDataSource());
-            configBackupDao = new ConfigBackupDao(dataSourceFactory.getDataSource());
+            auditLogDao = new AuditLogDao(dataSourceFactory.getDataSource(), dataSourceFactory.getWriteQueue(),
+                    dataSourceFactory.getDialect(), pluginConfig.getAuditConfig(), getDataFolder(),
+                    pluginConfig.getDatabaseConfig().getServerId());
+            configBackupDao = new ConfigBackupDao(dataSourceFactory.getDataSource(), dataSourceFactory.getWriteQueue(),
+                    dataSourceFactory.getDialect(), pluginConfig.getDatabaseConfig().getBackupKeyframeInterval());
 
             // Initialize services
             tokenService = new TokenService(pluginConfig.getAuthConfig());
-            metricsService = new PluginMetricsService(dataSourceFactory.getDataSource());
-            githubClient = new GitHubClient(pluginConfig.getGithubConfig());
+            metricsService = new PluginMetricsService(dataSourceFactory.getDataSource(),
+                    dataSourceFactory.getWriteQueue(), dataSourceFactory.getDialect(),
+                    pluginConfig.getDatabaseConfig().getServerId(), pluginConfig.getMetricsConfig());
+            githubClient = new GitHubClient(pluginConfig.getGithubConfig(), getDataFolder());
 
             // Start web server
             webServer = new WebServer(
@@ -75,7 +131,8 @@ public class PluginManagerWeb extends JavaPlugin implements PluginManagerWebAPI
                 metricsService,
                 githubClient,
                 auditLogDao,
-                configBackupDao
+                configBackupDao,
+                dataSourceFactory.getInstrumentation()
             );
             webServer.start();
             
@@ -99,6 +156,15 @@ public class PluginManagerWeb extends JavaPlugin implements PluginManagerWebAPI
             webServer.stop();
         }
 
+        // Write queued audit entries and buffered metric updates before the pool goes away
+        if (auditLogDao != null) {
+            auditLogDao.close();
+        }
+
+        if (metricsService != null) {
+            metricsService.shutdown();
+        }
+
         // Close database connections
         if (dataSourceFactory != null) {
             dataSourceFactory.close();
@@ -116,6 +182,44 @@ public class PluginManagerWeb extends JavaPlugin implements PluginManagerWebAPI
         }
     }
 
+    @Override
+    public Counter counter(String pluginName, String metricKey) {
+        if (metricsService != null) {
+            return metricsService.counter(pluginName, metricKey);
+        }
+        return NOOP_COUNTER;
+    }
+
+    @Override
+    public Gauge gauge(String pluginName, String metricKey) {
+        if (metricsService != null) {
+            return metricsService.gauge(pluginName, metricKey);
+        }
+        return NOOP_GAUGE;
+    }
+
+    @Override
+    public Histogram histogram(String pluginName, String metricKey) {
+        if (metricsService != null) {
+            return metricsService.histogram(pluginName, metricKey);
+        }
+        return NOOP_HISTOGRAM;
+    }
+
+    @Override
+    public void recordValue(String pluginName, String metricKey, long value) {
+        if (metricsService != null) {
+            metricsService.histogram(pluginName, metricKey).record(value);
+        }
+    }
+
+    @Override
+    public void recordDuration(String pluginName, String metricKey, Duration duration) {
+        if (metricsService != null) {
+            metricsService.histogram(pluginName, metricKey).recordDuration(duration);
+        }
+    }
+
     @Override
     public void recordEvent(String pluginName, String eventType, Map<String, Object> payload) {
         if (metricsService != null) {
@@ -8,9 +8,13 @@ import fr.matissead.pluginmanagerweb.api.controllers.*;
 import fr.matissead.pluginmanagerweb.api.websocket.EventsWebSocketHandler;
 import fr.matissead.pluginmanagerweb.config.PluginManagerConfig;
 import fr.matissead.pluginmanagerweb.github.GitHubClient;
+import fr.matissead.pluginmanagerweb.github.ReleasePoller;
+import fr.matissead.pluginmanagerweb.github.UpdateChecker;
+import fr.matissead.pluginmanagerweb.github.UpdateDownloader;
 import fr.matissead.pluginmanagerweb.metrics.PluginMetricsService;
 import fr.matissead.pluginmanagerweb.persistence.AuditLogDao;
 import fr.matissead.pluginmanagerweb.persistence.ConfigBackupDao;
+import fr.matissead.pluginmanagerweb.persistence.JdbcInstrumentation;
 import fr.matissead.pluginmanagerweb.security.AuthMiddleware;
 import fr.matissead.pluginmanagerweb.security.TokenService;
 import io.javalin.Javalin;
@@ -40,39 +44,56 @@ public class WebServer {
     private final PluginController pluginController;
     private final ConfigController configController;
     private final MetricsController metricsController;
+    private final AuditController auditController;
     
     // WebSocket handlers
     private final EventsWebSocketHandler eventsHandler;
     
+    private final ReleasePoller releasePoller;
+    private final UpdateChecker updateChecker;
+    private final UpdateDownloader updateDownloader;
+    
     // Middleware
     private final AuthMiddleware authMiddleware;
 
     public WebServer(PluginManagerWeb plugin, PluginManagerConfig config, TokenService tokenService,
                     PluginMetricsService metricsService, GitHubClient githubClient,
-                    AuditLogDao auditLogDao, ConfigBackupDao configBackupDao) {
+                    AuditLogDao auditLogDao, ConfigBackupDao configBackupDao,
+                    JdbcInstrumentation jdbcInstrumentation) {
         this.plugin = plugin;
         this.config = config;
         this.gson = new Gson();
         
-        // Initialize controllers
-        this.serverController = new ServerController();
-        this.pluginController = new PluginController(metricsService, githubClient, 
-                                                      config.getGithubConfig(), auditLogDao);
-        this.configController = new ConfigController(configBackupDao, auditLogDao);
-        this.metricsController = new MetricsController(metricsService);
+        // Provide a custom Jackson ObjectMapper that supports Java Time types
+        ObjectMapper objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        JsonResponseCache responseCache = new JsonResponseCache(objectMapper);
         
         // Initialize WebSocket handlers
         this.eventsHandler = new EventsWebSocketHandler();
         
+        // New releases of tracked repositories are pushed to the dashboard
+        this.releasePoller = new ReleasePoller(githubClient, config.getGithubConfig(), (repo, release) ->
+                eventsHandler.broadcastNewRelease(repo.substring(repo.lastIndexOf('/') + 1), release.getTag(), repo));
+        
+        this.updateChecker = new UpdateChecker(releasePoller, config.getGithubConfig());
+        
+        // Initialize controllers
+        this.serverController = new ServerController();
+        this.updateDownloader = new UpdateDownloader(githubClient);
+        this.pluginController = new PluginController(metricsService, githubClient, releasePoller, updateChecker,
+                                                      updateDownloader, eventsHandler, config.getGithubConfig(),
+                                                      auditLogDao, responseCache);
+        this.configController = new ConfigController(configBackupDao, auditLogDao);
+        this.auditController = new AuditController(auditLogDao);
+        this.metricsController = new MetricsController(metricsService, auditLogDao, configBackupDao, jdbcInstrumentation,
+                                                        responseCache);
+        
         // Initialize middleware
         this.authMiddleware = new AuthMiddleware(tokenService, config.getWebConfig(), auditLogDao);
         
         // Create Javalin app
-        // Provide a custom Jackson ObjectMapper that supports Java Time types
-        ObjectMapper objectMapper = new ObjectMapper()
-                .registerModule(new JavaTimeModule())
-                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
-
         this.app = Javalin.create(javalinConfig -> {
             javalinConfig.jsonMapper(new JavalinJackson(objectMapper));
             javalinConfig.http.defaultContentType = "application/json";
@@ -111,6 +132,11 @@ public class WebServer {
         app.before("/api/server", authMiddleware);
         app.before("/api/plugins/*", authMiddleware);
         app.before("/api/metrics/*", authMiddleware);
+        app.before("/api/audit", authMiddleware);
+        app.before("/api/updates", authMiddleware);
+        if (config.getMetricsConfig().isPrometheusEnabled() && config.getMetricsConfig().isPrometheusRequireAuth()) {
+            app.before("/metrics", authMiddleware);
+        }
 
         // Authenticated routes - server info
         app.get("/api/server", serverController::serverInfo);
@@ -120,17 +146,34 @@ public class WebServer {
         app.get("/api/plugins/{name}", pluginController::getPlugin);
         app.post("/api/plugins/{name}/action", pluginController::performAction);
         app.get("/api/plugins/{name}/releases", pluginController::getReleases);
+        app.post("/api/plugins/{name}/update", pluginController::downloadUpdate);
+        app.get("/api/updates", pluginController::getUpdates);
         
         // Authenticated routes - configuration
         app.get("/api/plugins/{name}/config", configController::listConfigFiles);
         app.get("/api/plugins/{name}/config/file", configController::getConfigFile);
         app.post("/api/plugins/{name}/config/file", configController::saveConfigFile);
         app.get("/api/plugins/{name}/config/backups", configController::listBackups);
+        app.get("/api/plugins/{name}/config/backups/{id}/content", configController::getBackupContent);
         app.post("/api/plugins/{name}/config/rollback", configController::rollbackConfig);
         
         // Authenticated routes - metrics
         app.get("/api/plugins/{name}/metrics", metricsController::getPluginMetrics);
+        app.get("/api/plugins/{name}/metrics/history", metricsController::getMetricHistory);
+        app.get("/api/plugins/{name}/metrics/histograms", metricsController::getPluginHistograms);
+        app.get("/api/plugins/{name}/events", metricsController::getPluginEvents);
         app.get("/api/metrics/overview", metricsController::getMetricsOverview);
+        app.get("/api/metrics/persistence", metricsController::getPersistenceStats);
+        app.get("/api/metrics/memory", metricsController::getMemoryStats);
+        app.get("/api/metrics/db", metricsController::getDatabaseStats);
+        
+        // Authenticated routes - audit trail
+        app.get("/api/audit", auditController::listAuditLogs);
+        
+        // Prometheus / OpenMetrics scrape endpoint
+        if (config.getMetricsConfig().isPrometheusEnabled()) {
+            app.get("/metrics", metricsController::scrapeMetrics);
+        }
         
         // WebSocket - events (consider adding auth here too)
         app.ws("/ws/events", ws -> {
@@ -148,6 +191,10 @@ public class WebServer {
     }
 
     private void registerExceptionHandlers() {
+        // Requests rejected by the auth middleware, before their route handler runs
+        app.exception(AuthMiddleware.AccessDeniedException.class, (e, ctx) ->
+                ctx.status(e.getStatus()).json(e.toResponse()));
+        
         // Global exception handler
         app.exception(Exception.class, (e, ctx) -> {
             logger.error("Unhandled exception in request: {} {}", ctx.method(), ctx.path(), e);
@@ -181,9 +228,15 @@ public class WebServer {
         // can be configured via Jetty server if needed. For simplicity, we start on the configured port.
         app.start(port);
         logger.info("Web server started on {}:{}", bindAddress, port);
+        if (config.getGithubConfig().isPollerEnabled()) {
+            releasePoller.start();
+        }
     }
 
     public void stop() {
+        releasePoller.close();
+        updateChecker.close();
+        updateDownloader.close();
         try {
             app.stop();
             logger.info("Web server stopped");
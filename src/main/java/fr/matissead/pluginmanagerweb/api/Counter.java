@@ -0,0 +1,29 @@
+package fr.matissead.pluginmanagerweb.api;
+
+/**
+ * Pre-resolved handle to a counter metric.
+ * Obtained once through {@link PluginManagerWebAPI#counter(String, String)} and kept by the caller,
+ * so hot paths avoid the string-keyed lookups of {@link PluginManagerWebAPI#incrementCounter}.
+ * <p>
+ * Updates are lock-free and safe to call from any thread, including the main server thread.
+ * A handle stays valid until the same metric key is reused with a different metric type.
+ */
+public interface Counter {
+    
+    /**
+     * Increments the counter by one.
+     */
+    void increment();
+    
+    /**
+     * Adds the given amount to the counter.
+     * 
+     * @param delta Amount to add (use negative for decrement)
+     */
+    void add(long delta);
+    
+    /**
+     * Returns the current value of the counter.
+     */
+    long get();
+}
@@ -0,0 +1,33 @@
+package fr.matissead.pluginmanagerweb.api;
+
+/**
+ * Pre-resolved handle to a numeric gauge metric (a value that can go up or down).
+ * Obtained once through {@link PluginManagerWebAPI#gauge(String, String)} and kept by the caller.
+ * <p>
+ * Updates are lock-free and safe to call from any thread, including the main server thread.
+ * A handle stays valid until the same metric key is reused with a different metric type.
+ */
+public interface Gauge {
+    
+    /**
+     * Sets the gauge to the given value.
+     */
+    void set(long value);
+    
+    /**
+     * Sets the gauge to the given value.
+     */
+    void set(double value);
+    
+    /**
+     * Atomically adds the given amount to the gauge.
+     * 
+     * @param delta Amount to add (use negative to subtract)
+     */
+    void add(double delta);
+    
+    /**
+     * Returns the current value of the gauge, or NaN if it was never set.
+     */
+    double get();
+}
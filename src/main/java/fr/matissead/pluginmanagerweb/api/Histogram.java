@@ -0,0 +1,32 @@
+package fr.matissead.pluginmanagerweb.api;
+
+import java.time.Duration;
+
+/**
+ * Pre-resolved handle to a histogram metric, used for latency-style data
+ * such as command execution time or database call time.
+ * Obtained once through {@link PluginManagerWebAPI#histogram(String, String)} and kept by the caller.
+ * <p>
+ * Recording is lock-free and safe to call from any thread. Memory per histogram is fixed,
+ * and percentiles are reported with a relative error of a few percent.
+ * <p>
+ * A histogram holds either values or durations, whichever is recorded first; recordings in
+ * the other unit are dropped. Use separate metric keys for both.
+ */
+public interface Histogram {
+    
+    /**
+     * Records a non-negative value (e.g. a size or a count).
+     */
+    void record(long value);
+    
+    /**
+     * Records a duration. Percentiles of duration histograms are reported in milliseconds.
+     */
+    void recordDuration(Duration duration);
+    
+    /**
+     * Records a duration in nanoseconds, e.g. the difference of two {@link System#nanoTime()} calls.
+     */
+    void recordNanos(long nanos);
+}
@@ -1,5 +1,6 @@
 package fr.matissead.pluginmanagerweb.api;
 
+import java.time.Duration;
 import java.util.Map;
 
 /**
@@ -14,6 +15,17 @@ import java.util.Map;
  *     api.incrementCounter("MyPlugin", "commands_executed", 1);
  * }
  * </pre>
+ * 
+ * For metrics updated on hot paths, resolve a handle once and keep it:
+ * <pre>
+ * Counter commands = api.counter("MyPlugin", "commands_executed");
+ * commands.increment();
+ * 
+ * Histogram commandTime = api.histogram("MyPlugin", "command_time");
+ * long start = System.nanoTime();
+ * // ...
+ * commandTime.recordNanos(System.nanoTime() - start);
+ * </pre>
  */
 public interface PluginManagerWebAPI {
     
@@ -26,6 +38,57 @@ public interface PluginManagerWebAPI {
      */
     void incrementCounter(String pluginName, String metricKey, long delta);
     
+    /**
+     * Returns a pre-resolved counter handle.
+     * The handle updates the same metric as {@link #incrementCounter(String, String, long)}
+     * without any lookup or allocation per call.
+     * 
+     * @param pluginName Name of the plugin reporting the metric
+     * @param metricKey Key identifying the metric (e.g., "commands_executed")
+     * @return Counter handle to keep and reuse
+     */
+    Counter counter(String pluginName, String metricKey);
+    
+    /**
+     * Returns a pre-resolved numeric gauge handle.
+     * The handle updates the same metric as {@link #setGauge(String, String, Object)}
+     * without any lookup or allocation per call.
+     * 
+     * @param pluginName Name of the plugin reporting the metric
+     * @param metricKey Key identifying the metric
+     * @return Gauge handle to keep and reuse
+     */
+    Gauge gauge(String pluginName, String metricKey);
+    
+    /**
+     * Returns a pre-resolved histogram handle, used for latencies and other distributions.
+     * Percentiles (p50, p90, p99, max) are reported for the last minute, the last five minutes
+     * and since startup. Histograms are kept in memory only.
+     * 
+     * @param pluginName Name of the plugin reporting the metric
+     * @param metricKey Key identifying the metric (e.g., "command_time")
+     * @return Histogram handle to keep and reuse
+     */
+    Histogram histogram(String pluginName, String metricKey);
+    
+    /**
+     * Records a value into a histogram metric.
+     * 
+     * @param pluginName Name of the plugin reporting the metric
+     * @param metricKey Key identifying the metric
+     * @param value Non-negative value to record
+     */
+    void recordValue(String pluginName, String metricKey, long value);
+    
+    /**
+     * Records a duration into a histogram metric. Percentiles are reported in milliseconds.
+     * 
+     * @param pluginName Name of the plugin reporting the metric
+     * @param metricKey Key identifying the metric (e.g., "db_query_time")
+     * @param duration Measured duration
+     */
+    void recordDuration(String pluginName, String metricKey, Duration duration);
+    
     /**
      * Records a custom event for a plugin with optional metadata.
      * 
@@ -0,0 +1,190 @@
+package fr.matissead.pluginmanagerweb.api.controllers;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import fr.matissead.pluginmanagerweb.model.AuditLog;
+import fr.matissead.pluginmanagerweb.persistence.AuditLogDao;
+import fr.matissead.pluginmanagerweb.persistence.AuditQuery;
+import io.javalin.http.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+
+/**
+ * REST API controller for the audit trail.
+ * Pages are streamed from the database to the response, newest first.
+ */
+public class AuditController {
+    private static final Logger logger = LoggerFactory.getLogger(AuditController.class);
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 10_000;
+
+    private final AuditLogDao auditLogDao;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    public AuditController(AuditLogDao auditLogDao) {
+        this.auditLogDao = auditLogDao;
+    }
+
+    /**
+     * GET /api/audit?action=&target=&user=&success=&from=&to=&cursor=&limit= - Lists audit log entries.
+     * {@code target} matches a prefix, {@code from}/{@code to} accept ISO-8601 instants or epoch millis,
+     * and {@code cursor} is the {@code nextCursor} of the previous page.
+     */
+    public void listAuditLogs(Context ctx) throws IOException {
+        AuditQuery query;
+        try {
+            query = parseQuery(ctx);
+        } catch (IllegalArgumentException e) {
+            ctx.status(400).json(Map.of("error", e.getMessage()));
+            return;
+        }
+
+        ctx.contentType("application/json");
+        PageWriter page = new PageWriter(ctx);
+        int count;
+        try {
+            count = auditLogDao.forEach(query, page::entry);
+        } catch (SQLException e) {
+            logger.error("Failed to query audit logs", e);
+            if (!page.started()) {
+                ctx.status(500).json(Map.of("error", "Failed to query audit logs"));
+            } else {
+                // Headers are sent: a truncated document is the only way left to signal the failure
+                page.abort();
+            }
+            return;
+        }
+        page.finish(count, count == query.limit());
+    }
+
+    private static AuditQuery parseQuery(Context ctx) {
+        Long beforeTimestamp = null;
+        Long beforeId = null;
+        String cursor = blankToNull(ctx.queryParam("cursor"));
+        if (cursor != null) {
+            int separator = cursor.indexOf(':');
+            try {
+                beforeTimestamp = Long.parseLong(cursor.substring(0, separator));
+                beforeId = Long.parseLong(cursor.substring(separator + 1));
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Invalid 'cursor' parameter");
+            }
+        }
+
+        int limit = DEFAULT_LIMIT;
+        String limitParam = ctx.queryParam("limit");
+        if (limitParam != null) {
+            try {
+                limit = Math.max(1, Math.min(MAX_LIMIT, Integer.parseInt(limitParam)));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid 'limit' parameter");
+            }
+        }
+
+        Boolean success = null;
+        String successParam = blankToNull(ctx.queryParam("success"));
+        if (successParam != null) {
+            if (!successParam.equals("true") && !successParam.equals("false")) {
+                throw new IllegalArgumentException("Invalid 'success' parameter, expected true or false");
+            }
+            success = Boolean.parseBoolean(successParam);
+        }
+
+        return new AuditQuery(
+                blankToNull(ctx.queryParam("action")),
+                blankToNull(ctx.queryParam("target")),
+                blankToNull(ctx.queryParam("user")),
+                success,
+                parseInstant(ctx.queryParam("from"), "from"),
+                parseInstant(ctx.queryParam("to"), "to"),
+                beforeTimestamp,
+                beforeId,
+                limit);
+    }
+
+    private static Long parseInstant(String value, String name) {
+        value = blankToNull(value);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return value.chars().allMatch(Character::isDigit)
+                    ? Long.parseLong(value)
+                    : Instant.parse(value).toEpochMilli();
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid '" + name + "' parameter, expected an ISO-8601 instant or epoch millis");
+        }
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value;
+    }
+
+    /**
+     * Writes a page as {@code {"entries": [...], "count": n, "nextCursor": "..."}}, opening
+     * the response only once the query returned its first row.
+     */
+    private final class PageWriter {
+        private final Context ctx;
+        private JsonGenerator json;
+        private long lastTimestamp;
+        private long lastId;
+
+        PageWriter(Context ctx) {
+            this.ctx = ctx;
+        }
+
+        boolean started() {
+            return json != null;
+        }
+
+        void entry(AuditLog log) throws IOException {
+            start();
+            json.writeStartObject();
+            json.writeNumberField("id", log.getId());
+            json.writeStringField("timestamp", log.getTimestamp().toString());
+            json.writeStringField("user", log.getUser());
+            json.writeStringField("action", log.getAction());
+            json.writeStringField("target", log.getTarget());
+            json.writeStringField("ipAddress", log.getIpAddress());
+            json.writeStringField("metadata", log.getMetadata());
+            json.writeBooleanField("success", log.isSuccess());
+            json.writeEndObject();
+            lastTimestamp = log.getTimestamp().toEpochMilli();
+            lastId = log.getId();
+        }
+
+        void finish(int count, boolean hasMore) throws IOException {
+            start();
+            json.writeEndArray();
+            json.writeNumberField("count", count);
+            if (hasMore) {
+                json.writeStringField("nextCursor", lastTimestamp + ":" + lastId);
+            } else {
+                json.writeNullField("nextCursor");
+            }
+            json.writeEndObject();
+            json.close();
+        }
+
+        void abort() throws IOException {
+            json.flush();
+            ctx.outputStream().close();
+        }
+
+        private void start() throws IOException {
+            if (json == null) {
+                json = jsonFactory.createGenerator(ctx.outputStream(), JsonEncoding.UTF8);
+                json.writeStartObject();
+                json.writeArrayFieldStart("entries");
+            }
+        }
+    }
+}
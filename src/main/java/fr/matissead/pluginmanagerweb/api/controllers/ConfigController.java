@@ -3,6 +3,7 @@ package fr.matissead.pluginmanagerweb.api.controllers;
 import com.google.gson.Gson;
 import fr.matissead.pluginmanagerweb.model.AuditLog;
 import fr.matissead.pluginmanagerweb.model.ConfigBackup;
+import fr.matissead.pluginmanagerweb.model.ConfigBackupSummary;
 import fr.matissead.pluginmanagerweb.persistence.AuditLogDao;
 import fr.matissead.pluginmanagerweb.persistence.ConfigBackupDao;
 import io.javalin.http.Context;
@@ -13,7 +14,12 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -23,6 +29,8 @@ import java.util.Map;
  */
 public class ConfigController {
     private static final Logger logger = LoggerFactory.getLogger(ConfigController.class);
+    private static final int DEFAULT_BACKUP_PAGE_SIZE = 50;
+    private static final int MAX_BACKUP_PAGE_SIZE = 500;
     private final ConfigBackupDao configBackupDao;
     private final AuditLogDao auditLogDao;
     private final Gson gson;
@@ -163,16 +171,104 @@ public class ConfigController {
     }
     
     /**
-     * GET /api/plugins/:name/config/backups - Lists backups for a plugin
+     * GET /api/plugins/:name/config/backups?path=&cursor=&limit= - Lists backup metadata for a plugin,
+     * newest first. {@code cursor} is the {@code nextCursor} of the previous page.
      */
     public void listBackups(Context ctx) {
         String pluginName = ctx.pathParam("name");
-        List<ConfigBackup> backups = configBackupDao.getByPlugin(pluginName);
+        String path = ctx.queryParam("path");
+        Long beforeTimestamp = null;
+        Long beforeId = null;
+        int limit = DEFAULT_BACKUP_PAGE_SIZE;
+        try {
+            String cursor = ctx.queryParam("cursor");
+            if (cursor != null && !cursor.isBlank()) {
+                int separator = cursor.indexOf(':');
+                beforeTimestamp = Long.parseLong(cursor.substring(0, separator));
+                beforeId = Long.parseLong(cursor.substring(separator + 1));
+            }
+            String limitParam = ctx.queryParam("limit");
+            if (limitParam != null) {
+                limit = Math.max(1, Math.min(MAX_BACKUP_PAGE_SIZE, Integer.parseInt(limitParam)));
+            }
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            ctx.status(400).json(Map.of("error", "Invalid 'cursor' or 'limit' parameter"));
+            return;
+        }
         
-        ctx.json(Map.of(
-            "plugin", pluginName,
-            "backups", backups
-        ));
+        List<ConfigBackupSummary> backups;
+        try {
+            backups = configBackupDao.listSummaries(pluginName, path == null || path.isBlank() ? null : path,
+                    beforeTimestamp, beforeId, limit);
+        } catch (SQLException e) {
+            logger.error("Failed to list config backups for plugin: " + pluginName, e);
+            ctx.status(500).json(Map.of("error", "Failed to list backups"));
+            return;
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("plugin", pluginName);
+        response.put("backups", backups);
+        response.put("count", backups.size());
+        if (backups.size() == limit) {
+            ConfigBackupSummary last = backups.get(backups.size() - 1);
+            response.put("nextCursor", last.timestamp().toEpochMilli() + ":" + last.id());
+        } else {
+            response.put("nextCursor", null);
+        }
+        ctx.json(response);
+    }
+    
+    /**
+     * GET /api/plugins/:name/config/backups/:id/content - Sends the content of one backup as text.
+     * The content never changes, so its hash is the ETag and If-None-Match answers 304.
+     */
+    public void getBackupContent(Context ctx) {
+        // Raw config files often hold passwords and tokens: never serve them without a session,
+        // even if the route ends up outside the paths guarded by the auth middleware
+        if (ctx.attribute("session") == null) {
+            ctx.status(401).json(Map.of("error", "Authentication required"));
+            return;
+        }
+        
+        String pluginName = ctx.pathParam("name");
+        long id;
+        try {
+            id = Long.parseLong(ctx.pathParam("id"));
+        } catch (NumberFormatException e) {
+            ctx.status(400).json(Map.of("error", "Invalid backup ID"));
+            return;
+        }
+        
+        try {
+            ConfigBackup backup = configBackupDao.getMetadataById(id);
+            if (backup == null) {
+                ctx.status(404).json(Map.of("error", "Backup not found"));
+                return;
+            }
+            if (!backup.getPluginName().equals(pluginName)) {
+                ctx.status(403).json(Map.of("error", "Backup does not belong to this plugin"));
+                return;
+            }
+            
+            String etag = "\"" + backup.getContentHash() + "\"";
+            ctx.header("ETag", etag);
+            ctx.header("Cache-Control", "private, max-age=31536000, immutable");
+            if (etag.equals(ctx.header("If-None-Match"))) {
+                ctx.status(304);
+                return;
+            }
+            
+            byte[] content = configBackupDao.getContent(backup);
+            ctx.contentType("text/plain; charset=utf-8");
+            ctx.header("Content-Length", String.valueOf(content.length));
+            ctx.outputStream().write(content);
+        } catch (SQLException e) {
+            logger.error("Failed to read config backup: " + id, e);
+            ctx.status(500).json(Map.of("error", "Failed to read backup"));
+        } catch (IOException e) {
+            logger.debug("Client went away while receiving config backup {}", id);
+        }
     }
     
     /**
@@ -212,9 +308,8 @@ public class ConfigController {
                 configBackupDao.save(preRollbackBackup);
             }
             
-            // Restore from backup
-            configFile.getParentFile().mkdirs();
-            Files.writeString(configFile.toPath(), backup.getContent());
+            // Restore from backup, rebuilt from its delta chain by the DAO
+            writeAtomically(configFile.toPath(), backup.getContent());
             
             // Log the action
             AuditLog log = new AuditLog(user, "CONFIG_ROLLBACK", pluginName + "/" + backup.getPath(), ip);
@@ -233,6 +328,24 @@ public class ConfigController {
         }
     }
     
+    /**
+     * Replaces a file in one step, so that a large restored config is never seen half-written.
+     */
+    private static void writeAtomically(Path target, String content) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            Files.writeString(temp, content);
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+    
     private List<String> findConfigFiles(File dir) {
         // Implementation similar to PluginController's findConfigFiles
         return List.of(); // Simplified for now
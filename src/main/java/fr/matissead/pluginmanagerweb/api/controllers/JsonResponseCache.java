@@ -0,0 +1,70 @@
+package fr.matissead.pluginmanagerweb.api.controllers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.javalin.http.Context;
+
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Cache of serialized JSON responses keyed by request and content version.
+ * <p>
+ * A response body is serialized once per version, however many clients poll it,
+ * and the version doubles as the ETag so unchanged data is answered with
+ * {@code 304 Not Modified}. Requests racing on a new version wait for a single
+ * serialization instead of each building the body.
+ */
+public class JsonResponseCache {
+    private static final int MAX_ENTRIES = 64;
+    
+    private final ObjectMapper objectMapper;
+    private final Map<String, CachedResponse> responses = new ConcurrentHashMap<>();
+    
+    public JsonResponseCache(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+    
+    /**
+     * Sends the cached body for the key if it matches the version, or builds, serializes and caches it.
+     *
+     * @param key     identifies the response, e.g. the endpoint and its query parameters
+     * @param version changes whenever the body would change
+     * @param body    builds the response object, only called when the cached version is stale
+     */
+    public void respond(Context ctx, String key, String version, Supplier<Object> body) {
+        String etag = "\"" + version + "\"";
+        
+        CachedResponse cached = responses.get(key);
+        if (cached == null || !cached.etag().equals(etag)) {
+            if (responses.size() >= MAX_ENTRIES && !responses.containsKey(key)) {
+                // Keys come from query parameters; keep the map bounded
+                responses.clear();
+            }
+            cached = responses.compute(key, (k, existing) -> {
+                if (existing != null && existing.etag().equals(etag)) {
+                    return existing;
+                }
+                try {
+                    return new CachedResponse(etag, objectMapper.writeValueAsBytes(body.get()));
+                } catch (JsonProcessingException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        
+        ctx.header("ETag", cached.etag());
+        ctx.header("Cache-Control", "no-cache");
+        String ifNoneMatch = ctx.header("If-None-Match");
+        if (ifNoneMatch != null && (ifNoneMatch.contains(cached.etag()) || ifNoneMatch.trim().equals("*"))) {
+            ctx.status(304);
+            return;
+        }
+        ctx.contentType("application/json").result(cached.body());
+    }
+    
+    private record CachedResponse(String etag, byte[] body) {
+    }
+}
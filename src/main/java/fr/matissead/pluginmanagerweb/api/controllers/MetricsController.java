@@ -1,10 +1,15 @@
 package fr.matissead.pluginmanagerweb.api.controllers;
 
+import fr.matissead.pluginmanagerweb.metrics.MetricsSnapshot;
 import fr.matissead.pluginmanagerweb.metrics.PluginMetricsService;
+import fr.matissead.pluginmanagerweb.metrics.RetainedEvent;
+import fr.matissead.pluginmanagerweb.persistence.AuditLogDao;
+import fr.matissead.pluginmanagerweb.persistence.ConfigBackupDao;
+import fr.matissead.pluginmanagerweb.persistence.JdbcInstrumentation;
 import io.javalin.http.Context;
 
+import java.io.IOException;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * REST API controller for metrics and statistics.
@@ -12,9 +17,30 @@ import java.util.stream.Collectors;
  */
 public class MetricsController {
     private final PluginMetricsService metricsService;
+    private final AuditLogDao auditLogDao;
+    private final ConfigBackupDao configBackupDao;
+    private final JdbcInstrumentation jdbcInstrumentation;
+    private final JsonResponseCache responseCache;
     
-    public MetricsController(PluginMetricsService metricsService) {
+    public MetricsController(PluginMetricsService metricsService, AuditLogDao auditLogDao,
+                             ConfigBackupDao configBackupDao, JdbcInstrumentation jdbcInstrumentation,
+                             JsonResponseCache responseCache) {
         this.metricsService = metricsService;
+        this.auditLogDao = auditLogDao;
+        this.configBackupDao = configBackupDao;
+        this.jdbcInstrumentation = jdbcInstrumentation;
+        this.responseCache = responseCache;
+    }
+    
+    /**
+     * GET /metrics - Streams all numeric metrics in the Prometheus / OpenMetrics text format.
+     * OpenMetrics is used when the scraper asks for it in the Accept header.
+     */
+    public void scrapeMetrics(Context ctx) throws IOException {
+        String accept = ctx.header("Accept");
+        boolean openMetrics = accept != null && accept.contains("application/openmetrics-text");
+        ctx.contentType(PluginMetricsService.openMetricsContentType(openMetrics));
+        metricsService.writeOpenMetrics(ctx.outputStream(), openMetrics);
     }
     
     /**
@@ -31,45 +57,163 @@ public class MetricsController {
     }
     
     /**
-     * GET /api/metrics/overview - Gets aggregated metrics across all plugins
+     * GET /api/plugins/:name/metrics/history?key=&range= - Gets the history of a numeric metric
+     */
+    public void getMetricHistory(Context ctx) {
+        String pluginName = ctx.pathParam("name");
+        String key = ctx.queryParam("key");
+        String range = ctx.queryParam("range");
+        
+        if (key == null || key.isEmpty()) {
+            ctx.status(400).json(Map.of("error", "Missing 'key' parameter"));
+            return;
+        }
+        if (range == null || range.isEmpty()) {
+            range = "10m";
+        }
+        
+        long rangeMs;
+        try {
+            rangeMs = PluginMetricsService.parseDuration(range);
+        } catch (IllegalArgumentException e) {
+            ctx.status(400).json(Map.of("error", "Invalid 'range' parameter, expected e.g. 10m, 24h or 30d"));
+            return;
+        }
+        
+        PluginMetricsService.HistoryView history = metricsService.getHistory(pluginName, key, rangeMs);
+        if (history == null) {
+            ctx.status(404).json(Map.of("error", "No history for this metric"));
+            return;
+        }
+        
+        ctx.json(Map.of(
+            "plugin", pluginName,
+            "key", key,
+            "range", range,
+            "history", history,
+            "memory", metricsService.getHistoryStats()
+        ));
+    }
+    
+    /**
+     * GET /api/plugins/:name/metrics/histograms - Gets percentile summaries of a plugin's histograms
+     */
+    public void getPluginHistograms(Context ctx) {
+        String pluginName = ctx.pathParam("name");
+        
+        ctx.json(Map.of(
+            "plugin", pluginName,
+            "histograms", metricsService.getHistograms(pluginName)
+        ));
+    }
+    
+    /**
+     * GET /api/plugins/:name/events?type=&before=&limit= - Pages through retained events, newest first
+     */
+    public void getPluginEvents(Context ctx) {
+        String pluginName = ctx.pathParam("name");
+        String type = ctx.queryParam("type");
+        if (type != null && type.isEmpty()) {
+            type = null;
+        }
+        
+        long before;
+        int limit;
+        try {
+            String beforeParam = ctx.queryParam("before");
+            String limitParam = ctx.queryParam("limit");
+            before = beforeParam != null ? Long.parseLong(beforeParam) : Long.MAX_VALUE;
+            limit = limitParam != null ? Integer.parseInt(limitParam) : 50;
+        } catch (NumberFormatException e) {
+            ctx.status(400).json(Map.of("error", "Invalid 'before' or 'limit' parameter"));
+            return;
+        }
+        limit = Math.max(1, Math.min(limit, 500));
+        
+        List<RetainedEvent> events = metricsService.getEvents(pluginName, type, before, limit);
+        
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("plugin", pluginName);
+        response.put("events", events);
+        // Cursor for the next page, null when this page is the last one
+        response.put("nextBefore", events.size() == limit ? events.get(events.size() - 1).seq() : null);
+        response.put("types", metricsService.getEventStats(pluginName));
+        ctx.json(response);
+    }
+    
+    /**
+     * GET /api/metrics/overview?keys=&limit=&include=all - Gets plugin leaderboards for the given metric keys.
+     * The full metrics of every plugin are only included with include=all.
+     * Responses are cached per snapshot and leaderboard version and support If-None-Match.
      */
     public void getMetricsOverview(Context ctx) {
-        Map<String, Map<String, Object>> allMetrics = metricsService.getAllMetrics();
+        String keysParam = ctx.queryParam("keys");
+        List<String> keys = keysParam == null || keysParam.isBlank()
+                ? metricsService.getDefaultLeaderboardKeys()
+                : Arrays.stream(keysParam.split(",")).map(String::trim).filter(k -> !k.isEmpty()).distinct().toList();
         
-        // Calculate some aggregate statistics
-        int totalPluginsWithMetrics = allMetrics.size();
+        int limit = 5;
+        String limitParam = ctx.queryParam("limit");
+        if (limitParam != null) {
+            try {
+                limit = Integer.parseInt(limitParam);
+            } catch (NumberFormatException e) {
+                ctx.status(400).json(Map.of("error", "Invalid 'limit' parameter"));
+                return;
+            }
+        }
+        limit = Math.max(1, Math.min(limit, metricsService.getLeaderboardSize()));
         
-        // Find top plugins by various metrics
-        List<Map<String, Object>> topByCommandsExecuted = getTopPluginsByMetric(allMetrics, "commands_executed", 5);
-        List<Map<String, Object>> topByEventsProcessed = getTopPluginsByMetric(allMetrics, "events_processed", 5);
+        try {
+            metricsService.rankKeys(keys);
+        } catch (IllegalArgumentException e) {
+            ctx.status(400).json(Map.of("error", e.getMessage()));
+            return;
+        }
         
+        boolean includeAll = "all".equals(ctx.queryParam("include"));
+        MetricsSnapshot snapshot = metricsService.getSnapshot();
+        String cacheKey = "overview:" + String.join(",", keys) + ":" + limit + ":" + includeAll;
+        String version = snapshot.version() + "-" + metricsService.getLeaderboardVersion();
+        int top = limit;
+        
+        responseCache.respond(ctx, cacheKey, version, () -> {
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("summary", Map.of(
+                "totalPluginsWithMetrics", snapshot.plugins().size(),
+                "timestamp", snapshot.publishedAt().toEpochMilli()
+            ));
+            response.put("leaderboards", metricsService.getLeaderboards(keys, top));
+            if (includeAll) {
+                response.put("allMetrics", snapshot.plugins());
+            }
+            return response;
+        });
+    }
+    
+    /**
+     * GET /api/metrics/memory - Gets series counts, cardinality limits and estimated heap use per plugin
+     */
+    public void getMemoryStats(Context ctx) {
+        ctx.json(metricsService.getMemoryStats());
+    }
+    
+    /**
+     * GET /api/metrics/persistence - Gets write-behind queue depth, flush latency, audit queue counters
+     * and the space saved by config backup deduplication
+     */
+    public void getPersistenceStats(Context ctx) {
         ctx.json(Map.of(
-            "summary", Map.of(
-                "totalPluginsWithMetrics", totalPluginsWithMetrics,
-                "timestamp", System.currentTimeMillis()
-            ),
-            "topPlugins", Map.of(
-                "byCommandsExecuted", topByCommandsExecuted,
-                "byEventsProcessed", topByEventsProcessed
-            ),
-            "allMetrics", allMetrics
+            "metrics", metricsService.getPersistenceStats(),
+            "audit", auditLogDao.getWriteStats(),
+            "configBackups", configBackupDao.getStorageStats()
         ));
     }
     
-    private List<Map<String, Object>> getTopPluginsByMetric(Map<String, Map<String, Object>> allMetrics,
-                                                            String metricKey, int limit) {
-        return allMetrics.entrySet().stream()
-                .filter(e -> e.getValue().containsKey(metricKey))
-                .map(e -> {
-                    Object value = e.getValue().get(metricKey);
-                    long numValue = (value instanceof Number) ? ((Number) value).longValue() : 0L;
-                    Map<String, Object> m = new HashMap<>();
-                    m.put("plugin", e.getKey());
-                    m.put("value", numValue);
-                    return m;
-                })
-                .sorted((m1, m2) -> Long.compare((Long) m2.get("value"), (Long) m1.get("value")))
-                .limit(limit)
-                .collect(Collectors.toList());
+    /**
+     * GET /api/metrics/db - Gets connection pool states, statement latencies by SQL shape and recent slow queries
+     */
+    public void getDatabaseStats(Context ctx) {
+        ctx.json(jdbcInstrumentation.getStats());
     }
 }
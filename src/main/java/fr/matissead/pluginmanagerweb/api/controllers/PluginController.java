@@ -1,12 +1,19 @@
 package fr.matissead.pluginmanagerweb.api.controllers;
 
 import com.google.gson.Gson;
+import fr.matissead.pluginmanagerweb.api.websocket.EventsWebSocketHandler;
 import fr.matissead.pluginmanagerweb.config.GitHubConfig;
 import fr.matissead.pluginmanagerweb.github.GitHubClient;
+import fr.matissead.pluginmanagerweb.github.ReleasePage;
+import fr.matissead.pluginmanagerweb.github.ReleasePoller;
+import fr.matissead.pluginmanagerweb.github.UpdateChecker;
+import fr.matissead.pluginmanagerweb.github.UpdateDownloader;
+import fr.matissead.pluginmanagerweb.model.PluginUpdate;
+import fr.matissead.pluginmanagerweb.model.ReleaseEntry;
+import fr.matissead.pluginmanagerweb.metrics.MetricsSnapshot;
 import fr.matissead.pluginmanagerweb.metrics.PluginMetricsService;
 import fr.matissead.pluginmanagerweb.model.AuditLog;
 import fr.matissead.pluginmanagerweb.model.PluginEntry;
-import fr.matissead.pluginmanagerweb.model.ReleaseEntry;
 import fr.matissead.pluginmanagerweb.persistence.AuditLogDao;
 import io.javalin.http.Context;
 import org.bukkit.Bukkit;
@@ -28,53 +35,77 @@ public class PluginController {
     private static final Logger logger = LoggerFactory.getLogger(PluginController.class);
     private final PluginMetricsService metricsService;
     private final GitHubClient githubClient;
+    private final ReleasePoller releasePoller;
+    private final UpdateChecker updateChecker;
+    private final UpdateDownloader updateDownloader;
+    private final EventsWebSocketHandler eventsHandler;
     private final GitHubConfig githubConfig;
     private final AuditLogDao auditLogDao;
+    private final JsonResponseCache responseCache;
     private final Gson gson;
     
     public PluginController(PluginMetricsService metricsService, GitHubClient githubClient, 
-                           GitHubConfig githubConfig, AuditLogDao auditLogDao) {
+                           ReleasePoller releasePoller, UpdateChecker updateChecker,
+                           UpdateDownloader updateDownloader, EventsWebSocketHandler eventsHandler,
+                           GitHubConfig githubConfig, AuditLogDao auditLogDao, JsonResponseCache responseCache) {
         this.metricsService = metricsService;
         this.githubClient = githubClient;
+        this.releasePoller = releasePoller;
+        this.updateChecker = updateChecker;
+        this.updateDownloader = updateDownloader;
+        this.eventsHandler = eventsHandler;
         this.githubConfig = githubConfig;
         this.auditLogDao = auditLogDao;
+        this.responseCache = responseCache;
         this.gson = new Gson();
     }
     
     /**
-     * GET /api/plugins - Lists all installed plugins
+     * GET /api/plugins - Lists all installed plugins.
+     * The response is cached until a plugin or its metrics change and supports If-None-Match.
      */
     public void listPlugins(Context ctx) {
-        PluginManager pluginManager = Bukkit.getPluginManager();
-        List<PluginEntry> entries = new ArrayList<>();
+        Plugin[] plugins = Bukkit.getPluginManager().getPlugins();
+        MetricsSnapshot snapshot = metricsService.getSnapshot();
         
-        for (Plugin plugin : pluginManager.getPlugins()) {
-            PluginEntry entry = new PluginEntry();
-            entry.setName(plugin.getName());
-            entry.setVersion(plugin.getDescription().getVersion());
-            entry.setEnabled(plugin.isEnabled());
-            entry.setAuthors(plugin.getDescription().getAuthors());
-            entry.setDescription(plugin.getDescription().getDescription());
-            entry.setLastSeen(Instant.now());
-            
-            // Add metrics if available
-            Map<String, Object> metrics = metricsService.getMetrics(plugin.getName());
-            entry.setMetrics(metrics);
+        // Cheap fingerprint of the plugin list; metrics changes are covered by the snapshot version
+        int pluginState = 1;
+        for (Plugin plugin : plugins) {
+            pluginState = 31 * pluginState + Objects.hash(plugin.getName(),
+                    plugin.getDescription().getVersion(), plugin.isEnabled());
+        }
+        String version = snapshot.version() + "-" + Integer.toHexString(pluginState);
+        
+        responseCache.respond(ctx, "plugins", version, () -> {
+            List<PluginEntry> entries = new ArrayList<>();
             
-            // Check if plugin is tracked on GitHub
-            String repo = findGitHubRepo(plugin.getName());
-            if (repo != null) {
-                entry.setGithubRepo(repo);
-                entry.setTags(Arrays.asList("MatisseAD", "GitHub"));
+            for (Plugin plugin : plugins) {
+                PluginEntry entry = new PluginEntry();
+                entry.setName(plugin.getName());
+                entry.setVersion(plugin.getDescription().getVersion());
+                entry.setEnabled(plugin.isEnabled());
+                entry.setAuthors(plugin.getDescription().getAuthors());
+                entry.setDescription(plugin.getDescription().getDescription());
+                entry.setLastSeen(snapshot.publishedAt());
+                
+                // Add metrics if available
+                entry.setMetrics(snapshot.metrics(plugin.getName()));
+                
+                // Check if plugin is tracked on GitHub
+                String repo = findGitHubRepo(plugin.getName());
+                if (repo != null) {
+                    entry.setGithubRepo(repo);
+                    entry.setTags(Arrays.asList("MatisseAD", "GitHub"));
+                }
+                
+                entries.add(entry);
             }
             
-            entries.add(entry);
-        }
-        
-        ctx.json(Map.of(
-            "plugins", entries,
-            "total", entries.size()
-        ));
+            return Map.of(
+                "plugins", entries,
+                "total", entries.size()
+            );
+        });
     }
     
     /**
@@ -194,7 +225,9 @@ public class PluginController {
     }
     
     /**
-     * GET /api/plugins/:name/releases - Gets available GitHub releases for a plugin
+     * GET /api/plugins/:name/releases?page= - Gets a page of the GitHub releases of a plugin, newest first.
+     * The first page comes from the last background check when the release poller is running;
+     * further pages are fetched from GitHub when first asked for.
      */
     public void getReleases(Context ctx) {
         String pluginName = ctx.pathParam("name");
@@ -205,17 +238,123 @@ public class PluginController {
             return;
         }
         
-        List<ReleaseEntry> releases = githubClient.getReleases(repo);
+        int page;
+        try {
+            String pageParam = ctx.queryParam("page");
+            page = pageParam != null ? Integer.parseInt(pageParam) : 1;
+        } catch (NumberFormatException e) {
+            page = 0;
+        }
+        if (page < 1) {
+            ctx.status(400).json(Map.of("error", "Invalid 'page' parameter"));
+            return;
+        }
+        
+        ReleasePage releases = page == 1 ? releasePoller.getFirstPage(repo) : githubClient.getReleasePage(repo, page);
         
         // Get current plugin version for comparison
         Plugin plugin = Bukkit.getPluginManager().getPlugin(pluginName);
         String currentVersion = plugin != null ? plugin.getDescription().getVersion() : null;
         
+        Map<String, Object> response = new HashMap<>();
+        response.put("plugin", pluginName);
+        response.put("repo", repo);
+        response.put("currentVersion", currentVersion);
+        response.put("page", page);
+        response.put("releases", releases.releases());
+        response.put("nextPage", releases.hasNext() ? page + 1 : null);
+        ctx.json(response);
+    }
+    
+    /**
+     * GET /api/updates - Compares every installed plugin tracked on GitHub with its latest release.
+     * Releases are resolved concurrently; plugins not resolved within the deadline are reported
+     * as TIMED_OUT and {@code complete} is false.
+     */
+    public void getUpdates(Context ctx) {
+        List<UpdateChecker.Target> targets = new ArrayList<>();
+        List<String> untracked = new ArrayList<>();
+        for (Plugin plugin : Bukkit.getPluginManager().getPlugins()) {
+            String repo = findGitHubRepo(plugin.getName());
+            if (repo != null) {
+                targets.add(new UpdateChecker.Target(plugin.getName(), repo, plugin.getDescription().getVersion()));
+            } else {
+                untracked.add(plugin.getName());
+            }
+        }
+        
+        UpdateChecker.Report report = updateChecker.check(targets);
+        long available = report.updates().stream()
+                .filter(update -> update.status() == PluginUpdate.Status.UPDATE_AVAILABLE)
+                .count();
         ctx.json(Map.of(
-            "plugin", pluginName,
-            "repo", repo,
-            "currentVersion", currentVersion,
-            "releases", releases
+            "updates", report.updates(),
+            "updatesAvailable", available,
+            "complete", report.complete(),
+            "untracked", untracked
+        ));
+    }
+    
+    /**
+     * POST /api/plugins/:name/update - Downloads the jar of the latest release into the server's update
+     * folder, where it replaces the plugin on the next restart. The download runs in the background:
+     * its progress is pushed to /ws/events as download_progress messages.
+     */
+    public void downloadUpdate(Context ctx) {
+        String pluginName = ctx.pathParam("name");
+        String user = ctx.attribute("user");
+        String ip = ctx.ip();
+        
+        Plugin plugin = Bukkit.getPluginManager().getPlugin(pluginName);
+        if (plugin == null) {
+            ctx.status(404).json(Map.of("error", "Plugin not found"));
+            return;
+        }
+        String repo = findGitHubRepo(plugin.getName());
+        if (repo == null) {
+            ctx.status(404).json(Map.of("error", "Plugin not tracked on GitHub"));
+            return;
+        }
+        ReleaseEntry release = releasePoller.getFirstPage(repo).latest();
+        if (release == null || release.getDownloadUrl() == null) {
+            ctx.status(404).json(Map.of("error", "No release with a jar asset"));
+            return;
+        }
+        File jar = getPluginJar(plugin);
+        if (jar == null) {
+            ctx.status(500).json(Map.of("error", "Cannot locate the plugin jar"));
+            return;
+        }
+        
+        // The update folder only replaces jars of the same file name
+        File target = new File(Bukkit.getUpdateFolderFile(), jar.getName());
+        String version = release.getTag();
+        boolean started = updateDownloader.submit(plugin.getName(), release, target,
+                (downloaded, total) ->
+                        eventsHandler.broadcastDownloadProgress(plugin.getName(), version, downloaded, total),
+                success -> {
+                    AuditLog log = new AuditLog(user, "PLUGIN_UPDATE_DOWNLOAD", plugin.getName(), ip);
+                    log.setSuccess(success);
+                    Map<String, Object> metadata = new HashMap<>();
+                    metadata.put("version", version);
+                    metadata.put("checksum", release.getChecksum());
+                    log.setMetadata(gson.toJson(metadata));
+                    auditLogDao.save(log);
+                    if (!success) {
+                        eventsHandler.broadcastError("warning", "Update download failed",
+                                plugin.getName() + " " + version);
+                    }
+                });
+        if (!started) {
+            ctx.status(409).json(Map.of("error", "A download of this plugin is already running"));
+            return;
+        }
+        
+        ctx.status(202).json(Map.of(
+            "plugin", plugin.getName(),
+            "version", version,
+            "target", target.getAbsolutePath(),
+            "message", "Download started, the update is installed on the next restart"
         ));
     }
     
@@ -251,11 +390,15 @@ public class PluginController {
     }
     
     private String getPluginJarPath(Plugin plugin) {
+        File jarFile = getPluginJar(plugin);
+        return jarFile != null ? jarFile.getAbsolutePath() : "Unknown";
+    }
+    
+    private File getPluginJar(Plugin plugin) {
         try {
-            File jarFile = new File(plugin.getClass().getProtectionDomain().getCodeSource().getLocation().toURI());
-            return jarFile.getAbsolutePath();
+            return new File(plugin.getClass().getProtectionDomain().getCodeSource().getLocation().toURI());
         } catch (Exception e) {
-            return "Unknown";
+            return null;
         }
     }
     
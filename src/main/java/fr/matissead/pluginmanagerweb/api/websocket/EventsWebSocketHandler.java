@@ -77,6 +77,23 @@ public class EventsWebSocketHandler {
         broadcast(message);
     }
     
+    /**
+     * Broadcasts the progress of a plugin update download; {@code total} is -1 when the size is unknown.
+     */
+    public void broadcastDownloadProgress(String pluginName, String version, long downloaded, long total) {
+        WebSocketMessage message = new WebSocketMessage(
+            "download_progress",
+            Map.of(
+                "plugin", pluginName,
+                "version", version,
+                "downloaded", downloaded,
+                "total", total,
+                "timestamp", Instant.now().toString()
+            )
+        );
+        broadcast(message);
+    }
+    
     /**
      * Broadcasts a system error or warning.
      */
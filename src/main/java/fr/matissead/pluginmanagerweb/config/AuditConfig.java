@@ -0,0 +1,166 @@
+package fr.matissead.pluginmanagerweb.config;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.Locale;
+
+/**
+ * Configuration holder for audit log settings.
+ * Audit entries are queued and written in batches; the overflow policy decides
+ * what happens when they are produced faster than they can be written.
+ * Entries older than the retention age are moved to compressed archive segments.
+ */
+public class AuditConfig {
+    private static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final long DEFAULT_BLOCK_TIMEOUT_MS = 100;
+    private static final int DEFAULT_MAX_AGE_DAYS = 90;
+    private static final int DEFAULT_SEGMENT_DAYS = 1;
+    private static final long DEFAULT_RETENTION_INTERVAL_MINUTES = 60;
+    private static final int DEFAULT_ARCHIVE_BATCH_SIZE = 5000;
+    private static final int DEFAULT_VACUUM_MAX_PAGES = 2048;
+
+    /**
+     * What to do with an entry when the queue is full.
+     */
+    public enum OverflowPolicy {
+        /** Drop the entry immediately and count it. */
+        DROP,
+        /** Wait up to the block timeout for room, then drop the entry. */
+        BLOCK
+    }
+
+    private final int queueCapacity;
+    private final int batchSize;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutMs;
+    private final int maxAgeDays;
+    private final String archiveDirectory;
+    private final int segmentDays;
+    private final int archiveMaxAgeDays;
+    private final long retentionIntervalMinutes;
+    private final int archiveBatchSize;
+    private final int vacuumMaxPages;
+
+    public AuditConfig(ConfigurationSection config) {
+        ConfigurationSection auditSection = config.getConfigurationSection("pluginmanager.audit");
+        ConfigurationSection retentionSection = auditSection != null
+                ? auditSection.getConfigurationSection("retention") : null;
+        if (retentionSection == null) {
+            this.maxAgeDays = DEFAULT_MAX_AGE_DAYS;
+            this.archiveDirectory = "audit-archive";
+            this.segmentDays = DEFAULT_SEGMENT_DAYS;
+            this.archiveMaxAgeDays = 0;
+            this.retentionIntervalMinutes = DEFAULT_RETENTION_INTERVAL_MINUTES;
+            this.archiveBatchSize = DEFAULT_ARCHIVE_BATCH_SIZE;
+            this.vacuumMaxPages = DEFAULT_VACUUM_MAX_PAGES;
+        } else {
+            this.maxAgeDays = Math.max(0, retentionSection.getInt("max_age_days", DEFAULT_MAX_AGE_DAYS));
+            this.archiveDirectory = retentionSection.getString("directory", "audit-archive");
+            this.segmentDays = Math.max(1, retentionSection.getInt("segment_days", DEFAULT_SEGMENT_DAYS));
+            this.archiveMaxAgeDays = Math.max(0, retentionSection.getInt("archive_max_age_days", 0));
+            this.retentionIntervalMinutes = Math.max(1,
+                    retentionSection.getLong("interval_minutes", DEFAULT_RETENTION_INTERVAL_MINUTES));
+            this.archiveBatchSize = Math.max(1, retentionSection.getInt("batch_size", DEFAULT_ARCHIVE_BATCH_SIZE));
+            this.vacuumMaxPages = Math.max(0, retentionSection.getInt("vacuum_max_pages", DEFAULT_VACUUM_MAX_PAGES));
+        }
+
+        if (auditSection == null) {
+            this.queueCapacity = DEFAULT_QUEUE_CAPACITY;
+            this.batchSize = DEFAULT_BATCH_SIZE;
+            this.overflowPolicy = OverflowPolicy.DROP;
+            this.blockTimeoutMs = DEFAULT_BLOCK_TIMEOUT_MS;
+            return;
+        }
+
+        this.queueCapacity = Math.max(1, auditSection.getInt("queue_capacity", DEFAULT_QUEUE_CAPACITY));
+        // Each entry binds 7 parameters, stay well below SQLite's limit of bound variables
+        this.batchSize = Math.max(1, Math.min(1000, auditSection.getInt("batch_size", DEFAULT_BATCH_SIZE)));
+        this.blockTimeoutMs = Math.max(0, auditSection.getLong("block_timeout_ms", DEFAULT_BLOCK_TIMEOUT_MS));
+
+        String policy = auditSection.getString("overflow_policy", "drop");
+        try {
+            this.overflowPolicy = OverflowPolicy.valueOf(policy.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Invalid audit.overflow_policy '" + policy + "', expected drop or block");
+        }
+    }
+
+    /**
+     * Maximum number of audit entries waiting to be written.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Maximum number of entries written by one multi-row insert.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * How long the BLOCK policy waits for room in the queue before dropping an entry.
+     */
+    public long getBlockTimeoutMs() {
+        return blockTimeoutMs;
+    }
+
+    /**
+     * Whether old entries are moved out of the database, i.e. the retention age is not 0.
+     */
+    public boolean isRetentionEnabled() {
+        return maxAgeDays > 0;
+    }
+
+    /**
+     * Age in days after which entries are moved to the archive.
+     */
+    public int getMaxAgeDays() {
+        return maxAgeDays;
+    }
+
+    /**
+     * Archive directory, relative to the plugin data folder.
+     */
+    public String getArchiveDirectory() {
+        return archiveDirectory;
+    }
+
+    /**
+     * Time span covered by one archive segment, in days.
+     */
+    public int getSegmentDays() {
+        return segmentDays;
+    }
+
+    /**
+     * Age in days after which archive segments are deleted, 0 to keep them forever.
+     */
+    public int getArchiveMaxAgeDays() {
+        return archiveMaxAgeDays;
+    }
+
+    public long getRetentionIntervalMinutes() {
+        return retentionIntervalMinutes;
+    }
+
+    /**
+     * Maximum number of entries moved to the archive per transaction.
+     */
+    public int getArchiveBatchSize() {
+        return archiveBatchSize;
+    }
+
+    /**
+     * Maximum number of free pages returned to the file system per retention pass, 0 to disable.
+     */
+    public int getVacuumMaxPages() {
+        return vacuumMaxPages;
+    }
+}
@@ -2,24 +2,157 @@ package fr.matissead.pluginmanagerweb.config;
 
 import org.bukkit.configuration.ConfigurationSection;
 
+import java.util.Locale;
+
 /**
  * Configuration holder for database settings.
- * Supports SQLite by default with optional MySQL/PostgreSQL.
+ * Supports SQLite by default with optional MySQL/PostgreSQL, shared by the servers of a network.
  */
 public class DatabaseConfig {
+    private static final int DEFAULT_READ_POOL_SIZE = 4;
+    private static final String DEFAULT_JOURNAL_MODE = "WAL";
+    private static final String DEFAULT_SYNCHRONOUS = "NORMAL";
+    private static final int DEFAULT_CACHE_SIZE_KB = 16384;
+    private static final int DEFAULT_MMAP_SIZE_MB = 64;
+    private static final int DEFAULT_BUSY_TIMEOUT_MS = 5000;
+    private static final int DEFAULT_WRITE_BATCH_SIZE = 256;
+    private static final int DEFAULT_WRITE_QUEUE_CAPACITY = 10000;
+    private static final int DEFAULT_BACKUP_KEYFRAME_INTERVAL = 32;
+    private static final int DEFAULT_POOL_SIZE = 4;
+    private static final int DEFAULT_MINIMUM_IDLE = 1;
+    private static final long DEFAULT_CONNECTION_TIMEOUT_MS = 10_000;
+    private static final long DEFAULT_IDLE_TIMEOUT_MS = 600_000;
+    private static final long DEFAULT_MAX_LIFETIME_MS = 1_800_000;
+    private static final long DEFAULT_SLOW_QUERY_MS = 250;
+    private static final int DEFAULT_SLOW_QUERY_LOG_SIZE = 50;
+
     private final String type;
     private final String sqlitePath;
+    private final int readPoolSize;
+    private final String journalMode;
+    private final String synchronous;
+    private final int cacheSizeKb;
+    private final int mmapSizeMb;
+    private final int busyTimeoutMs;
+    private final int writeBatchSize;
+    private final int writeQueueCapacity;
+    private final int backupKeyframeInterval;
+    private final String serverId;
+    private final String host;
+    private final int port;
+    private final String database;
+    private final String username;
+    private final String password;
+    private final boolean ssl;
+    private final int poolSize;
+    private final int minimumIdle;
+    private final long connectionTimeoutMs;
+    private final long idleTimeoutMs;
+    private final long maxLifetimeMs;
+    private final boolean instrumentationEnabled;
+    private final long slowQueryMs;
+    private final int slowQueryLogSize;
     
     public DatabaseConfig(ConfigurationSection config) {
         ConfigurationSection dbSection = config.getConfigurationSection("pluginmanager.database");
         if (dbSection == null) {
             this.type = "sqlite";
             this.sqlitePath = "data/pluginmanager.sqlite";
+            this.readPoolSize = DEFAULT_READ_POOL_SIZE;
+            this.journalMode = DEFAULT_JOURNAL_MODE;
+            this.synchronous = DEFAULT_SYNCHRONOUS;
+            this.cacheSizeKb = DEFAULT_CACHE_SIZE_KB;
+            this.mmapSizeMb = DEFAULT_MMAP_SIZE_MB;
+            this.busyTimeoutMs = DEFAULT_BUSY_TIMEOUT_MS;
+            this.writeBatchSize = DEFAULT_WRITE_BATCH_SIZE;
+            this.writeQueueCapacity = DEFAULT_WRITE_QUEUE_CAPACITY;
+            this.backupKeyframeInterval = DEFAULT_BACKUP_KEYFRAME_INTERVAL;
+            this.serverId = "";
+            this.host = "localhost";
+            this.port = 0;
+            this.database = "pluginmanager";
+            this.username = "";
+            this.password = "";
+            this.ssl = false;
+            this.poolSize = DEFAULT_POOL_SIZE;
+            this.minimumIdle = DEFAULT_MINIMUM_IDLE;
+            this.connectionTimeoutMs = DEFAULT_CONNECTION_TIMEOUT_MS;
+            this.idleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS;
+            this.maxLifetimeMs = DEFAULT_MAX_LIFETIME_MS;
+            this.instrumentationEnabled = true;
+            this.slowQueryMs = DEFAULT_SLOW_QUERY_MS;
+            this.slowQueryLogSize = DEFAULT_SLOW_QUERY_LOG_SIZE;
             return;
         }
         
-        this.type = dbSection.getString("type", "sqlite");
+        this.type = dbSection.getString("type", "sqlite").toLowerCase(Locale.ROOT);
         this.sqlitePath = dbSection.getString("sqlite_path", "data/pluginmanager.sqlite");
+        this.writeBatchSize = Math.max(1, dbSection.getInt("write_batch_size", DEFAULT_WRITE_BATCH_SIZE));
+        this.writeQueueCapacity = Math.max(writeBatchSize, dbSection.getInt("write_queue_capacity", DEFAULT_WRITE_QUEUE_CAPACITY));
+        this.backupKeyframeInterval = Math.max(1, dbSection.getInt("backup_keyframe_interval", DEFAULT_BACKUP_KEYFRAME_INTERVAL));
+        
+        // Metrics of a shared database are stored per server; a SQLite file has a single one
+        this.serverId = isSQLite() ? "" : dbSection.getString("server_id", "").trim();
+        if (!isSQLite() && serverId.isEmpty()) {
+            throw new IllegalArgumentException("pluginmanager.database.server_id must name this server when type is " + type);
+        }
+        
+        ConfigurationSection networkSection = dbSection.getConfigurationSection("network");
+        if (networkSection != null) {
+            this.host = networkSection.getString("host", "localhost");
+            this.port = Math.max(0, networkSection.getInt("port", 0));
+            this.database = networkSection.getString("database", "pluginmanager");
+            this.username = networkSection.getString("username", "");
+            this.password = networkSection.getString("password", "");
+            this.ssl = networkSection.getBoolean("ssl", false);
+            this.poolSize = Math.max(1, networkSection.getInt("pool_size", DEFAULT_POOL_SIZE));
+            this.minimumIdle = Math.max(0, Math.min(poolSize, networkSection.getInt("minimum_idle", DEFAULT_MINIMUM_IDLE)));
+            // HikariCP rejects connection timeouts under 250 ms and lifetimes under 30 s
+            this.connectionTimeoutMs = Math.max(250, networkSection.getLong("connection_timeout_ms", DEFAULT_CONNECTION_TIMEOUT_MS));
+            this.idleTimeoutMs = Math.max(10_000, networkSection.getLong("idle_timeout_ms", DEFAULT_IDLE_TIMEOUT_MS));
+            this.maxLifetimeMs = Math.max(30_000, networkSection.getLong("max_lifetime_ms", DEFAULT_MAX_LIFETIME_MS));
+        } else {
+            this.host = "localhost";
+            this.port = 0;
+            this.database = "pluginmanager";
+            this.username = "";
+            this.password = "";
+            this.ssl = false;
+            this.poolSize = DEFAULT_POOL_SIZE;
+            this.minimumIdle = DEFAULT_MINIMUM_IDLE;
+            this.connectionTimeoutMs = DEFAULT_CONNECTION_TIMEOUT_MS;
+            this.idleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS;
+            this.maxLifetimeMs = DEFAULT_MAX_LIFETIME_MS;
+        }
+        
+        ConfigurationSection monitoringSection = dbSection.getConfigurationSection("monitoring");
+        if (monitoringSection != null) {
+            this.instrumentationEnabled = monitoringSection.getBoolean("enabled", true);
+            this.slowQueryMs = Math.max(0, monitoringSection.getLong("slow_query_ms", DEFAULT_SLOW_QUERY_MS));
+            this.slowQueryLogSize = Math.max(0, Math.min(1000,
+                    monitoringSection.getInt("slow_query_log_size", DEFAULT_SLOW_QUERY_LOG_SIZE)));
+        } else {
+            this.instrumentationEnabled = true;
+            this.slowQueryMs = DEFAULT_SLOW_QUERY_MS;
+            this.slowQueryLogSize = DEFAULT_SLOW_QUERY_LOG_SIZE;
+        }
+        
+        ConfigurationSection sqliteSection = dbSection.getConfigurationSection("sqlite");
+        if (sqliteSection != null) {
+            this.readPoolSize = Math.max(1, sqliteSection.getInt("read_pool_size", DEFAULT_READ_POOL_SIZE));
+            this.journalMode = sqliteSection.getString("journal_mode", DEFAULT_JOURNAL_MODE).toUpperCase(Locale.ROOT);
+            this.synchronous = sqliteSection.getString("synchronous", DEFAULT_SYNCHRONOUS).toUpperCase(Locale.ROOT);
+            this.cacheSizeKb = Math.max(0, sqliteSection.getInt("cache_size_kb", DEFAULT_CACHE_SIZE_KB));
+            this.mmapSizeMb = Math.max(0, sqliteSection.getInt("mmap_size_mb", DEFAULT_MMAP_SIZE_MB));
+            this.busyTimeoutMs = Math.max(0, sqliteSection.getInt("busy_timeout_ms", DEFAULT_BUSY_TIMEOUT_MS));
+        } else {
+            this.readPoolSize = DEFAULT_READ_POOL_SIZE;
+            this.journalMode = DEFAULT_JOURNAL_MODE;
+            this.synchronous = DEFAULT_SYNCHRONOUS;
+            this.cacheSizeKb = DEFAULT_CACHE_SIZE_KB;
+            this.mmapSizeMb = DEFAULT_MMAP_SIZE_MB;
+            this.busyTimeoutMs = DEFAULT_BUSY_TIMEOUT_MS;
+        }
     }
     
     public String getType() {
@@ -33,4 +166,152 @@ public class DatabaseConfig {
     public boolean isSQLite() {
         return "sqlite".equalsIgnoreCase(type);
     }
+
+    /**
+     * Number of read-only connections serving queries.
+     */
+    public int getReadPoolSize() {
+        return readPoolSize;
+    }
+
+    /**
+     * SQLite journal mode; WAL lets readers run while the writer commits.
+     */
+    public String getJournalMode() {
+        return journalMode;
+    }
+
+    /**
+     * SQLite synchronous level; NORMAL is durable across crashes of the process in WAL mode.
+     */
+    public String getSynchronous() {
+        return synchronous;
+    }
+
+    /**
+     * Page cache size of each SQLite connection, in KiB.
+     */
+    public int getCacheSizeKb() {
+        return cacheSizeKb;
+    }
+
+    /**
+     * Size of the memory-mapped region of the database file, in MiB (0 disables mmap).
+     */
+    public int getMmapSizeMb() {
+        return mmapSizeMb;
+    }
+
+    /**
+     * How long a connection waits for a lock before failing with SQLITE_BUSY.
+     */
+    public int getBusyTimeoutMs() {
+        return busyTimeoutMs;
+    }
+
+    /**
+     * Maximum number of queued writes committed in one transaction.
+     */
+    public int getWriteBatchSize() {
+        return writeBatchSize;
+    }
+
+    /**
+     * Maximum number of writes waiting for the writer; submitters block beyond it.
+     */
+    public int getWriteQueueCapacity() {
+        return writeQueueCapacity;
+    }
+
+    /**
+     * Config backups between two full copies of a file; the others are stored as deltas
+     * against the previous backup. 1 stores every backup in full.
+     */
+    public int getBackupKeyframeInterval() {
+        return backupKeyframeInterval;
+    }
+
+    /**
+     * Name of this server in a shared database, scoping its metrics; empty with SQLite.
+     */
+    public String getServerId() {
+        return serverId;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Port of the database server, or 0 for the default port of the database type.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    public String getDatabase() {
+        return database;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public boolean isSsl() {
+        return ssl;
+    }
+
+    /**
+     * Connections of the read pool of a MySQL/PostgreSQL database; the writer holds one more.
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Connections kept open while idle, so that idle servers of a network do not hold the whole pool.
+     */
+    public int getMinimumIdle() {
+        return minimumIdle;
+    }
+
+    public long getConnectionTimeoutMs() {
+        return connectionTimeoutMs;
+    }
+
+    public long getIdleTimeoutMs() {
+        return idleTimeoutMs;
+    }
+
+    /**
+     * Age at which connections are replaced, below the idle timeouts of the server and of firewalls.
+     */
+    public long getMaxLifetimeMs() {
+        return maxLifetimeMs;
+    }
+
+    /**
+     * Whether statement latencies and connection waits are recorded for /api/metrics/db.
+     */
+    public boolean isInstrumentationEnabled() {
+        return instrumentationEnabled;
+    }
+
+    /**
+     * Statements taking at least this long are logged as slow queries (0 disables the log).
+     */
+    public long getSlowQueryMs() {
+        return slowQueryMs;
+    }
+
+    /**
+     * Number of recent slow queries kept for /api/metrics/db.
+     */
+    public int getSlowQueryLogSize() {
+        return slowQueryLogSize;
+    }
 }
@@ -10,9 +10,23 @@ import java.util.List;
  * Manages GitHub API token and repository tracking.
  */
 public class GitHubConfig {
+    private static final String DEFAULT_CACHE_FILE = "cache/github-releases.json";
+    private static final int DEFAULT_MIN_REFRESH_SECONDS = 60;
+    private static final int DEFAULT_POLL_INTERVAL_SECONDS = 900;
+    private static final int DEFAULT_PER_PAGE = 30;
+    private static final long DEFAULT_UPDATE_DEADLINE_MS = 5000;
+    private static final int DEFAULT_UPDATE_CONCURRENCY = 4;
+    
     private final String token;
     private final List<String> repos;
     private final boolean autoUpdate;
+    private final int perPage;
+    private final String cacheFile;
+    private final int minRefreshSeconds;
+    private final boolean pollerEnabled;
+    private final int pollIntervalSeconds;
+    private final long updateDeadlineMs;
+    private final int updateConcurrency;
     
     public GitHubConfig(ConfigurationSection config) {
         ConfigurationSection githubSection = config.getConfigurationSection("pluginmanager.github");
@@ -20,12 +34,48 @@ public class GitHubConfig {
             this.token = "";
             this.repos = Collections.emptyList();
             this.autoUpdate = false;
+            this.perPage = DEFAULT_PER_PAGE;
+            this.cacheFile = DEFAULT_CACHE_FILE;
+            this.minRefreshSeconds = DEFAULT_MIN_REFRESH_SECONDS;
+            this.pollerEnabled = true;
+            this.pollIntervalSeconds = DEFAULT_POLL_INTERVAL_SECONDS;
+            this.updateDeadlineMs = DEFAULT_UPDATE_DEADLINE_MS;
+            this.updateConcurrency = DEFAULT_UPDATE_CONCURRENCY;
             return;
         }
         
         this.token = githubSection.getString("token", "");
         this.repos = githubSection.getStringList("repos");
         this.autoUpdate = githubSection.getBoolean("auto_update", false);
+        // GitHub serves at most 100 releases per page
+        this.perPage = Math.max(1, Math.min(100, githubSection.getInt("per_page", DEFAULT_PER_PAGE)));
+        
+        ConfigurationSection cacheSection = githubSection.getConfigurationSection("cache");
+        if (cacheSection != null) {
+            this.cacheFile = cacheSection.getString("file", DEFAULT_CACHE_FILE);
+            this.minRefreshSeconds = Math.max(0, cacheSection.getInt("min_refresh_seconds", DEFAULT_MIN_REFRESH_SECONDS));
+        } else {
+            this.cacheFile = DEFAULT_CACHE_FILE;
+            this.minRefreshSeconds = DEFAULT_MIN_REFRESH_SECONDS;
+        }
+        
+        ConfigurationSection pollerSection = githubSection.getConfigurationSection("poller");
+        if (pollerSection != null) {
+            this.pollerEnabled = pollerSection.getBoolean("enabled", true);
+            this.pollIntervalSeconds = Math.max(60, pollerSection.getInt("interval_seconds", DEFAULT_POLL_INTERVAL_SECONDS));
+        } else {
+            this.pollerEnabled = true;
+            this.pollIntervalSeconds = DEFAULT_POLL_INTERVAL_SECONDS;
+        }
+        
+        ConfigurationSection updatesSection = githubSection.getConfigurationSection("updates");
+        if (updatesSection != null) {
+            this.updateDeadlineMs = Math.max(100, Math.min(60_000, updatesSection.getLong("deadline_ms", DEFAULT_UPDATE_DEADLINE_MS)));
+            this.updateConcurrency = Math.max(1, Math.min(16, updatesSection.getInt("concurrency", DEFAULT_UPDATE_CONCURRENCY)));
+        } else {
+            this.updateDeadlineMs = DEFAULT_UPDATE_DEADLINE_MS;
+            this.updateConcurrency = DEFAULT_UPDATE_CONCURRENCY;
+        }
     }
     
     public String getToken() {
@@ -43,4 +93,53 @@ public class GitHubConfig {
     public boolean isAutoUpdate() {
         return autoUpdate;
     }
+    
+    /**
+     * Releases per page requested from GitHub.
+     */
+    public int getPerPage() {
+        return perPage;
+    }
+    
+    /**
+     * File of the release cache, relative to the plugin folder.
+     */
+    public String getCacheFile() {
+        return cacheFile;
+    }
+    
+    /**
+     * How long a cached release list is served without asking GitHub (0 revalidates every lookup).
+     */
+    public int getMinRefreshSeconds() {
+        return minRefreshSeconds;
+    }
+    
+    /**
+     * Whether tracked repositories are checked for new releases in the background.
+     */
+    public boolean isPollerEnabled() {
+        return pollerEnabled;
+    }
+    
+    /**
+     * Target delay between two checks of a repository; longer while the rate limit is low.
+     */
+    public int getPollIntervalSeconds() {
+        return pollIntervalSeconds;
+    }
+    
+    /**
+     * How long GET /api/updates waits for the releases of all plugins before answering with partial results.
+     */
+    public long getUpdateDeadlineMs() {
+        return updateDeadlineMs;
+    }
+    
+    /**
+     * Repositories resolved at the same time by an update check.
+     */
+    public int getUpdateConcurrency() {
+        return updateConcurrency;
+    }
 }
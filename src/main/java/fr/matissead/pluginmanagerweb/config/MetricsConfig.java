@@ -0,0 +1,263 @@
+package fr.matissead.pluginmanagerweb.config;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Configuration holder for metrics collection settings.
+ * Controls how often buffered metric updates are written to the database
+ * and how much history is kept per metric.
+ */
+public class MetricsConfig {
+    private static final long DEFAULT_FLUSH_INTERVAL_MS = 5000;
+    private static final int DEFAULT_FLUSH_BATCH_SIZE = 500;
+    private static final List<String> DEFAULT_HISTORY_TIERS = List.of("1s:10m", "1m:24h", "1h:30d");
+    private static final int DEFAULT_EVENT_BUFFER_SIZE = 100;
+    private static final int DEFAULT_EVENT_MAX_PAYLOAD_BYTES = 4096;
+    private static final List<String> DEFAULT_LEADERBOARD_KEYS = List.of("commands_executed", "events_processed");
+    private static final int DEFAULT_LEADERBOARD_SIZE = 10;
+    private static final int DEFAULT_LEADERBOARD_MAX_KEYS = 32;
+    private static final long DEFAULT_LEADERBOARD_REFRESH_MS = 1000;
+    private static final long DEFAULT_SNAPSHOT_INTERVAL_MS = 1000;
+    private static final int DEFAULT_MAX_SERIES_PER_PLUGIN = 1000;
+    private static final int DEFAULT_MAX_SERIES_TOTAL = 20000;
+    private static final int DEFAULT_MAX_EVENT_TYPES_PER_PLUGIN = 100;
+
+    private final long flushIntervalMs;
+    private final int flushBatchSize;
+    private final List<String> historyTiers;
+    private final boolean prometheusEnabled;
+    private final boolean prometheusRequireAuth;
+    private final int eventBufferSize;
+    private final int eventMaxPayloadBytes;
+    private final double defaultEventSampleRate;
+    // Sampling overrides: plugin -> (event type or "default") -> rate
+    private final Map<String, Map<String, Double>> eventSampleRates = new HashMap<>();
+    private final List<String> leaderboardKeys;
+    private final int leaderboardSize;
+    private final int leaderboardMaxKeys;
+    private final long leaderboardRefreshMs;
+    private final long snapshotIntervalMs;
+    private final int maxSeriesPerPlugin;
+    private final int maxSeriesTotal;
+    private final int maxEventTypesPerPlugin;
+
+    public MetricsConfig(ConfigurationSection config) {
+        ConfigurationSection metricsSection = config.getConfigurationSection("pluginmanager.metrics");
+        if (metricsSection == null) {
+            this.flushIntervalMs = DEFAULT_FLUSH_INTERVAL_MS;
+            this.flushBatchSize = DEFAULT_FLUSH_BATCH_SIZE;
+            this.historyTiers = DEFAULT_HISTORY_TIERS;
+            this.prometheusEnabled = true;
+            this.prometheusRequireAuth = true;
+            this.eventBufferSize = DEFAULT_EVENT_BUFFER_SIZE;
+            this.eventMaxPayloadBytes = DEFAULT_EVENT_MAX_PAYLOAD_BYTES;
+            this.defaultEventSampleRate = 1.0;
+            this.leaderboardKeys = DEFAULT_LEADERBOARD_KEYS;
+            this.leaderboardSize = DEFAULT_LEADERBOARD_SIZE;
+            this.leaderboardMaxKeys = DEFAULT_LEADERBOARD_MAX_KEYS;
+            this.leaderboardRefreshMs = DEFAULT_LEADERBOARD_REFRESH_MS;
+            this.snapshotIntervalMs = DEFAULT_SNAPSHOT_INTERVAL_MS;
+            this.maxSeriesPerPlugin = DEFAULT_MAX_SERIES_PER_PLUGIN;
+            this.maxSeriesTotal = DEFAULT_MAX_SERIES_TOTAL;
+            this.maxEventTypesPerPlugin = DEFAULT_MAX_EVENT_TYPES_PER_PLUGIN;
+            return;
+        }
+
+        this.flushIntervalMs = Math.max(100, metricsSection.getLong("flush_interval_ms", DEFAULT_FLUSH_INTERVAL_MS));
+        this.flushBatchSize = Math.max(1, metricsSection.getInt("flush_batch_size", DEFAULT_FLUSH_BATCH_SIZE));
+        this.snapshotIntervalMs = Math.max(0, metricsSection.getLong("snapshot_interval_ms", DEFAULT_SNAPSHOT_INTERVAL_MS));
+        this.maxSeriesPerPlugin = Math.max(10, metricsSection.getInt("max_series_per_plugin", DEFAULT_MAX_SERIES_PER_PLUGIN));
+        this.maxSeriesTotal = Math.max(maxSeriesPerPlugin, metricsSection.getInt("max_series_total", DEFAULT_MAX_SERIES_TOTAL));
+        
+        List<String> tiers = metricsSection.getStringList("history_tiers");
+        this.historyTiers = tiers.isEmpty() ? DEFAULT_HISTORY_TIERS : tiers;
+        
+        ConfigurationSection prometheusSection = metricsSection.getConfigurationSection("prometheus");
+        if (prometheusSection != null) {
+            this.prometheusEnabled = prometheusSection.getBoolean("enabled", true);
+            this.prometheusRequireAuth = prometheusSection.getBoolean("require_auth", true);
+        } else {
+            this.prometheusEnabled = true;
+            this.prometheusRequireAuth = true;
+        }
+        
+        ConfigurationSection eventsSection = metricsSection.getConfigurationSection("events");
+        if (eventsSection != null) {
+            this.eventBufferSize = Math.max(1, eventsSection.getInt("buffer_size", DEFAULT_EVENT_BUFFER_SIZE));
+            this.eventMaxPayloadBytes = Math.max(64, eventsSection.getInt("max_payload_bytes", DEFAULT_EVENT_MAX_PAYLOAD_BYTES));
+            this.defaultEventSampleRate = clampRate(eventsSection.getDouble("default_sample_rate", 1.0));
+            this.maxEventTypesPerPlugin = Math.max(1, eventsSection.getInt("max_types_per_plugin", DEFAULT_MAX_EVENT_TYPES_PER_PLUGIN));
+            loadSampleRates(eventsSection.getConfigurationSection("sampling"));
+        } else {
+            this.maxEventTypesPerPlugin = DEFAULT_MAX_EVENT_TYPES_PER_PLUGIN;
+            this.eventBufferSize = DEFAULT_EVENT_BUFFER_SIZE;
+            this.eventMaxPayloadBytes = DEFAULT_EVENT_MAX_PAYLOAD_BYTES;
+            this.defaultEventSampleRate = 1.0;
+        }
+        
+        ConfigurationSection leaderboardSection = metricsSection.getConfigurationSection("leaderboard");
+        if (leaderboardSection != null) {
+            List<String> keys = leaderboardSection.getStringList("keys");
+            this.leaderboardKeys = keys.isEmpty() ? DEFAULT_LEADERBOARD_KEYS : keys;
+            this.leaderboardSize = Math.max(1, leaderboardSection.getInt("size", DEFAULT_LEADERBOARD_SIZE));
+            this.leaderboardMaxKeys = Math.max(leaderboardKeys.size(),
+                    leaderboardSection.getInt("max_keys", DEFAULT_LEADERBOARD_MAX_KEYS));
+            this.leaderboardRefreshMs = Math.max(50, leaderboardSection.getLong("refresh_ms", DEFAULT_LEADERBOARD_REFRESH_MS));
+        } else {
+            this.leaderboardKeys = DEFAULT_LEADERBOARD_KEYS;
+            this.leaderboardSize = DEFAULT_LEADERBOARD_SIZE;
+            this.leaderboardMaxKeys = DEFAULT_LEADERBOARD_MAX_KEYS;
+            this.leaderboardRefreshMs = DEFAULT_LEADERBOARD_REFRESH_MS;
+        }
+    }
+
+    /**
+     * Reads sampling overrides, either {@code Plugin: 0.1} or a per-type section
+     * {@code Plugin: {default: 0.5, player_move: 0.01}}.
+     */
+    private void loadSampleRates(ConfigurationSection samplingSection) {
+        if (samplingSection == null) {
+            return;
+        }
+        for (String pluginName : samplingSection.getKeys(false)) {
+            Map<String, Double> rates = new HashMap<>();
+            if (samplingSection.isConfigurationSection(pluginName)) {
+                ConfigurationSection pluginSection = samplingSection.getConfigurationSection(pluginName);
+                for (String eventType : pluginSection.getKeys(false)) {
+                    rates.put(eventType, clampRate(pluginSection.getDouble(eventType, 1.0)));
+                }
+            } else {
+                rates.put("default", clampRate(samplingSection.getDouble(pluginName, 1.0)));
+            }
+            eventSampleRates.put(pluginName, rates);
+        }
+    }
+
+    private static double clampRate(double rate) {
+        return Math.max(0.0, Math.min(1.0, rate));
+    }
+
+    /**
+     * Maximum time a metric update stays in memory before being written to the database.
+     */
+    public long getFlushIntervalMs() {
+        return flushIntervalMs;
+    }
+
+    /**
+     * Number of pending metric updates that triggers an early flush.
+     */
+    public int getFlushBatchSize() {
+        return flushBatchSize;
+    }
+
+    /**
+     * Minimum time between two published metrics snapshots served to the dashboard.
+     */
+    public long getSnapshotIntervalMs() {
+        return snapshotIntervalMs;
+    }
+
+    /**
+     * Maximum number of metric series per plugin; further keys go to overflow series.
+     */
+    public int getMaxSeriesPerPlugin() {
+        return maxSeriesPerPlugin;
+    }
+
+    /**
+     * Maximum number of metric series across all plugins.
+     */
+    public int getMaxSeriesTotal() {
+        return maxSeriesTotal;
+    }
+
+    /**
+     * History downsampling tiers as "resolution:retention" pairs, e.g. "1s:10m".
+     */
+    public List<String> getHistoryTiers() {
+        return historyTiers;
+    }
+
+    /**
+     * Whether the /metrics scrape endpoint is exposed.
+     */
+    public boolean isPrometheusEnabled() {
+        return prometheusEnabled;
+    }
+
+    /**
+     * Whether scraping /metrics requires a bearer token like the REST API.
+     */
+    public boolean isPrometheusRequireAuth() {
+        return prometheusRequireAuth;
+    }
+
+    /**
+     * Number of recent events kept per plugin and event type.
+     */
+    public int getEventBufferSize() {
+        return eventBufferSize;
+    }
+
+    /**
+     * Maximum number of event types retained per plugin; further types share an overflow buffer.
+     */
+    public int getMaxEventTypesPerPlugin() {
+        return maxEventTypesPerPlugin;
+    }
+
+    /**
+     * Maximum serialized size of a retained event payload; larger payloads are replaced by a marker.
+     */
+    public int getEventMaxPayloadBytes() {
+        return eventMaxPayloadBytes;
+    }
+
+    /**
+     * Fraction (0..1) of the events of a type that are retained. Events are always counted.
+     */
+    public double getEventSampleRate(String pluginName, String eventType) {
+        Map<String, Double> rates = eventSampleRates.get(pluginName);
+        if (rates == null) {
+            return defaultEventSampleRate;
+        }
+        Double rate = rates.get(eventType);
+        if (rate == null) {
+            rate = rates.get("default");
+        }
+        return rate != null ? rate : defaultEventSampleRate;
+    }
+
+    /**
+     * Metric keys ranked from startup and returned by the overview by default.
+     */
+    public List<String> getLeaderboardKeys() {
+        return leaderboardKeys;
+    }
+
+    /**
+     * Number of plugins kept in each leaderboard.
+     */
+    public int getLeaderboardSize() {
+        return leaderboardSize;
+    }
+
+    /**
+     * Maximum number of metric keys that can be ranked, including those requested by clients.
+     */
+    public int getLeaderboardMaxKeys() {
+        return leaderboardMaxKeys;
+    }
+
+    /**
+     * Interval at which metric changes are applied to the leaderboards.
+     */
+    public long getLeaderboardRefreshMs() {
+        return leaderboardRefreshMs;
+    }
+}
@@ -12,6 +12,8 @@ public class PluginManagerConfig {
     private final AuthConfig authConfig;
     private final GitHubConfig githubConfig;
     private final DatabaseConfig databaseConfig;
+    private final MetricsConfig metricsConfig;
+    private final AuditConfig auditConfig;
     
     public PluginManagerConfig(FileConfiguration config) {
         this.enabled = config.getBoolean("pluginmanager.enabled", true);
@@ -21,6 +23,8 @@ public class PluginManagerConfig {
             this.authConfig = new AuthConfig(config);
             this.githubConfig = new GitHubConfig(config);
             this.databaseConfig = new DatabaseConfig(config);
+            this.metricsConfig = new MetricsConfig(config);
+            this.auditConfig = new AuditConfig(config);
         } catch (Exception e) {
             throw new IllegalStateException("Failed to load PluginManagerWeb configuration: " + e.getMessage(), e);
         }
@@ -45,4 +49,12 @@ public class PluginManagerConfig {
     public DatabaseConfig getDatabaseConfig() {
         return databaseConfig;
     }
+    
+    public MetricsConfig getMetricsConfig() {
+        return metricsConfig;
+    }
+    
+    public AuditConfig getAuditConfig() {
+        return auditConfig;
+    }
 }
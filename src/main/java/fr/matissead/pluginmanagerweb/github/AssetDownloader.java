@@ -0,0 +1,202 @@
+package fr.matissead.pluginmanagerweb.github;
+
+import fr.matissead.pluginmanagerweb.config.GitHubConfig;
+import fr.matissead.pluginmanagerweb.model.ReleaseEntry;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+
+/**
+ * Downloads release assets into a {@code .part} file next to the target, then moves it into place.
+ * <p>
+ * A partial file left by an interrupted download is resumed with a {@code Range} request. The SHA-256
+ * of the asset is computed while it is written (the partial file is hashed first when resuming), checked
+ * against the digest published by GitHub when there is one, and stored in the release. The target is
+ * only replaced by a complete, verified file.
+ */
+final class AssetDownloader {
+    private static final Logger logger = LoggerFactory.getLogger(AssetDownloader.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Progress is reported at most this often, and once when the download ends
+    private static final long PROGRESS_INTERVAL_MS = 250;
+
+    private final OkHttpClient httpClient;
+    private final GitHubConfig config;
+
+    AssetDownloader(OkHttpClient httpClient, GitHubConfig config) {
+        this.httpClient = httpClient;
+        this.config = config;
+    }
+
+    boolean download(ReleaseEntry release, Path target, GitHubClient.ProgressListener listener) {
+        // Named after the URL, so that a partial file is only resumed by the same asset
+        String suffix = Integer.toHexString(release.getDownloadUrl().hashCode());
+        Path part = target.resolveSibling(target.getFileName() + "." + suffix + ".part");
+        try {
+            Files.createDirectories(target.toAbsolutePath().getParent());
+            String checksum = transfer(release, part, listener);
+            if (checksum == null) {
+                return false;
+            }
+            String expected = release.getChecksum();
+            if (expected != null && !expected.equalsIgnoreCase(checksum)) {
+                logger.error("Checksum mismatch for {}: expected {}, got {}",
+                        release.getDownloadUrl(), expected, checksum);
+                Files.deleteIfExists(part);
+                return false;
+            }
+            try {
+                Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            release.setChecksum(checksum);
+            logger.info("Downloaded asset to: {} (sha256 {})", target.toAbsolutePath(), checksum);
+            return true;
+        } catch (IOException e) {
+            // The partial file is kept, to be resumed by the next attempt
+            logger.error("Error downloading asset from " + release.getDownloadUrl(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Completes the partial file and returns its SHA-256, or null if the server refused the request.
+     * A server that ignores the range, or a partial file that no longer matches, restarts the download.
+     */
+    private String transfer(ReleaseEntry release, Path part, GitHubClient.ProgressListener listener) throws IOException {
+        MessageDigest digest = newDigest();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long offset = Files.isRegularFile(part) ? Files.size(part) : 0;
+        long expectedSize = release.getAssetSize();
+        if (expectedSize > 0 && offset > expectedSize) {
+            offset = 0;
+        }
+
+        Request.Builder requestBuilder = new Request.Builder().url(release.getDownloadUrl());
+        if (config.hasToken()) {
+            requestBuilder.header("Authorization", "Bearer " + config.getToken());
+        }
+        if (offset > 0) {
+            requestBuilder.header("Range", "bytes=" + offset + "-");
+        }
+
+        try (Response response = httpClient.newCall(requestBuilder.build()).execute()) {
+            if (response.code() == 416 && offset > 0 && offset == expectedSize) {
+                // Received entirely by the previous attempt
+                hash(part, offset, digest, buffer);
+                return HexFormat.of().formatHex(digest.digest());
+            }
+            if (response.code() == 416) {
+                // The partial file does not belong to this asset
+                logger.warn("Discarding partial download {} rejected by the server", part);
+                Files.deleteIfExists(part);
+                return null;
+            }
+            if (!response.isSuccessful()) {
+                logger.error("Failed to download asset: HTTP {}", response.code());
+                return null;
+            }
+            ResponseBody body = response.body();
+            if (body == null) {
+                logger.error("Empty response body when downloading asset");
+                return null;
+            }
+            if (offset > 0 && (response.code() != 206 || !matchesRange(response.header("Content-Range"), offset))) {
+                logger.info("Server did not resume {} at byte {}, downloading it again",
+                        release.getDownloadUrl(), offset);
+                offset = 0;
+            } else if (offset > 0) {
+                logger.info("Resuming download of {} at byte {}", release.getDownloadUrl(), offset);
+                hash(part, offset, digest, buffer);
+            }
+
+            long length = body.contentLength();
+            long total = length >= 0 ? offset + length : expectedSize > 0 ? expectedSize : -1;
+            long written = offset;
+            try (InputStream in = body.byteStream();
+                 FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                channel.truncate(offset);
+                channel.position(offset);
+                long lastProgress = System.currentTimeMillis();
+                byte[] array = buffer.array();
+                int read;
+                while ((read = in.read(array)) != -1) {
+                    digest.update(array, 0, read);
+                    buffer.clear().limit(read);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    written += read;
+                    long now = System.currentTimeMillis();
+                    if (listener != null && now - lastProgress >= PROGRESS_INTERVAL_MS) {
+                        lastProgress = now;
+                        listener.onProgress(written, total);
+                    }
+                }
+                // On disk before the move makes it visible
+                channel.force(true);
+            }
+            if (listener != null) {
+                listener.onProgress(written, total);
+            }
+            if (total >= 0 && written != total) {
+                throw new IOException("Download ended at byte " + written + " of " + total);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        }
+    }
+
+    /**
+     * Checks that a 206 response starts where the partial file ends: "bytes 1000-1999/2000".
+     */
+    private static boolean matchesRange(String contentRange, long offset) {
+        if (contentRange == null) {
+            return false;
+        }
+        String range = contentRange.trim().toLowerCase(Locale.ROOT);
+        return range.startsWith("bytes " + offset + "-");
+    }
+
+    private static void hash(Path file, long length, MessageDigest digest, ByteBuffer buffer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long remaining = length;
+            while (remaining > 0) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+                int read = channel.read(buffer);
+                if (read < 0) {
+                    throw new IOException("Partial file " + file + " shorter than " + length + " bytes");
+                }
+                buffer.flip();
+                digest.update(buffer);
+                remaining -= read;
+            }
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform provides SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,9 +1,7 @@
 package fr.matissead.pluginmanagerweb.github;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import fr.matissead.pluginmanagerweb.config.GitHubConfig;
 import fr.matissead.pluginmanagerweb.model.ReleaseEntry;
 import okhttp3.OkHttpClient;
@@ -14,43 +12,111 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Client for interacting with the GitHub API.
- * Handles fetching releases and downloading assets.
+ * Handles fetching releases and downloading assets (see {@link AssetDownloader}). Release pages are parsed
+ * as they stream in, kept in a {@link ReleaseCache} persisted in the plugin folder and revalidated with
+ * conditional requests.
  */
 public class GitHubClient {
     private static final Logger logger = LoggerFactory.getLogger(GitHubClient.class);
     private static final String GITHUB_API_BASE = "https://api.github.com";
     private final OkHttpClient httpClient;
     private final GitHubConfig config;
-    private final Gson gson;
+    private final ReleaseCache cache;
+    private final long minRefreshMillis;
+    private final AssetDownloader downloader;
+    private volatile RateLimit rateLimit;
     
-    public GitHubClient(GitHubConfig config) {
+    /**
+     * Receives the progress of an asset download, a few times per second and once at the end.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        /**
+         * @param total size of the asset in bytes, or -1 if unknown
+         */
+        void onProgress(long downloaded, long total);
+    }
+    
+    public GitHubClient(GitHubConfig config, File dataFolder) {
         this.config = config;
-        this.gson = new Gson();
+        this.cache = new ReleaseCache(new File(dataFolder, config.getCacheFile()).toPath());
+        this.minRefreshMillis = TimeUnit.SECONDS.toMillis(config.getMinRefreshSeconds());
         this.httpClient = new OkHttpClient.Builder()
                 .connectTimeout(30, TimeUnit.SECONDS)
                 .readTimeout(30, TimeUnit.SECONDS)
                 .writeTimeout(30, TimeUnit.SECONDS)
                 .build();
+        this.downloader = new AssetDownloader(httpClient, config);
     }
     
     /**
-     * Fetches releases for a GitHub repository.
+     * Fetches the first page of releases of a GitHub repository.
+     * Pages are cached: a page checked less than {@code min_refresh_seconds} ago is served as is,
+     * an older one is revalidated with a conditional request, and a cached page is still served
+     * when GitHub cannot be reached or refuses the request.
      * @param repo Repository in format "owner/repo"
      * @return List of releases
      */
     public List<ReleaseEntry> getReleases(String repo) {
-        List<ReleaseEntry> releases = new ArrayList<>();
-        String url = GITHUB_API_BASE + "/repos/" + repo + "/releases";
+        return fetchPage(repo, 1, false).releases();
+    }
+    
+    /**
+     * Fetches a page of releases, of {@code per_page} releases. Pages are only requested when asked for.
+     * @param page page number, from 1
+     */
+    public ReleasePage getReleasePage(String repo, int page) {
+        return fetchPage(repo, page, false);
+    }
+    
+    /**
+     * Revalidates the cached first page of releases of a repository, whatever its age.
+     */
+    public ReleasePage refreshReleases(String repo) {
+        return fetchPage(repo, 1, true);
+    }
+    
+    /**
+     * Returns the cached first page of releases of a repository without contacting GitHub,
+     * or null if it is not cached.
+     */
+    public ReleasePage getCachedPage(String repo) {
+        ReleaseCache.Entry cached = cache.get(pageUrl(repo, 1));
+        return cached != null ? new ReleasePage(cached.releases(), 1, cached.hasNext()) : null;
+    }
+    
+    /**
+     * Returns the rate limit reported by the last GitHub API response, or null before the first one.
+     */
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+    
+    private String pageUrl(String repo, int page) {
+        String url = GITHUB_API_BASE + "/repos/" + repo + "/releases?per_page=" + config.getPerPage();
+        return page > 1 ? url + "&page=" + page : url;
+    }
+    
+    private ReleasePage fetchPage(String repo, int page, boolean force) {
+        String url = pageUrl(repo, page);
+        ReleaseCache.Entry cached = cache.get(url);
+        long now = System.currentTimeMillis();
+        if (!force && cached != null && now - cached.checkedAt() < minRefreshMillis) {
+            return new ReleasePage(cached.releases(), page, cached.hasNext());
+        }
+        ReleasePage fallback = cached != null
+                ? new ReleasePage(cached.releases(), page, cached.hasNext())
+                : new ReleasePage(new ArrayList<>(), page, false);
         
         Request.Builder requestBuilder = new Request.Builder()
                 .url(url)
@@ -59,73 +125,156 @@ public class GitHubClient {
         if (config.hasToken()) {
             requestBuilder.header("Authorization", "Bearer " + config.getToken());
         }
+        if (cached != null && cached.etag() != null) {
+            requestBuilder.header("If-None-Match", cached.etag());
+        } else if (cached != null && cached.lastModified() != null) {
+            requestBuilder.header("If-Modified-Since", cached.lastModified());
+        }
         
         try (Response response = httpClient.newCall(requestBuilder.build()).execute()) {
+            recordRateLimit(response, now);
+            if (response.code() == 304 && cached != null) {
+                // Not counted against the rate limit
+                cache.revalidated(url, now);
+                logger.debug("Releases of {} (page {}) unchanged", repo, page);
+                return fallback;
+            }
             if (!response.isSuccessful()) {
                 logger.error("Failed to fetch releases for {}: HTTP {}", repo, response.code());
-                return releases;
+                return fallback;
             }
             
             ResponseBody body = response.body();
             if (body == null) {
                 logger.error("Empty response body for releases from {}", repo);
-                return releases;
+                return fallback;
             }
             
-            JsonArray releasesArray = gson.fromJson(body.string(), JsonArray.class);
-            boolean isFirstRelease = true;
-            
-            for (JsonElement element : releasesArray) {
-                JsonObject releaseObj = element.getAsJsonObject();
-                ReleaseEntry release = parseRelease(repo, releaseObj);
-                
+            List<ReleaseEntry> releases = readReleases(repo, body);
+            if (page == 1) {
                 // Mark first non-prerelease as latest
-                if (isFirstRelease && !release.isPrerelease()) {
-                    release.setLatest(true);
-                    isFirstRelease = false;
-                }
-                
-                releases.add(release);
+                releases.stream().filter(r -> !r.isPrerelease()).findFirst().ifPresent(r -> r.setLatest(true));
             }
             
-            logger.info("Fetched {} releases for {}", releases.size(), repo);
+            String link = response.header("Link");
+            boolean hasNext = link != null && link.contains("rel=\"next\"");
+            logger.info("Fetched {} releases for {} (page {})", releases.size(), repo, page);
+            List<ReleaseEntry> unmodifiable = Collections.unmodifiableList(releases);
+            cache.put(url, new ReleaseCache.Entry(repo, response.header("ETag"), response.header("Last-Modified"),
+                    now, unmodifiable, hasNext));
+            return new ReleasePage(unmodifiable, page, hasNext);
             
-        } catch (IOException e) {
+        } catch (IOException | IllegalStateException | DateTimeParseException e) {
             logger.error("Error fetching releases for " + repo, e);
+            return fallback;
+        }
+    }
+    
+    /**
+     * Parses a page of releases as it is received, keeping only the fields of {@link ReleaseEntry}:
+     * the response is neither buffered nor turned into a JSON tree.
+     */
+    private List<ReleaseEntry> readReleases(String repo, ResponseBody body) throws IOException {
+        List<ReleaseEntry> releases = new ArrayList<>(config.getPerPage());
+        try (JsonReader reader = new JsonReader(body.charStream())) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                releases.add(readRelease(repo, reader));
+            }
+            reader.endArray();
         }
-        
         return releases;
     }
     
-    private ReleaseEntry parseRelease(String repo, JsonObject releaseObj) {
+    private ReleaseEntry readRelease(String repo, JsonReader reader) throws IOException {
         ReleaseEntry release = new ReleaseEntry();
         release.setRepo(repo);
-        release.setTag(releaseObj.get("tag_name").getAsString());
-        release.setName(releaseObj.get("name").getAsString());
-        release.setPrerelease(releaseObj.get("prerelease").getAsBoolean());
-        
-        String publishedAtStr = releaseObj.get("published_at").getAsString();
-        release.setPublishedAt(Instant.parse(publishedAtStr));
-        
-        if (releaseObj.has("body") && !releaseObj.get("body").isJsonNull()) {
-            release.setBody(releaseObj.get("body").getAsString());
-        }
-        
-        // Extract first .jar asset as download URL
-        JsonArray assets = releaseObj.getAsJsonArray("assets");
-        for (JsonElement assetElement : assets) {
-            JsonObject asset = assetElement.getAsJsonObject();
-            String name = asset.get("name").getAsString();
-            if (name.endsWith(".jar")) {
-                release.setDownloadUrl(asset.get("browser_download_url").getAsString());
-                release.setAssetSize(asset.get("size").getAsLong());
-                break;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "tag_name" -> release.setTag(nextStringOrNull(reader));
+                case "name" -> release.setName(nextStringOrNull(reader));
+                case "prerelease" -> release.setPrerelease(reader.nextBoolean());
+                case "published_at" -> {
+                    String publishedAt = nextStringOrNull(reader);
+                    release.setPublishedAt(publishedAt != null ? Instant.parse(publishedAt) : null);
+                }
+                case "body" -> release.setBody(nextStringOrNull(reader));
+                case "assets" -> readAssets(reader, release);
+                default -> reader.skipValue();
             }
         }
-        
+        reader.endObject();
         return release;
     }
     
+    /**
+     * Uses the first .jar asset as download URL, with its SHA-256 digest when GitHub provides one.
+     */
+    private void readAssets(JsonReader reader, ReleaseEntry release) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String name = null;
+            String url = null;
+            long size = 0;
+            String digest = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "name" -> name = nextStringOrNull(reader);
+                    case "browser_download_url" -> url = nextStringOrNull(reader);
+                    case "size" -> size = reader.nextLong();
+                    case "digest" -> digest = nextStringOrNull(reader);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (release.getDownloadUrl() == null && name != null && name.endsWith(".jar")) {
+                release.setDownloadUrl(url);
+                release.setAssetSize(size);
+                if (digest != null && digest.startsWith("sha256:")) {
+                    release.setChecksum(digest.substring("sha256:".length()));
+                }
+            }
+        }
+        reader.endArray();
+    }
+    
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+    
+    /**
+     * Keeps the quota headers of an API response. Exhausted quotas are answered with 403 or 429,
+     * secondary limits with a Retry-After delay.
+     */
+    private void recordRateLimit(Response response, long now) {
+        String remaining = response.header("X-RateLimit-Remaining");
+        String reset = response.header("X-RateLimit-Reset");
+        String retryAfter = response.header("Retry-After");
+        if (remaining == null && retryAfter == null) {
+            return;
+        }
+        try {
+            RateLimit previous = rateLimit;
+            int limit = parseInt(response.header("X-RateLimit-Limit"), previous != null ? previous.limit() : 60);
+            rateLimit = new RateLimit(limit,
+                    parseInt(remaining, previous != null ? previous.remaining() : limit),
+                    reset != null ? Long.parseLong(reset.trim()) * 1000 : now,
+                    retryAfter != null ? now + Long.parseLong(retryAfter.trim()) * 1000 : 0);
+        } catch (NumberFormatException e) {
+            logger.debug("Ignoring malformed rate limit headers", e);
+        }
+    }
+    
+    private static int parseInt(String value, int fallback) {
+        return value != null ? Integer.parseInt(value.trim()) : fallback;
+    }
+    
     /**
      * Downloads a plugin jar file from GitHub.
      * @param downloadUrl URL to download from
@@ -133,44 +282,18 @@ public class GitHubClient {
      * @return true if download successful
      */
     public boolean downloadAsset(String downloadUrl, File targetFile) {
-        Request.Builder requestBuilder = new Request.Builder()
-                .url(downloadUrl);
-        
-        if (config.hasToken()) {
-            requestBuilder.header("Authorization", "Bearer " + config.getToken());
-        }
-        
-        try (Response response = httpClient.newCall(requestBuilder.build()).execute()) {
-            if (!response.isSuccessful()) {
-                logger.error("Failed to download asset: HTTP {}", response.code());
-                return false;
-            }
-            
-            ResponseBody body = response.body();
-            if (body == null) {
-                logger.error("Empty response body when downloading asset");
-                return false;
-            }
-            
-            // Ensure parent directory exists
-            targetFile.getParentFile().mkdirs();
-            
-            try (InputStream is = body.byteStream();
-                 FileOutputStream fos = new FileOutputStream(targetFile)) {
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                while ((bytesRead = is.read(buffer)) != -1) {
-                    fos.write(buffer, 0, bytesRead);
-                }
-            }
-            
-            logger.info("Downloaded asset to: {}", targetFile.getAbsolutePath());
-            return true;
-            
-        } catch (IOException e) {
-            logger.error("Error downloading asset from " + downloadUrl, e);
-            return false;
-        }
+        return downloadAsset(new ReleaseEntry(null, null, downloadUrl), targetFile, null);
+    }
+    
+    /**
+     * Downloads the jar asset of a release, resuming a previous interrupted attempt.
+     * The target file is replaced only once the download is complete; the SHA-256 of the asset is
+     * checked against the release checksum when it is known, and stored in the release otherwise.
+     * @param listener receives the progress of the download, may be null
+     * @return true if download successful
+     */
+    public boolean downloadAsset(ReleaseEntry release, File targetFile, ProgressListener listener) {
+        return downloader.download(release, targetFile.toPath(), listener);
     }
     
     /**
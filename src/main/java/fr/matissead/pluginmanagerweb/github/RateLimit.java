@@ -0,0 +1,11 @@
+package fr.matissead.pluginmanagerweb.github;
+
+/**
+ * GitHub API quota, as reported by the headers of the last response.
+ * @param limit requests allowed per window (60 per hour without a token)
+ * @param remaining requests left in the current window
+ * @param resetAtMillis when the window ends and the quota is restored
+ * @param retryAfterMillis when requests may resume after a secondary rate limit, 0 if none
+ */
+public record RateLimit(int limit, int remaining, long resetAtMillis, long retryAfterMillis) {
+}
@@ -0,0 +1,158 @@
+package fr.matissead.pluginmanagerweb.github;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import fr.matissead.pluginmanagerweb.model.ReleaseEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Parsed GitHub release pages by request URL, with the validators (ETag, Last-Modified) of the
+ * response they were parsed from, so that lookups can be revalidated with a conditional request.
+ * <p>
+ * The cache is saved to a JSON file whenever a list changes and loaded on startup. Loaded lists
+ * are revalidated before their first use: a 304 response costs no rate limit quota.
+ */
+final class ReleaseCache {
+    private static final Logger logger = LoggerFactory.getLogger(ReleaseCache.class);
+
+    /**
+     * A cached page. {@code checkedAt} is when GitHub last confirmed it, 0 for a page loaded from disk.
+     */
+    record Entry(String repo, String etag, String lastModified, long checkedAt, List<ReleaseEntry> releases,
+                 boolean hasNext) {
+
+        Entry checkedAt(long millis) {
+            return new Entry(repo, etag, lastModified, millis, releases, hasNext);
+        }
+    }
+
+    // Persisted form, with timestamps as epoch milliseconds
+    private record StoredRelease(String tag, String name, Long publishedAt, String downloadUrl, String checksum,
+                                 boolean latest, boolean prerelease, String body, long assetSize) {
+    }
+
+    private record StoredEntry(String url, String repo, String etag, String lastModified,
+                               List<StoredRelease> releases, boolean hasNext) {
+    }
+
+    private final Path file;
+    private final Gson gson = new Gson();
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    ReleaseCache(Path file) {
+        this.file = file;
+        load();
+    }
+
+    Entry get(String url) {
+        return entries.get(url);
+    }
+
+    /**
+     * Stores a list fetched from GitHub and saves the cache.
+     */
+    void put(String url, Entry entry) {
+        entries.put(url, entry);
+        save();
+    }
+
+    /**
+     * Records that GitHub confirmed a cached list is current (304 response).
+     */
+    void revalidated(String url, long millis) {
+        entries.computeIfPresent(url, (key, entry) -> entry.checkedAt(millis));
+    }
+
+    private void load() {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            StoredEntry[] stored = gson.fromJson(reader, StoredEntry[].class);
+            if (stored == null) {
+                return;
+            }
+            for (StoredEntry entry : stored) {
+                if (entry == null || entry.url() == null || entry.releases() == null) {
+                    continue;
+                }
+                List<ReleaseEntry> releases = new ArrayList<>(entry.releases().size());
+                for (StoredRelease release : entry.releases()) {
+                    releases.add(toRelease(entry.repo(), release));
+                }
+                entries.put(entry.url(), new Entry(entry.repo(), entry.etag(), entry.lastModified(), 0,
+                        Collections.unmodifiableList(releases), entry.hasNext()));
+            }
+            logger.info("Loaded cached GitHub releases of {} repositories", entries.size());
+        } catch (IOException | JsonParseException e) {
+            // A damaged cache only costs a full fetch of each list
+            logger.warn("Ignoring unreadable GitHub release cache {}: {}", file, e.getMessage());
+            entries.clear();
+        }
+    }
+
+    /**
+     * Rewrites the cache file in one step, so that a crash never leaves it half-written.
+     */
+    private synchronized void save() {
+        List<StoredEntry> stored = new ArrayList<>(entries.size());
+        entries.forEach((url, entry) -> {
+            List<StoredRelease> releases = new ArrayList<>(entry.releases().size());
+            for (ReleaseEntry release : entry.releases()) {
+                releases.add(new StoredRelease(release.getTag(), release.getName(),
+                        release.getPublishedAt() != null ? release.getPublishedAt().toEpochMilli() : null,
+                        release.getDownloadUrl(), release.getChecksum(), release.isLatest(),
+                        release.isPrerelease(), release.getBody(), release.getAssetSize()));
+            }
+            stored.add(new StoredEntry(url, entry.repo(), entry.etag(), entry.lastModified(), releases,
+                    entry.hasNext()));
+        });
+
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                    gson.toJson(stored, writer);
+                }
+                try {
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to save the GitHub release cache to {}", file, e);
+        }
+    }
+
+    private static ReleaseEntry toRelease(String repo, StoredRelease stored) {
+        ReleaseEntry release = new ReleaseEntry(repo, stored.tag(), stored.downloadUrl());
+        release.setName(stored.name());
+        release.setPublishedAt(stored.publishedAt() != null ? Instant.ofEpochMilli(stored.publishedAt()) : null);
+        release.setChecksum(stored.checksum());
+        release.setLatest(stored.latest());
+        release.setPrerelease(stored.prerelease());
+        release.setBody(stored.body());
+        release.setAssetSize(stored.assetSize());
+        return release;
+    }
+}
@@ -0,0 +1,29 @@
+package fr.matissead.pluginmanagerweb.github;
+
+import fr.matissead.pluginmanagerweb.model.ReleaseEntry;
+
+import java.util.List;
+
+/**
+ * One page of the releases of a repository, newest first.
+ * @param page page number, from 1
+ * @param hasNext whether GitHub announced a next page in the Link header
+ */
+public record ReleasePage(List<ReleaseEntry> releases, int page, boolean hasNext) {
+
+    /**
+     * Returns the release marked latest, or else the newest non-prerelease of the page; null if none.
+     */
+    public ReleaseEntry latest() {
+        ReleaseEntry latest = null;
+        for (ReleaseEntry release : releases) {
+            if (release.isLatest()) {
+                return release;
+            }
+            if (latest == null && !release.isPrerelease()) {
+                latest = release;
+            }
+        }
+        return latest;
+    }
+}
@@ -0,0 +1,180 @@
+package fr.matissead.pluginmanagerweb.github;
+
+import fr.matissead.pluginmanagerweb.config.GitHubConfig;
+import fr.matissead.pluginmanagerweb.model.ReleaseEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the tracked repositories for new releases in the background and keeps the first page
+ * of their releases in memory, so that release lookups do not wait for GitHub.
+ * <p>
+ * Each repository is checked on its own schedule, several at a time, with random jitter so that
+ * checks do not line up. Checks are conditional requests through the {@link GitHubClient} cache.
+ * The delay between checks grows when the rate limit runs low: the remaining quota, less a share
+ * kept for dashboard lookups, is spread until the window resets.
+ */
+public class ReleasePoller implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ReleasePoller.class);
+    private static final int MAX_THREADS = 4;
+    // Random delay added to each check, as a fraction of the delay
+    private static final double JITTER = 0.1;
+    // Share of the quota left for on-demand lookups
+    private static final double RESERVED_QUOTA = 0.2;
+    // The first checks are spread over this window, after the server startup
+    private static final long STARTUP_DELAY_MS = 5_000;
+    private static final long STARTUP_SPREAD_MS = 30_000;
+
+    /**
+     * Receives the releases that appeared since the previous check, oldest first.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void onNewRelease(String repo, ReleaseEntry release);
+    }
+
+    private final GitHubClient client;
+    private final List<String> repos;
+    private final long intervalMillis;
+    private final Listener listener;
+    private final Map<String, ReleasePage> releases = new ConcurrentHashMap<>();
+    private volatile ScheduledExecutorService executor;
+
+    public ReleasePoller(GitHubClient client, GitHubConfig config, Listener listener) {
+        this.client = client;
+        this.repos = List.copyOf(config.getRepos());
+        this.intervalMillis = TimeUnit.SECONDS.toMillis(config.getPollIntervalSeconds());
+        this.listener = listener;
+    }
+
+    /**
+     * Starts checking the tracked repositories. Releases cached on disk are the starting point:
+     * releases published while the server was stopped are announced by the first check.
+     */
+    public void start() {
+        if (repos.isEmpty() || executor != null) {
+            return;
+        }
+        for (String repo : repos) {
+            ReleasePage cached = client.getCachedPage(repo);
+            if (cached != null) {
+                releases.put(repo, cached);
+            }
+        }
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(Math.min(MAX_THREADS, repos.size()), r -> {
+            Thread thread = new Thread(r, "PluginManagerWeb-Release-Poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor = scheduler;
+        for (String repo : repos) {
+            long delay = STARTUP_DELAY_MS + ThreadLocalRandom.current().nextLong(STARTUP_SPREAD_MS);
+            scheduler.schedule(() -> poll(repo), delay, TimeUnit.MILLISECONDS);
+        }
+        logger.info("Checking {} GitHub repositories for new releases every {} s",
+                repos.size(), TimeUnit.MILLISECONDS.toSeconds(intervalMillis));
+    }
+
+    /**
+     * Returns the first page of releases of a repository from the last check, or fetches it through
+     * the client when the repository is not polled or has not been checked yet.
+     */
+    public ReleasePage getFirstPage(String repo) {
+        ReleasePage polled = executor != null ? releases.get(repo) : null;
+        return polled != null ? polled : client.getReleasePage(repo, 1);
+    }
+
+    @Override
+    public void close() {
+        ScheduledExecutorService scheduler = executor;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void poll(String repo) {
+        try {
+            client.refreshReleases(repo);
+            // Null when the request failed and nothing was cached yet
+            ReleasePage latest = client.getCachedPage(repo);
+            if (latest != null) {
+                ReleasePage previous = releases.put(repo, latest);
+                // A revalidated page keeps its list
+                if (previous != null && previous.releases() != latest.releases()) {
+                    announceNew(repo, previous.releases(), latest.releases());
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Failed to check {} for new releases", repo, e);
+        } finally {
+            schedule(repo);
+        }
+    }
+
+    private void announceNew(String repo, List<ReleaseEntry> previous, List<ReleaseEntry> latest) {
+        Set<String> known = new HashSet<>();
+        for (ReleaseEntry release : previous) {
+            known.add(release.getTag());
+        }
+        List<ReleaseEntry> added = new ArrayList<>();
+        for (ReleaseEntry release : latest) {
+            if (!known.contains(release.getTag())) {
+                added.add(release);
+            }
+        }
+        // GitHub lists releases newest first
+        Collections.reverse(added);
+        for (ReleaseEntry release : added) {
+            logger.info("New release {} of {}", release.getTag(), repo);
+            listener.onNewRelease(repo, release);
+        }
+    }
+
+    private void schedule(String repo) {
+        ScheduledExecutorService scheduler = executor;
+        if (scheduler == null || scheduler.isShutdown()) {
+            return;
+        }
+        try {
+            scheduler.schedule(() -> poll(repo), nextDelayMillis(System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closed meanwhile
+        }
+    }
+
+    /**
+     * Returns the delay before the next check of a repository: the configured interval, or
+     * longer if the quota left (less the reserved share) would not last until the window resets.
+     */
+    long nextDelayMillis(long now) {
+        long delay = intervalMillis;
+        RateLimit limit = client.getRateLimit();
+        if (limit != null) {
+            if (limit.retryAfterMillis() > now) {
+                delay = Math.max(delay, limit.retryAfterMillis() - now);
+            }
+            long untilReset = Math.max(0, limit.resetAtMillis() - now);
+            int budget = limit.remaining() - (int) Math.ceil(limit.limit() * RESERVED_QUOTA);
+            if (budget <= 0) {
+                delay = Math.max(delay, untilReset);
+            } else {
+                // Never past the reset, when the whole quota is back
+                delay = Math.max(delay, Math.min(untilReset, untilReset * repos.size() / budget));
+            }
+        }
+        return delay + (long) (delay * JITTER * ThreadLocalRandom.current().nextDouble());
+    }
+}
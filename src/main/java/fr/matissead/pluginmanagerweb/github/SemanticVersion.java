@@ -0,0 +1,148 @@
+package fr.matissead.pluginmanagerweb.github;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Version number ordered by semantic versioning precedence, parsed leniently from plugin
+ * versions and release tags: "v1.2", "1.2.3-SNAPSHOT" or "MyPlugin-2.0.1+build.5" are accepted.
+ * Missing numeric parts count as 0 and a pre-release sorts before its release; build metadata
+ * is ignored.
+ */
+public final class SemanticVersion implements Comparable<SemanticVersion> {
+    private static final Pattern VERSION = Pattern.compile(
+            "(\\d+(?:\\.\\d+)*)(?:-([0-9A-Za-z-]+(?:\\.[0-9A-Za-z-]+)*))?(?:\\+[0-9A-Za-z.-]+)?");
+    // The same versions are compared on every update check
+    private static final int MAX_CACHED = 4096;
+    private static final Map<String, Optional<SemanticVersion>> CACHE = new ConcurrentHashMap<>();
+
+    private final long[] numbers;
+    private final String[] preRelease;
+
+    private SemanticVersion(long[] numbers, String[] preRelease) {
+        this.numbers = numbers;
+        this.preRelease = preRelease;
+    }
+
+    /**
+     * Parses the first version number found in a string, or returns null if there is none.
+     */
+    public static SemanticVersion parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        Optional<SemanticVersion> cached = CACHE.get(value);
+        if (cached == null) {
+            if (CACHE.size() >= MAX_CACHED) {
+                CACHE.clear();
+            }
+            cached = Optional.ofNullable(parseUncached(value));
+            CACHE.put(value, cached);
+        }
+        return cached.orElse(null);
+    }
+
+    private static SemanticVersion parseUncached(String value) {
+        Matcher matcher = VERSION.matcher(value);
+        if (!matcher.find()) {
+            return null;
+        }
+        String[] parts = matcher.group(1).split("\\.");
+        long[] numbers = new long[parts.length];
+        try {
+            for (int i = 0; i < parts.length; i++) {
+                numbers[i] = Long.parseLong(parts[i]);
+            }
+        } catch (NumberFormatException e) {
+            // More digits than a long holds
+            return null;
+        }
+        String[] preRelease = matcher.group(2) != null ? matcher.group(2).split("\\.") : new String[0];
+        return new SemanticVersion(numbers, preRelease);
+    }
+
+    public boolean isPreRelease() {
+        return preRelease.length > 0;
+    }
+
+    @Override
+    public int compareTo(SemanticVersion other) {
+        int length = Math.max(numbers.length, other.numbers.length);
+        for (int i = 0; i < length; i++) {
+            long a = i < numbers.length ? numbers[i] : 0;
+            long b = i < other.numbers.length ? other.numbers[i] : 0;
+            if (a != b) {
+                return Long.compare(a, b);
+            }
+        }
+        if (isPreRelease() != other.isPreRelease()) {
+            return isPreRelease() ? -1 : 1;
+        }
+        for (int i = 0; i < Math.min(preRelease.length, other.preRelease.length); i++) {
+            int result = compareIdentifiers(preRelease[i], other.preRelease[i]);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(preRelease.length, other.preRelease.length);
+    }
+
+    /**
+     * Numeric identifiers compare numerically and sort before alphanumeric ones.
+     */
+    private static int compareIdentifiers(String a, String b) {
+        boolean numericA = isNumeric(a);
+        boolean numericB = isNumeric(b);
+        if (numericA && numericB) {
+            return a.length() != b.length() ? Integer.compare(a.length(), b.length()) : a.compareTo(b);
+        }
+        if (numericA != numericB) {
+            return numericA ? -1 : 1;
+        }
+        return a.compareTo(b);
+    }
+
+    private static boolean isNumeric(String identifier) {
+        for (int i = 0; i < identifier.length(); i++) {
+            if (!Character.isDigit(identifier.charAt(i))) {
+                return false;
+            }
+        }
+        return !identifier.isEmpty();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof SemanticVersion other && compareTo(other) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        // Trailing zeros do not change the version: 1.2 equals 1.2.0
+        int end = numbers.length;
+        while (end > 0 && numbers[end - 1] == 0) {
+            end--;
+        }
+        int hash = 1;
+        for (int i = 0; i < end; i++) {
+            hash = 31 * hash + Long.hashCode(numbers[i]);
+        }
+        return 31 * hash + Arrays.hashCode(preRelease);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < numbers.length; i++) {
+            builder.append(i == 0 ? "" : ".").append(numbers[i]);
+        }
+        if (isPreRelease()) {
+            builder.append('-').append(String.join(".", preRelease));
+        }
+        return builder.toString();
+    }
+}
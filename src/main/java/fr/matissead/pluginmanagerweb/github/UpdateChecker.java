@@ -0,0 +1,162 @@
+package fr.matissead.pluginmanagerweb.github;
+
+import fr.matissead.pluginmanagerweb.config.GitHubConfig;
+import fr.matissead.pluginmanagerweb.model.PluginUpdate;
+import fr.matissead.pluginmanagerweb.model.ReleaseEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Compares installed plugins with the latest releases of their repositories.
+ * <p>
+ * Repositories are resolved concurrently, at most {@code updates.concurrency} at a time, through
+ * the {@link ReleasePoller} (and so the release cache). A check returns once every repository is
+ * resolved or the deadline has passed: plugins still waiting are reported as timed out, and their
+ * lookups carry on in the background, so that the next check finds them cached. A repository has at
+ * most one lookup queued or running: checks made meanwhile wait for it instead of queueing another.
+ */
+public class UpdateChecker implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(UpdateChecker.class);
+
+    /**
+     * An installed plugin and the repository it is released from.
+     */
+    public record Target(String plugin, String repo, String currentVersion) {
+    }
+
+    /**
+     * @param complete false if some plugins were not resolved within the deadline
+     */
+    public record Report(List<PluginUpdate> updates, boolean complete) {
+    }
+
+    private final ReleasePoller releasePoller;
+    private final long deadlineMillis;
+    private final ExecutorService executor;
+    // Latest release lookups queued or running, by repository
+    private final Map<String, CompletableFuture<ReleaseEntry>> inFlight = new ConcurrentHashMap<>();
+
+    public UpdateChecker(ReleasePoller releasePoller, GitHubConfig config) {
+        this.releasePoller = releasePoller;
+        this.deadlineMillis = config.getUpdateDeadlineMs();
+        this.executor = Executors.newFixedThreadPool(config.getUpdateConcurrency(), r -> {
+            Thread thread = new Thread(r, "PluginManagerWeb-Update-Check");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Resolves the latest release of every target, waiting at most for the configured deadline.
+     * Results are in the order of the targets.
+     */
+    public Report check(List<Target> targets) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        List<CompletableFuture<PluginUpdate>> futures = new ArrayList<>(targets.size());
+        for (Target target : targets) {
+            futures.add(lookup(target.repo()).thenApply(latest -> resolve(target, latest)));
+        }
+
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                    .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            logger.debug("Update check deadline of {} ms reached", deadlineMillis);
+        } catch (ExecutionException e) {
+            // Reported per plugin below
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<PluginUpdate> updates = new ArrayList<>(targets.size());
+        boolean complete = true;
+        for (int i = 0; i < targets.size(); i++) {
+            CompletableFuture<PluginUpdate> future = futures.get(i);
+            if (future.isDone() && !future.isCompletedExceptionally()) {
+                updates.add(future.join());
+            } else {
+                Target target = targets.get(i);
+                if (!future.isDone()) {
+                    complete = false;
+                }
+                // A failed lookup gives an unknown status
+                PluginUpdate.Status status = future.isDone() ? PluginUpdate.Status.UNKNOWN : PluginUpdate.Status.TIMED_OUT;
+                updates.add(new PluginUpdate(target.plugin(), target.repo(), target.currentVersion(), status,
+                        null, null, null));
+            }
+        }
+        return new Report(updates, complete);
+    }
+
+    /**
+     * Returns the lookup of the latest release of a repository, reusing the one in flight if any.
+     */
+    private CompletableFuture<ReleaseEntry> lookup(String repo) {
+        CompletableFuture<ReleaseEntry> existing = inFlight.get(repo);
+        if (existing != null) {
+            return existing;
+        }
+        CompletableFuture<ReleaseEntry> lookup = new CompletableFuture<>();
+        existing = inFlight.putIfAbsent(repo, lookup);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    lookup.complete(releasePoller.getFirstPage(repo).latest());
+                } catch (RuntimeException e) {
+                    lookup.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(repo, lookup);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Closed meanwhile
+            inFlight.remove(repo, lookup);
+            lookup.completeExceptionally(e);
+        }
+        return lookup;
+    }
+
+    private PluginUpdate resolve(Target target, ReleaseEntry latest) {
+        if (latest == null) {
+            return new PluginUpdate(target.plugin(), target.repo(), target.currentVersion(),
+                    PluginUpdate.Status.NO_RELEASE, null, null, null);
+        }
+        return new PluginUpdate(target.plugin(), target.repo(), target.currentVersion(),
+                compare(target.currentVersion(), latest.getTag()), latest.getTag(), latest.getPublishedAt(),
+                latest.getDownloadUrl());
+    }
+
+    static PluginUpdate.Status compare(String currentVersion, String latestTag) {
+        SemanticVersion current = SemanticVersion.parse(currentVersion);
+        SemanticVersion latest = SemanticVersion.parse(latestTag);
+        if (current == null || latest == null) {
+            boolean same = latestTag != null && latestTag.equalsIgnoreCase(currentVersion);
+            return same ? PluginUpdate.Status.UP_TO_DATE : PluginUpdate.Status.UNKNOWN;
+        }
+        int comparison = latest.compareTo(current);
+        if (comparison > 0) {
+            return PluginUpdate.Status.UPDATE_AVAILABLE;
+        }
+        return comparison == 0 ? PluginUpdate.Status.UP_TO_DATE : PluginUpdate.Status.AHEAD;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
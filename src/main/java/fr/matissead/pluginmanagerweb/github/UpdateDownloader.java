@@ -0,0 +1,73 @@
+package fr.matissead.pluginmanagerweb.github;
+
+import fr.matissead.pluginmanagerweb.model.ReleaseEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Downloads plugin updates in the background, one at a time, so that the request starting a
+ * download returns at once. Downloads go through {@link GitHubClient#downloadAsset(ReleaseEntry, File,
+ * GitHubClient.ProgressListener)}: they are resumed after a failure and verified before replacing the target.
+ */
+public class UpdateDownloader implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(UpdateDownloader.class);
+
+    private final GitHubClient client;
+    private final ExecutorService executor;
+    // Plugins with a download queued or running
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    public UpdateDownloader(GitHubClient client) {
+        this.client = client;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "PluginManagerWeb-Download");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues the download of a release of a plugin.
+     * @param progress receives the progress of the download
+     * @param done receives whether the download succeeded
+     * @return false if a download of this plugin is already queued or running
+     */
+    public boolean submit(String pluginName, ReleaseEntry release, File target,
+                          GitHubClient.ProgressListener progress, Consumer<Boolean> done) {
+        if (!pending.add(pluginName)) {
+            return false;
+        }
+        try {
+            executor.execute(() -> {
+                boolean success = false;
+                try {
+                    success = client.downloadAsset(release, target, progress);
+                } catch (RuntimeException e) {
+                    logger.error("Failed to download {} of {}", release.getTag(), pluginName, e);
+                } finally {
+                    pending.remove(pluginName);
+                }
+                done.accept(success);
+            });
+        } catch (RejectedExecutionException e) {
+            // Closed meanwhile
+            pending.remove(pluginName);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        // Interrupted downloads keep their partial file, resumed by the next attempt
+        executor.shutdownNow();
+    }
+}
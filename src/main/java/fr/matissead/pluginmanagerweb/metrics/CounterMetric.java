@@ -0,0 +1,66 @@
+package fr.matissead.pluginmanagerweb.metrics;
+
+import fr.matissead.pluginmanagerweb.api.Counter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counter series backed by a {@link LongAdder}, so concurrent increments never lose updates.
+ */
+final class CounterMetric extends Metric implements Counter {
+    private final LongAdder adder = new LongAdder();
+    
+    CounterMetric(String pluginName, String key, MetricRegistry registry, int initialState) {
+        super(pluginName, key, registry, initialState);
+    }
+    
+    @Override
+    public void increment() {
+        adder.increment();
+        updated();
+    }
+    
+    @Override
+    public void add(long delta) {
+        adder.add(delta);
+        updated();
+    }
+    
+    @Override
+    public long get() {
+        return adder.sum();
+    }
+    
+    /**
+     * Sets the starting value without flagging the series as updated.
+     */
+    void seed(long value) {
+        adder.add(value);
+    }
+    
+    @Override
+    MetricType type() {
+        return MetricType.COUNTER;
+    }
+    
+    @Override
+    Object value() {
+        return adder.sum();
+    }
+    
+    @Override
+    double sample() {
+        return adder.sum();
+    }
+    
+    @Override
+    void reset() {
+        adder.reset();
+    }
+    
+    @Override
+    long valueBytes() {
+        // LongAdder without contention cells
+        return 48;
+    }
+}
@@ -0,0 +1,222 @@
+package fr.matissead.pluginmanagerweb.metrics;
+
+import com.google.gson.Gson;
+import fr.matissead.pluginmanagerweb.config.MetricsConfig;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, sampled retention of the events reported through {@code recordEvent}.
+ * <p>
+ * Each (plugin, event type) pair owns a fixed-size ring buffer of its latest sampled events.
+ * Payloads are serialized once when retained and replaced by a small marker when they exceed
+ * the configured size, so memory is bounded by buffer size times payload cap per type.
+ * Events that are not sampled only cost a counter increment.
+ */
+final class EventStore {
+    static final String OVERFLOW_TYPE = "_overflow";
+    
+    private final MetricsConfig config;
+    private final Gson gson = new Gson();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, Map<String, EventRing>> plugins = new ConcurrentHashMap<>();
+    
+    EventStore(MetricsConfig config) {
+        this.config = config;
+    }
+    
+    /**
+     * Returns the ring of an event type, creating it with the configured sampling rate.
+     * Types beyond the per-plugin limit share the plugin's overflow ring.
+     */
+    EventRing ring(String pluginName, String eventType) {
+        Map<String, EventRing> rings = plugins.get(pluginName);
+        if (rings == null) {
+            rings = plugins.computeIfAbsent(pluginName, k -> new ConcurrentHashMap<>());
+        }
+        EventRing ring = rings.get(eventType);
+        if (ring != null) {
+            return ring;
+        }
+        
+        String type = rings.size() >= config.getMaxEventTypesPerPlugin() ? OVERFLOW_TYPE : eventType;
+        return rings.computeIfAbsent(type, t -> new EventRing(
+            t, config.getEventBufferSize(), config.getEventSampleRate(pluginName, t)));
+    }
+    
+    /**
+     * Returns the estimated heap used by the retained events of a plugin.
+     */
+    long memoryBytes(String pluginName) {
+        Map<String, EventRing> rings = plugins.get(pluginName);
+        if (rings == null) {
+            return 0;
+        }
+        long bytes = 0;
+        for (EventRing ring : rings.values()) {
+            bytes += ring.memoryBytes();
+        }
+        return bytes;
+    }
+    
+    /**
+     * Records an event, keeping it if it is sampled.
+     */
+    void record(EventRing ring, Map<String, Object> payload) {
+        long now = System.currentTimeMillis();
+        ring.seen.increment();
+        ring.lastSeenMs = now;
+        
+        double rate = ring.sampleRate;
+        if (rate <= 0 || (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate)) {
+            return;
+        }
+        
+        ring.add(new RetainedEvent(sequence.incrementAndGet(), ring.type, Instant.ofEpochMilli(now), rate,
+            serialize(payload)));
+    }
+    
+    /**
+     * Returns up to {@code limit} retained events older than {@code beforeSeq}, newest first.
+     *
+     * @param eventType event type, or null for every type of the plugin
+     */
+    List<RetainedEvent> page(String pluginName, String eventType, long beforeSeq, int limit) {
+        Map<String, EventRing> rings = plugins.get(pluginName);
+        if (rings == null || limit <= 0) {
+            return List.of();
+        }
+        
+        List<RetainedEvent> result = new ArrayList<>();
+        if (eventType != null) {
+            EventRing ring = rings.get(eventType);
+            if (ring != null) {
+                ring.collect(beforeSeq, limit, result);
+            }
+            return result;
+        }
+        
+        // Each ring returns its newest matches; the merged list keeps the overall newest
+        for (EventRing ring : rings.values()) {
+            ring.collect(beforeSeq, limit, result);
+        }
+        result.sort(Comparator.comparingLong(RetainedEvent::seq).reversed());
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+    
+    /**
+     * Returns per-type statistics of a plugin: events seen, retained and last seen time.
+     */
+    Map<String, Object> stats(String pluginName) {
+        Map<String, Object> result = new TreeMap<>();
+        Map<String, EventRing> rings = plugins.get(pluginName);
+        if (rings == null) {
+            return result;
+        }
+        for (EventRing ring : rings.values()) {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("seen", ring.seen.sum());
+            stats.put("retained", ring.size());
+            stats.put("sampleRate", ring.sampleRate);
+            stats.put("lastSeen", Instant.ofEpochMilli(ring.lastSeenMs).toString());
+            result.put(ring.type, stats);
+        }
+        return result;
+    }
+    
+    void clear(String pluginName) {
+        plugins.remove(pluginName);
+    }
+    
+    private String serialize(Map<String, Object> payload) {
+        if (payload == null || payload.isEmpty()) {
+            return "{}";
+        }
+        String json;
+        try {
+            json = gson.toJson(payload);
+        } catch (RuntimeException e) {
+            return "{\"_unserializable\":true}";
+        }
+        
+        int maxBytes = config.getEventMaxPayloadBytes();
+        // Characters are a lower bound of the UTF-8 size; only encode when close to the cap
+        if (json.length() > maxBytes / 3) {
+            int size = json.getBytes(StandardCharsets.UTF_8).length;
+            if (size > maxBytes) {
+                return "{\"_truncated\":true,\"_size\":" + size + "}";
+            }
+        }
+        return json;
+    }
+    
+    /**
+     * Fixed-size ring buffer of the latest sampled events of one type.
+     */
+    static final class EventRing {
+        private final String type;
+        private final double sampleRate;
+        private final RetainedEvent[] slots;
+        private final LongAdder seen = new LongAdder();
+        private volatile long lastSeenMs;
+        private int head;
+        private int size;
+        
+        // Derived metric key, built once per type instead of on every event
+        final String countKey;
+        
+        EventRing(String type, int capacity, double sampleRate) {
+            this.type = type;
+            this.sampleRate = sampleRate;
+            this.slots = new RetainedEvent[Math.max(1, capacity)];
+            this.countKey = "event_" + type + "_count";
+        }
+        
+        synchronized void add(RetainedEvent event) {
+            slots[head] = event;
+            head = (head + 1) % slots.length;
+            size = Math.min(size + 1, slots.length);
+        }
+        
+        synchronized int size() {
+            return size;
+        }
+        
+        /**
+         * Ring object, slot array and retained events with their payloads.
+         */
+        synchronized long memoryBytes() {
+            long bytes = 96 + 16 + 8L * slots.length;
+            for (int i = 0; i < size; i++) {
+                RetainedEvent event = slots[Math.floorMod(head - 1 - i, slots.length)];
+                bytes += 64 + 40 + event.payload().length();
+            }
+            return bytes;
+        }
+        
+        /**
+         * Adds up to {@code limit} events with a sequence below {@code beforeSeq}, newest first.
+         */
+        synchronized void collect(long beforeSeq, int limit, List<RetainedEvent> target) {
+            int added = 0;
+            for (int i = 1; i <= size && added < limit; i++) {
+                RetainedEvent event = slots[Math.floorMod(head - i, slots.length)];
+                if (event.seq() < beforeSeq) {
+                    target.add(event);
+                    added++;
+                }
+            }
+        }
+    }
+}
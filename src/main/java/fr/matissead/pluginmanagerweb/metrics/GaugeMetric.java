@@ -0,0 +1,87 @@
+package fr.matissead.pluginmanagerweb.metrics;
+
+import fr.matissead.pluginmanagerweb.api.Gauge;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Numeric gauge series storing the raw bits of a double in an {@link AtomicLong}.
+ */
+final class GaugeMetric extends Metric implements Gauge {
+    private static final long EMPTY = Double.doubleToRawLongBits(Double.NaN);
+    
+    private final AtomicLong bits = new AtomicLong(EMPTY);
+    
+    GaugeMetric(String pluginName, String key, MetricRegistry registry, int initialState) {
+        super(pluginName, key, registry, initialState);
+    }
+    
+    @Override
+    public void set(long value) {
+        set((double) value);
+    }
+    
+    @Override
+    public void set(double value) {
+        bits.set(Double.doubleToRawLongBits(value));
+        updated();
+    }
+    
+    @Override
+    public void add(double delta) {
+        long current;
+        double base;
+        do {
+            current = bits.get();
+            base = current == EMPTY ? 0.0 : Double.longBitsToDouble(current);
+        } while (!bits.compareAndSet(current, Double.doubleToRawLongBits(base + delta)));
+        updated();
+    }
+    
+    @Override
+    public double get() {
+        return Double.longBitsToDouble(bits.get());
+    }
+    
+    /**
+     * Sets the starting value without flagging the series as updated.
+     */
+    void seed(double value) {
+        bits.set(Double.doubleToRawLongBits(value));
+    }
+    
+    @Override
+    MetricType type() {
+        return MetricType.GAUGE;
+    }
+    
+    /**
+     * Integral values are reported as longs so whole numbers keep their JSON representation.
+     */
+    @Override
+    Object value() {
+        double value = get();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return null;
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return (long) value;
+        }
+        return value;
+    }
+    
+    @Override
+    double sample() {
+        return get();
+    }
+    
+    @Override
+    void reset() {
+        bits.set(EMPTY);
+    }
+    
+    @Override
+    long valueBytes() {
+        return 24;
+    }
+}
@@ -0,0 +1,164 @@
+package fr.matissead.pluginmanagerweb.metrics;
+
+import fr.matissead.pluginmanagerweb.api.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Histogram series with a cumulative histogram and a ring of one-minute slices.
+ * <p>
+ * The metrics thread rotates the slices every minute, so the last complete minutes
+ * can be merged into windowed percentiles. Histograms are kept in memory only.
+ * <p>
+ * The first recording sets the unit of the series: values ({@link #record(long)}) or durations
+ * ({@link #recordNanos(long)}). Recordings in the other unit are dropped, as they cannot be
+ * reported on the same scale.
+ */
+final class HistogramMetric extends Metric implements Histogram {
+    private static final Logger logger = LoggerFactory.getLogger(HistogramMetric.class);
+    static final long SLICE_MS = 60_000;
+    private static final int UNIT_UNSET = 0;
+    private static final int UNIT_VALUE = 1;
+    private static final int UNIT_DURATION = 2;
+    static final int WINDOW_SLICES = 5;
+    
+    private final LogLinearHistogram total = new LogLinearHistogram();
+    private final LogLinearHistogram[] slices = new LogLinearHistogram[WINDOW_SLICES + 1];
+    private volatile int current;
+    private final AtomicInteger unit = new AtomicInteger(UNIT_UNSET);
+    private volatile boolean mixedUnitWarned;
+    
+    HistogramMetric(String pluginName, String key, MetricRegistry registry, int initialState) {
+        super(pluginName, key, registry, initialState);
+        for (int i = 0; i < slices.length; i++) {
+            slices[i] = new LogLinearHistogram();
+        }
+    }
+    
+    @Override
+    public void record(long value) {
+        if (acceptUnit(UNIT_VALUE)) {
+            add(value);
+        }
+    }
+    
+    @Override
+    public void recordDuration(Duration duration) {
+        recordNanos(duration.toNanos());
+    }
+    
+    @Override
+    public void recordNanos(long nanos) {
+        if (acceptUnit(UNIT_DURATION)) {
+            add(nanos);
+        }
+    }
+    
+    private void add(long value) {
+        slices[current].record(value);
+        total.record(value);
+        updated();
+    }
+    
+    /**
+     * Sets the unit of the series on its first recording, and rejects recordings in the other unit.
+     */
+    private boolean acceptUnit(int expected) {
+        int actual = unit.get();
+        if (actual == UNIT_UNSET) {
+            // Concurrent first recordings: one of them sets the unit
+            unit.compareAndSet(UNIT_UNSET, expected);
+            actual = unit.get();
+        }
+        if (actual == expected) {
+            return true;
+        }
+        if (!mixedUnitWarned) {
+            mixedUnitWarned = true;
+            logger.warn("Histogram {} of {} records {}; {} are dropped", key(), pluginName(),
+                    expected == UNIT_DURATION ? "values" : "durations",
+                    expected == UNIT_DURATION ? "durations" : "values");
+        }
+        return false;
+    }
+    
+    boolean isDuration() {
+        return unit.get() == UNIT_DURATION;
+    }
+    
+    /**
+     * Starts a new one-minute slice, dropping the oldest one.
+     */
+    void rotate() {
+        int next = (current + 1) % slices.length;
+        slices[next].reset();
+        current = next;
+    }
+    
+    /**
+     * Merges the last complete one-minute slices, excluding the one being filled.
+     */
+    LogLinearHistogram.Snapshot window(int minutes) {
+        int count = Math.min(minutes, WINDOW_SLICES);
+        int head = current;
+        LogLinearHistogram.Snapshot merged = LogLinearHistogram.Snapshot.empty();
+        for (int i = 1; i <= count; i++) {
+            merged = merged.merge(slices[Math.floorMod(head - i, slices.length)].snapshot());
+        }
+        return merged;
+    }
+    
+    LogLinearHistogram.Snapshot cumulative() {
+        return total.snapshot();
+    }
+    
+    /**
+     * Returns count, mean, p50, p90, p99 and max of a snapshot.
+     * Duration histograms are converted from nanoseconds to milliseconds.
+     */
+    Map<String, Object> summarize(LogLinearHistogram.Snapshot snapshot) {
+        double scale = isDuration() ? 1_000_000.0 : 1.0;
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", snapshot.count());
+        summary.put("mean", snapshot.mean() / scale);
+        summary.put("p50", snapshot.percentile(0.50) / scale);
+        summary.put("p90", snapshot.percentile(0.90) / scale);
+        summary.put("p99", snapshot.percentile(0.99) / scale);
+        summary.put("max", snapshot.max() / scale);
+        return summary;
+    }
+    
+    @Override
+    MetricType type() {
+        return MetricType.HISTOGRAM;
+    }
+    
+    @Override
+    Object value() {
+        return summarize(cumulative());
+    }
+    
+    @Override
+    void reset() {
+        unit.set(UNIT_UNSET);
+        total.reset();
+        for (LogLinearHistogram slice : slices) {
+            slice.reset();
+        }
+    }
+    
+    @Override
+    boolean isPersistent() {
+        return false;
+    }
+    
+    @Override
+    long valueBytes() {
+        return (WINDOW_SLICES + 2) * LogLinearHistogram.memoryBytes();
+    }
+}
@@ -0,0 +1,7 @@
+package fr.matissead.pluginmanagerweb.metrics;
+
+/**
+ * Plugin and value at one position of a metric leaderboard.
+ */
+public record LeaderboardEntry(String plugin, Number value) {
+}
@@ -0,0 +1,144 @@
+package fr.matissead.pluginmanagerweb.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Per-key rankings of plugins, maintained incrementally from a queue of changed series.
+ * <p>
+ * Ranked series enqueue themselves at most once between two drains (see {@link Metric#rank()}).
+ * The metrics thread drains the queue, re-positions each changed plugin in a sorted set and
+ * publishes an immutable top-K list per key. Reading a leaderboard is a volatile read of that
+ * list, independent of the number of plugins and metrics.
+ */
+final class Leaderboards {
+    private static final Logger logger = LoggerFactory.getLogger(Leaderboards.class);
+    
+    private final int size;
+    private final Queue<Metric> changes = new ConcurrentLinkedQueue<>();
+    private final Map<String, Board> boards = new ConcurrentHashMap<>();
+    private volatile long version;
+    
+    Leaderboards(int size) {
+        this.size = size;
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    void changed(Metric metric) {
+        changes.add(metric);
+    }
+    
+    /**
+     * Applies queued changes and republishes the affected leaderboards. Called from the metrics thread.
+     */
+    void drain() {
+        Set<Board> touched = new HashSet<>();
+        Metric metric;
+        while ((metric = changes.poll()) != null) {
+            // Clear before reading: a concurrent update re-queues the series
+            metric.clearRankPending();
+            Board board = boards.computeIfAbsent(metric.key(), k -> new Board());
+            double value = metric.isVisible() ? metric.sample() : Double.NaN;
+            board.update(metric, value);
+            touched.add(board);
+        }
+        for (Board board : touched) {
+            board.publish(size);
+        }
+        if (!touched.isEmpty()) {
+            version++;
+        }
+    }
+    
+    /**
+     * Returns a number that changes every time a leaderboard is republished.
+     */
+    long version() {
+        return version;
+    }
+    
+    void drainQuietly() {
+        try {
+            drain();
+        } catch (RuntimeException e) {
+            logger.error("Failed to update metric leaderboards", e);
+        }
+    }
+    
+    /**
+     * Returns the first {@code limit} entries of a key's leaderboard, highest value first.
+     */
+    List<LeaderboardEntry> top(String key, int limit) {
+        Board board = boards.get(key);
+        if (board == null) {
+            return List.of();
+        }
+        List<LeaderboardEntry> top = board.top;
+        return top.size() > limit ? top.subList(0, limit) : top;
+    }
+    
+    private record Position(String plugin, double value, Metric metric) {
+    }
+    
+    /**
+     * Full ranking of one key. Mutated only by the draining thread.
+     */
+    private static final class Board {
+        private static final Comparator<Position> ORDER = Comparator
+                .comparingDouble(Position::value).reversed()
+                .thenComparing(Position::plugin);
+        
+        private final Map<String, Position> byPlugin = new HashMap<>();
+        private final TreeSet<Position> ranking = new TreeSet<>(ORDER);
+        private volatile List<LeaderboardEntry> top = List.of();
+        
+        void update(Metric metric, double value) {
+            Position previous = byPlugin.get(metric.pluginName());
+            if (Double.isNaN(value)) {
+                // Only the series currently ranked may remove its plugin, not a replaced one
+                if (previous != null && previous.metric() == metric) {
+                    byPlugin.remove(metric.pluginName());
+                    ranking.remove(previous);
+                }
+                return;
+            }
+            if (previous != null) {
+                ranking.remove(previous);
+            }
+            Position position = new Position(metric.pluginName(), value, metric);
+            byPlugin.put(metric.pluginName(), position);
+            ranking.add(position);
+        }
+        
+        void publish(int size) {
+            List<LeaderboardEntry> entries = new ArrayList<>(Math.min(size, ranking.size()));
+            for (Position position : ranking) {
+                if (entries.size() == size) {
+                    break;
+                }
+                double value = position.value();
+                if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+                    entries.add(new LeaderboardEntry(position.plugin(), (long) value));
+                } else {
+                    entries.add(new LeaderboardEntry(position.plugin(), value));
+                }
+            }
+            top = List.copyOf(entries);
+        }
+    }
+}
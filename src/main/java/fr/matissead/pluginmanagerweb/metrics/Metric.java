@@ -0,0 +1,261 @@
+package fr.matissead.pluginmanagerweb.metrics;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Base class for a single metric series held by the {@link MetricRegistry}.
+ * <p>
+ * Tracks, in one volatile state word, whether the series has unpersisted changes,
+ * whether it is currently hidden (never reported or cleared), whether it was
+ * replaced by a metric of another type, whether it changed since the last published
+ * snapshot, and whether a ranked series changed since the leaderboards last read it.
+ * The common update path only performs a single volatile read once all these
+ * flags are set.
+ */
+abstract class Metric {
+    static final int DIRTY = 1;
+    static final int HIDDEN = 2;
+    static final int RETIRED = 4;
+    static final int RANKED = 8;
+    static final int RANK_PENDING = 16;
+    static final int CHANGED = 32;
+    
+    // Saturated states: further updates have nothing to flag
+    private static final int UPDATED = DIRTY | CHANGED;
+    private static final int RANKED_UPDATED = UPDATED | RANKED | RANK_PENDING;
+    
+    // Series object header and fields plus its ConcurrentHashMap node
+    private static final long SERIES_BYTES = 80;
+    
+    private static final AtomicIntegerFieldUpdater<Metric> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(Metric.class, "state");
+    
+    private final String pluginName;
+    private final String key;
+    private final MetricRegistry registry;
+    private volatile int state;
+    private volatile MetricHistory history;
+    
+    Metric(String pluginName, String key, MetricRegistry registry, int initialState) {
+        this.pluginName = pluginName;
+        this.key = key;
+        this.registry = registry;
+        this.state = initialState;
+    }
+    
+    String pluginName() {
+        return pluginName;
+    }
+    
+    String key() {
+        return key;
+    }
+    
+    abstract MetricType type();
+    
+    /**
+     * Returns the value reported in snapshots and persisted, or null if there is none.
+     */
+    abstract Object value();
+    
+    /**
+     * Resets the series to its initial, empty value.
+     */
+    abstract void reset();
+    
+    /**
+     * Returns the numeric value sampled into the history, or NaN for non-numeric series.
+     */
+    double sample() {
+        return Double.NaN;
+    }
+    
+    MetricHistory history() {
+        return history;
+    }
+    
+    void history(MetricHistory history) {
+        this.history = history;
+    }
+    
+    /**
+     * Estimated heap used by the series: object, map entry, value and history.
+     * The key is interned and accounted for separately.
+     */
+    long memoryBytes() {
+        MetricHistory current = history;
+        return SERIES_BYTES + valueBytes() + (current != null ? current.memoryBytes() : 0);
+    }
+    
+    /**
+     * Estimated heap used by the value holder of the series.
+     */
+    long valueBytes() {
+        return 0;
+    }
+    
+    /**
+     * Whether the series is written to the plugin_metrics table.
+     */
+    boolean isPersistent() {
+        return true;
+    }
+    
+    boolean isVisible() {
+        return (state & (HIDDEN | RETIRED)) == 0;
+    }
+    
+    boolean isRetired() {
+        return (state & RETIRED) != 0;
+    }
+    
+    /**
+     * Whether the persisted series of the plugin are not merged yet, see {@link MetricRegistry#isLoading}.
+     */
+    boolean isLoading() {
+        return registry.isLoading(pluginName);
+    }
+    
+    /**
+     * Must be called after every value change.
+     */
+    final void updated() {
+        int current = state;
+        if (current != UPDATED && current != RANKED_UPDATED) {
+            updatedSlow();
+        }
+    }
+    
+    private void updatedSlow() {
+        int current;
+        int next;
+        do {
+            current = state;
+            if ((current & RETIRED) != 0) {
+                return;
+            }
+            next = (current & RANKED) != 0 ? RANKED_UPDATED : UPDATED;
+        } while (!STATE.compareAndSet(this, current, next));
+        
+        if ((current & CHANGED) == 0) {
+            registry.changed();
+        }
+        if ((current & DIRTY) == 0) {
+            registry.dirty(this);
+        }
+        if ((next & RANK_PENDING) != 0 && (current & RANK_PENDING) == 0) {
+            registry.rankChanged(this);
+        }
+    }
+    
+    /**
+     * Clears the dirty flag before the value is read for persistence.
+     */
+    void clearDirty() {
+        int current;
+        do {
+            current = state;
+        } while (!STATE.compareAndSet(this, current, current & ~DIRTY));
+    }
+    
+    /**
+     * Sets the dirty flag again, e.g. after a failed write.
+     * @return true if the flag was not set before
+     */
+    boolean markDirty() {
+        int current;
+        do {
+            current = state;
+            if ((current & DIRTY) != 0) {
+                return false;
+            }
+        } while (!STATE.compareAndSet(this, current, current | DIRTY));
+        return true;
+    }
+    
+    /**
+     * Includes the series in the leaderboards and flags it for the next ranking pass.
+     * @return true if the registry must be notified
+     */
+    boolean rank() {
+        return (setFlag(RANKED | RANK_PENDING) & RANK_PENDING) == 0;
+    }
+    
+    /**
+     * Clears the changed flag before the value is read into a snapshot.
+     */
+    void clearChanged() {
+        int current;
+        do {
+            current = state;
+            if ((current & CHANGED) == 0) {
+                return;
+            }
+        } while (!STATE.compareAndSet(this, current, current & ~CHANGED));
+    }
+    
+    /**
+     * Clears the rank flag before the leaderboards read the value.
+     */
+    void clearRankPending() {
+        int current;
+        do {
+            current = state;
+        } while (!STATE.compareAndSet(this, current, current & ~RANK_PENDING));
+    }
+    
+    /**
+     * Hides the series until its next update.
+     */
+    void hide() {
+        rankRemoved(setFlag(HIDDEN));
+        registry.changed();
+        reset();
+        history = null;
+    }
+    
+    /**
+     * Permanently detaches the series after it was replaced by another metric type.
+     */
+    void retire() {
+        rankRemoved(setFlag(RETIRED));
+        registry.changed();
+    }
+    
+    /**
+     * Retires the series if it is still hidden, i.e. cleared and not updated since.
+     * @return true if the series was retired
+     */
+    boolean retireIfHidden() {
+        int current;
+        do {
+            current = state;
+            if ((current & HIDDEN) == 0 || (current & RETIRED) != 0) {
+                return false;
+            }
+        } while (!STATE.compareAndSet(this, current, current | RETIRED));
+        rankRemoved(current);
+        registry.changed();
+        return true;
+    }
+    
+    /**
+     * Lets the leaderboards drop a ranked series that stopped being visible.
+     */
+    private void rankRemoved(int previous) {
+        if ((previous & RANKED) != 0 && (setFlag(RANK_PENDING) & RANK_PENDING) == 0) {
+            registry.rankChanged(this);
+        }
+    }
+    
+    /**
+     * @return the state before the flag was set
+     */
+    private int setFlag(int flag) {
+        int current;
+        do {
+            current = state;
+        } while (!STATE.compareAndSet(this, current, current | flag));
+        return current;
+    }
+}
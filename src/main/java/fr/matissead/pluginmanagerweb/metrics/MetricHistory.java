@@ -0,0 +1,263 @@
+package fr.matissead.pluginmanagerweb.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Fixed-size history of a numeric series, kept in primitive ring buffers.
+ * <p>
+ * Every sample is folded into each tier of the {@link Layout}, e.g. 1s for 10 minutes,
+ * 1m for 24 hours and 1h for 30 days. Counter tiers keep the last value of each bucket
+ * in a {@code long[]}, gauge tiers keep the mean of each bucket in a {@code double[]}.
+ * Memory per series depends only on the layout and never grows.
+ */
+final class MetricHistory {
+    private static final long EMPTY_LONG = Long.MIN_VALUE;
+
+    private final Layout layout;
+    private final boolean integral;
+    private final long[][] longSlots;
+    private final double[][] doubleSlots;
+    private final long[] heads;
+    private final int[] samples;
+
+    MetricHistory(Layout layout, boolean integral) {
+        this.layout = layout;
+        this.integral = integral;
+        int tierCount = layout.tiers.size();
+        this.longSlots = integral ? new long[tierCount][] : null;
+        this.doubleSlots = integral ? null : new double[tierCount][];
+        this.heads = new long[tierCount];
+        this.samples = new int[tierCount];
+        for (int i = 0; i < tierCount; i++) {
+            int capacity = layout.tiers.get(i).capacity();
+            if (integral) {
+                longSlots[i] = new long[capacity];
+                Arrays.fill(longSlots[i], EMPTY_LONG);
+            } else {
+                doubleSlots[i] = new double[capacity];
+                Arrays.fill(doubleSlots[i], Double.NaN);
+            }
+            heads[i] = -1;
+        }
+    }
+
+    boolean isIntegral() {
+        return integral;
+    }
+
+    /**
+     * Records a sample taken at the given time into every tier.
+     */
+    synchronized void record(long timestampMs, double value) {
+        for (int i = 0; i < heads.length; i++) {
+            Tier tier = layout.tiers.get(i);
+            long bucket = timestampMs / tier.resolutionMs();
+            if (!advance(i, tier, bucket)) {
+                continue;
+            }
+
+            int slot = (int) (bucket % tier.capacity());
+            int n = ++samples[i];
+            if (integral) {
+                longSlots[i][slot] = (long) value;
+            } else {
+                double[] slots = doubleSlots[i];
+                slots[slot] = n == 1 ? value : slots[slot] + (value - slots[slot]) / n;
+            }
+        }
+    }
+
+    /**
+     * Returns the points of the finest tier covering the requested range.
+     */
+    synchronized Points query(long nowMs, long rangeMs) {
+        int tierIndex = layout.tierFor(rangeMs);
+        Tier tier = layout.tiers.get(tierIndex);
+        long head = heads[tierIndex];
+
+        long newest = nowMs / tier.resolutionMs();
+        long oldest = Math.max((nowMs - rangeMs) / tier.resolutionMs(), newest - tier.capacity() + 1);
+        oldest = Math.max(oldest, head - tier.capacity() + 1);
+        long last = Math.min(head, newest);
+
+        int span = head < 0 ? 0 : (int) Math.max(0, last - oldest + 1);
+        long[] times = new long[span];
+        long[] longValues = integral ? new long[span] : null;
+        double[] doubleValues = integral ? null : new double[span];
+        int count = 0;
+        for (long bucket = last - span + 1; bucket <= last; bucket++) {
+            int slot = (int) (bucket % tier.capacity());
+            if (integral) {
+                long value = longSlots[tierIndex][slot];
+                if (value != EMPTY_LONG) {
+                    times[count] = bucket * tier.resolutionMs();
+                    longValues[count++] = value;
+                }
+            } else {
+                double value = doubleSlots[tierIndex][slot];
+                if (!Double.isNaN(value)) {
+                    times[count] = bucket * tier.resolutionMs();
+                    doubleValues[count++] = value;
+                }
+            }
+        }
+
+        Object values = integral ? Arrays.copyOf(longValues, count) : Arrays.copyOf(doubleValues, count);
+        times = Arrays.copyOf(times, count);
+        return new Points(tier.resolutionMs(), times, values);
+    }
+
+    long memoryBytes() {
+        return layout.bytesPerSeries();
+    }
+
+    /**
+     * Moves the head of a tier to the given bucket, emptying the slots skipped in between.
+     * @return false if the bucket is older than the head (clock went backwards)
+     */
+    private boolean advance(int tierIndex, Tier tier, long bucket) {
+        long head = heads[tierIndex];
+        if (bucket == head) {
+            return true;
+        }
+        if (head >= 0 && bucket < head) {
+            return false;
+        }
+
+        long from = head < 0 ? bucket : head + 1;
+        long steps = Math.min(bucket - from + 1, tier.capacity());
+        for (long b = bucket - steps + 1; b <= bucket; b++) {
+            int slot = (int) (b % tier.capacity());
+            if (integral) {
+                longSlots[tierIndex][slot] = EMPTY_LONG;
+            } else {
+                doubleSlots[tierIndex][slot] = Double.NaN;
+            }
+        }
+        heads[tierIndex] = bucket;
+        samples[tierIndex] = 0;
+        return true;
+    }
+
+    /**
+     * Points returned by a history query. Values is a {@code long[]} for counters
+     * and a {@code double[]} for gauges.
+     */
+    record Points(long resolutionMs, long[] timestamps, Object values) {
+    }
+
+    /**
+     * Resolution and retention of one downsampling tier.
+     */
+    record Tier(long resolutionMs, long retentionMs, int capacity) {
+
+        /**
+         * Parses a tier definition such as {@code "1s:10m"} (resolution:retention).
+         */
+        static Tier parse(String spec) {
+            String[] parts = spec.split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid history tier '" + spec + "', expected resolution:retention");
+            }
+            long resolution = parseDuration(parts[0]);
+            long retention = parseDuration(parts[1]);
+            if (resolution <= 0 || retention < resolution) {
+                throw new IllegalArgumentException("Invalid history tier '" + spec + "'");
+            }
+            return new Tier(resolution, retention, (int) Math.min(Integer.MAX_VALUE, retention / resolution));
+        }
+    }
+
+    /**
+     * Tier layout shared by every series.
+     */
+    static final class Layout {
+        private final List<Tier> tiers;
+
+        Layout(List<Tier> tiers) {
+            if (tiers.isEmpty()) {
+                throw new IllegalArgumentException("At least one history tier is required");
+            }
+            List<Tier> sorted = new ArrayList<>(tiers);
+            sorted.sort((a, b) -> Long.compare(a.resolutionMs(), b.resolutionMs()));
+            this.tiers = List.copyOf(sorted);
+        }
+
+        static Layout parse(List<String> specs) {
+            List<Tier> tiers = new ArrayList<>();
+            for (String spec : specs) {
+                tiers.add(Tier.parse(spec.trim()));
+            }
+            return new Layout(tiers);
+        }
+
+        List<Tier> tiers() {
+            return tiers;
+        }
+
+        /**
+         * Interval at which series must be sampled, i.e. the finest resolution.
+         */
+        long sampleIntervalMs() {
+            return tiers.get(0).resolutionMs();
+        }
+
+        /**
+         * Index of the finest tier whose retention covers the range, or the coarsest tier.
+         */
+        int tierFor(long rangeMs) {
+            for (int i = 0; i < tiers.size(); i++) {
+                if (tiers.get(i).retentionMs() >= rangeMs) {
+                    return i;
+                }
+            }
+            return tiers.size() - 1;
+        }
+
+        /**
+         * Approximate heap used by one series: 8 bytes per slot plus array headers.
+         */
+        long bytesPerSeries() {
+            long bytes = 64;
+            for (Tier tier : tiers) {
+                bytes += 16 + 8L * tier.capacity() + 12;
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Parses a duration such as {@code 500ms}, {@code 90s}, {@code 10m}, {@code 24h} or {@code 30d}.
+     */
+    static long parseDuration(String text) {
+        String value = text.trim().toLowerCase(Locale.ROOT);
+        long unit;
+        String number;
+        if (value.endsWith("ms")) {
+            unit = 1;
+            number = value.substring(0, value.length() - 2);
+        } else if (value.endsWith("s")) {
+            unit = 1000;
+            number = value.substring(0, value.length() - 1);
+        } else if (value.endsWith("m")) {
+            unit = 60_000;
+            number = value.substring(0, value.length() - 1);
+        } else if (value.endsWith("h")) {
+            unit = 3_600_000;
+            number = value.substring(0, value.length() - 1);
+        } else if (value.endsWith("d")) {
+            unit = 86_400_000;
+            number = value.substring(0, value.length() - 1);
+        } else {
+            throw new IllegalArgumentException("Invalid duration '" + text + "'");
+        }
+        try {
+            return Long.parseLong(number.trim()) * unit;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid duration '" + text + "'");
+        }
+    }
+}
@@ -0,0 +1,622 @@
+package fr.matissead.pluginmanagerweb.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * In-memory registry of all metric series, grouped by plugin.
+ * <p>
+ * Series are typed objects resolved once per (plugin, key). Counter, gauge and histogram handles
+ * returned to other plugins are the registry entries themselves, so the string-keyed
+ * API and the handle API always update the same state.
+ * <p>
+ * The number of series is capped per plugin and globally. Once a limit is reached, new keys
+ * are aggregated into a per-plugin overflow series of the same type instead of growing the
+ * registry and the plugin_metrics table, and stored keys are interned.
+ * <p>
+ * Persisted series are loaded per plugin by a {@link PluginLoader}, so startup does not have to
+ * read the whole plugin_metrics table. A plugin accessed before its series are loaded gets an empty
+ * map at once; the load runs on the metrics thread and is merged into it. Once the persisted plugins
+ * are known, plugins without persisted series are never loaded.
+ */
+class MetricRegistry {
+
+    /**
+     * Receives series that transition from clean to dirty.
+     */
+    @FunctionalInterface
+    interface DirtyListener {
+        void onDirty(Metric metric);
+    }
+
+    /**
+     * Receives ranked series whose value changed or that stopped being visible.
+     */
+    @FunctionalInterface
+    interface RankListener {
+        void onRankChanged(Metric metric);
+    }
+
+    /**
+     * Reads the persisted series of a plugin, the first time the plugin is accessed.
+     * Called without any lock held.
+     */
+    @FunctionalInterface
+    interface PluginLoader {
+        void load(String pluginName, Restorer restorer);
+    }
+
+    /**
+     * Receives the persisted series of the plugin being loaded, with their stored type.
+     */
+    interface Restorer {
+        void counter(String key, long value);
+
+        void gauge(String key, double value);
+
+        void value(String key, Object value);
+    }
+
+    static final String OVERFLOW_COUNTER = "_overflow";
+    static final String OVERFLOW_GAUGE = "_overflow_gauge";
+    static final String OVERFLOW_HISTOGRAM = "_overflow_histogram";
+    static final String OVERFLOW_VALUE = "_overflow_value";
+    private static final Set<String> OVERFLOW_KEYS =
+            Set.of(OVERFLOW_COUNTER, OVERFLOW_GAUGE, OVERFLOW_HISTOGRAM, OVERFLOW_VALUE);
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricRegistry.class);
+
+    private final Map<String, Map<String, Metric>> plugins = new ConcurrentHashMap<>();
+    private final DirtyListener dirtyListener;
+    private final RankListener rankListener;
+    private final PluginLoader loader;
+    private final Executor loadExecutor;
+    private final int maxSeriesPerPlugin;
+    private final int maxSeriesTotal;
+    private final AtomicInteger seriesCount = new AtomicInteger();
+    private final Map<String, String> keyPool = new ConcurrentHashMap<>();
+    // New keys rejected per plugin because of the limits
+    private final Map<String, LongAdder> rejected = new ConcurrentHashMap<>();
+    // Plugins cleared since their hidden series were last reclaimed
+    private final Set<String> reclaimable = ConcurrentHashMap.newKeySet();
+    // Metric keys included in the leaderboards, replaced on write
+    private volatile Set<String> rankedKeys = Set.of();
+    // Bumped by the first change of a series after each snapshot, see Metric#CHANGED
+    private final AtomicLong version = new AtomicLong();
+    // Plugins known to have persisted series, loaded on their first read; null until listed
+    private volatile Set<String> persistedPlugins;
+    // Plugins whose persisted series are being merged into their map
+    private final Set<String> loading = ConcurrentHashMap.newKeySet();
+
+    MetricRegistry(DirtyListener dirtyListener, RankListener rankListener, PluginLoader loader,
+                   Executor loadExecutor, int maxSeriesPerPlugin, int maxSeriesTotal) {
+        this.dirtyListener = dirtyListener;
+        this.rankListener = rankListener;
+        this.loader = loader;
+        this.loadExecutor = loadExecutor;
+        this.maxSeriesPerPlugin = maxSeriesPerPlugin;
+        this.maxSeriesTotal = maxSeriesTotal;
+    }
+
+    /**
+     * Starts ranking a metric key: existing series are flagged and reported once,
+     * series created later are ranked from their first update.
+     * @return false if the key was already ranked
+     */
+    synchronized boolean rankKey(String key) {
+        if (rankedKeys.contains(key)) {
+            return false;
+        }
+        Set<String> keys = new HashSet<>(rankedKeys);
+        keys.add(key);
+        rankedKeys = Set.copyOf(keys);
+
+        for (Map<String, Metric> metrics : plugins.values()) {
+            Metric metric = metrics.get(key);
+            if (metric != null && metric.rank()) {
+                rankListener.onRankChanged(metric);
+            }
+        }
+        return true;
+    }
+
+    Set<String> rankedKeys() {
+        return rankedKeys;
+    }
+
+    /**
+     * Returns the counter for the given key, replacing a series of another type.
+     * A numeric gauge being replaced seeds the new counter, as incrementing it used to.
+     */
+    CounterMetric counter(String pluginName, String key) {
+        return resolve(pluginName, key, CounterMetric.class, OVERFLOW_COUNTER, (k, replaced, state) -> {
+            CounterMetric counter = new CounterMetric(pluginName, k, this, state);
+            if (replaced != null && replaced.isVisible() && replaced.value() instanceof Number number) {
+                counter.seed(number.longValue());
+            }
+            return counter;
+        });
+    }
+
+    /**
+     * Returns the numeric gauge for the given key, replacing a series of another type.
+     */
+    GaugeMetric gauge(String pluginName, String key) {
+        return resolve(pluginName, key, GaugeMetric.class, OVERFLOW_GAUGE,
+                (k, replaced, state) -> new GaugeMetric(pluginName, k, this, state));
+    }
+
+    /**
+     * Returns the histogram for the given key, replacing a series of another type.
+     */
+    HistogramMetric histogram(String pluginName, String key) {
+        return resolve(pluginName, key, HistogramMetric.class, OVERFLOW_HISTOGRAM,
+                (k, replaced, state) -> new HistogramMetric(pluginName, k, this, state));
+    }
+
+    /**
+     * Sets a value series. Numbers are stored as numeric gauges, anything else as an object value.
+     *
+     * @param persistent whether the value is written to the database
+     */
+    void setValue(String pluginName, String key, Object value, boolean persistent) {
+        if (value instanceof Number number) {
+            gauge(pluginName, key).set(number.doubleValue());
+            return;
+        }
+
+        resolve(pluginName, key, ValueMetric.class, OVERFLOW_VALUE,
+                (k, replaced, state) -> new ValueMetric(pluginName, k, this, state, persistent)).set(value);
+    }
+
+    /**
+     * Creates series of a given type.
+     */
+    @FunctionalInterface
+    private interface SeriesFactory<T extends Metric> {
+        T create(String key, Metric replaced, int initialState);
+    }
+
+    /**
+     * Returns the series of the given type for a key, creating it or replacing a series of another type.
+     * New keys beyond the cardinality limits are redirected to the plugin's overflow series of that type.
+     */
+    private <T extends Metric> T resolve(String pluginName, String key, Class<T> type,
+                                         String overflowKey, SeriesFactory<T> factory) {
+        Map<String, Metric> metrics = metrics(pluginName);
+        Metric metric = metrics.get(key);
+        if (type.isInstance(metric)) {
+            return type.cast(metric);
+        }
+
+        String target = key;
+        if (metric == null) {
+            target = admit(pluginName, metrics, key, overflowKey);
+            metric = metrics.get(target);
+            if (type.isInstance(metric)) {
+                return type.cast(metric);
+            }
+        }
+
+        return type.cast(metrics.compute(target, (k, existing) -> {
+            if (type.isInstance(existing)) {
+                return existing;
+            }
+            T created = factory.create(k, existing, initialState(k));
+            if (existing != null) {
+                existing.retire();
+            } else {
+                seriesCount.incrementAndGet();
+            }
+            return created;
+        }));
+    }
+
+    /**
+     * Returns the key under which a new series is stored: the interned key itself, or the
+     * overflow key if the plugin or the whole registry reached its series limit.
+     * Limits are soft: concurrent creations may exceed them by a few series.
+     */
+    private String admit(String pluginName, Map<String, Metric> metrics, String key, String overflowKey) {
+        if (OVERFLOW_KEYS.contains(key)) {
+            return key;
+        }
+        if (isFull(metrics) && !reclaimable.isEmpty()) {
+            reclaim(pluginName, metrics);
+        }
+        if (isFull(metrics)) {
+            LongAdder count = rejected.computeIfAbsent(pluginName, p -> new LongAdder());
+            if (count.sum() == 0) {
+                logger.warn("Plugin {} reached the metric series limit; new keys such as '{}' are aggregated into '{}'",
+                        pluginName, key, overflowKey);
+            }
+            count.increment();
+            return overflowKey;
+        }
+        return intern(key);
+    }
+
+    private boolean isFull(Map<String, Metric> metrics) {
+        return metrics.size() >= maxSeriesPerPlugin || seriesCount.get() >= maxSeriesTotal;
+    }
+
+    /**
+     * Frees the slots of cleared series: those of the plugin first, then those of
+     * every cleared plugin if the global limit is the one reached.
+     */
+    private void reclaim(String pluginName, Map<String, Metric> metrics) {
+        if (reclaimable.remove(pluginName)) {
+            reclaimHidden(metrics);
+        }
+        if (seriesCount.get() >= maxSeriesTotal) {
+            for (String other : reclaimable) {
+                Map<String, Metric> otherMetrics = plugins.get(other);
+                if (reclaimable.remove(other) && otherMetrics != null) {
+                    reclaimHidden(otherMetrics);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes series that were cleared and not updated since.
+     */
+    private void reclaimHidden(Map<String, Metric> metrics) {
+        for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+            Metric metric = entry.getValue();
+            if (metric.retireIfHidden() && metrics.remove(entry.getKey(), metric)) {
+                seriesCount.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Returns the shared instance of a metric key, so that keys used by many plugins are stored once.
+     */
+    String intern(String key) {
+        String existing = keyPool.putIfAbsent(key, key);
+        return existing != null ? existing : key;
+    }
+
+    /**
+     * Declares the plugins that have persisted series, so that reading their metrics loads them.
+     */
+    void persistedPlugins(Set<String> pluginNames) {
+        this.persistedPlugins = Set.copyOf(pluginNames);
+    }
+
+    /**
+     * Loads the persisted series of a plugin on the calling thread if it was not accessed yet.
+     * @return false if the plugin was already accessed
+     */
+    boolean load(String pluginName) {
+        if (plugins.containsKey(pluginName)) {
+            return false;
+        }
+        String name = intern(pluginName);
+        Map<String, Metric> metrics = new ConcurrentHashMap<>();
+        boolean marked = loading.add(name);
+        if (plugins.putIfAbsent(name, metrics) != null) {
+            if (marked) {
+                loading.remove(name);
+            }
+            return false;
+        }
+        loadSeries(name, metrics);
+        return true;
+    }
+
+    /**
+     * Whether the persisted series of a plugin are still being merged: its series must not be
+     * written before, or the stored values would be overwritten by the updates made meanwhile.
+     */
+    boolean isLoading(String pluginName) {
+        return !loading.isEmpty() && loading.contains(pluginName);
+    }
+
+    /**
+     * Returns a version that increases whenever a series changes after the last snapshot.
+     */
+    long version() {
+        return version.get();
+    }
+
+    /**
+     * Returns an immutable copy of the visible values of every plugin that has any,
+     * and resets the changed flag of every series.
+     */
+    Map<String, Map<String, Object>> publish() {
+        Map<String, Map<String, Object>> result = new HashMap<>();
+        for (Map.Entry<String, Map<String, Metric>> entry : plugins.entrySet()) {
+            Map<String, Object> values = new HashMap<>();
+            for (Metric metric : entry.getValue().values()) {
+                metric.clearChanged();
+                if (metric.isVisible()) {
+                    Object value = metric.value();
+                    if (value != null) {
+                        values.put(metric.key(), value);
+                    }
+                }
+            }
+            if (!values.isEmpty()) {
+                result.put(entry.getKey(), Collections.unmodifiableMap(values));
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Returns a copy of the visible values of a plugin.
+     */
+    Map<String, Object> snapshot(String pluginName) {
+        Map<String, Object> result = new HashMap<>();
+        Map<String, Metric> metrics = existing(pluginName);
+        if (metrics != null) {
+            copyVisible(metrics, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a copy of the visible values of every plugin that has any.
+     */
+    Map<String, Map<String, Object>> snapshotAll() {
+        Map<String, Map<String, Object>> result = new HashMap<>();
+        for (Map.Entry<String, Map<String, Metric>> entry : plugins.entrySet()) {
+            Map<String, Object> values = new HashMap<>();
+            copyVisible(entry.getValue(), values);
+            if (!values.isEmpty()) {
+                result.put(entry.getKey(), values);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the visible series for a key, or null.
+     */
+    Metric find(String pluginName, String key) {
+        Map<String, Metric> metrics = existing(pluginName);
+        if (metrics == null) {
+            return null;
+        }
+        Metric metric = metrics.get(key);
+        return metric != null && metric.isVisible() ? metric : null;
+    }
+
+    /**
+     * Visits every series of every plugin, visible or not.
+     */
+    void forEach(Consumer<Metric> action) {
+        for (Map<String, Metric> metrics : plugins.values()) {
+            metrics.values().forEach(action);
+        }
+    }
+
+    /**
+     * Returns a live, read-only view of the series of every plugin, keyed by metric key.
+     */
+    Collection<Map<String, Metric>> seriesByPlugin() {
+        return Collections.unmodifiableCollection(plugins.values());
+    }
+
+    /**
+     * Visits every series of a plugin, visible or not.
+     */
+    void forEach(String pluginName, Consumer<Metric> action) {
+        Map<String, Metric> metrics = existing(pluginName);
+        if (metrics != null) {
+            metrics.values().forEach(action);
+        }
+    }
+
+    /**
+     * Hides and resets every series of a plugin. Series objects are kept so that
+     * handles held by the plugin keep working and reappear on their next update.
+     */
+    void clear(String pluginName) {
+        // A load still running must not restore the rows being deleted
+        loading.remove(pluginName);
+        Map<String, Metric> metrics = plugins.get(pluginName);
+        if (metrics != null) {
+            metrics.values().forEach(Metric::hide);
+            // Hidden series are only removed when their slots are needed, see admit()
+            reclaimable.add(pluginName);
+            rejected.remove(pluginName);
+        }
+    }
+
+    int pluginCount() {
+        return plugins.size();
+    }
+
+    Set<String> pluginNames() {
+        return plugins.keySet();
+    }
+
+    int seriesCount() {
+        return seriesCount.get();
+    }
+
+    int internedKeyCount() {
+        return keyPool.size();
+    }
+
+    /**
+     * Returns the number of new keys of a plugin redirected to its overflow series.
+     */
+    long rejectedKeys(String pluginName) {
+        LongAdder count = rejected.get(pluginName);
+        return count != null ? count.sum() : 0;
+    }
+
+    int maxSeriesPerPlugin() {
+        return maxSeriesPerPlugin;
+    }
+
+    int maxSeriesTotal() {
+        return maxSeriesTotal;
+    }
+
+    void dirty(Metric metric) {
+        dirtyListener.onDirty(metric);
+    }
+
+    void changed() {
+        version.incrementAndGet();
+    }
+
+    void rankChanged(Metric metric) {
+        rankListener.onRankChanged(metric);
+    }
+
+    /**
+     * New series stay hidden until their first update, and are ranked if their key is.
+     */
+    private int initialState(String key) {
+        return rankedKeys.contains(key) ? Metric.HIDDEN | Metric.RANKED : Metric.HIDDEN;
+    }
+
+    /**
+     * Returns the series of a plugin, creating its map without any I/O. Unless the plugin is known
+     * to have no persisted series, they are loaded on the metrics thread and merged into the map.
+     */
+    private Map<String, Metric> metrics(String pluginName) {
+        Map<String, Metric> metrics = plugins.get(pluginName);
+        if (metrics != null) {
+            return metrics;
+        }
+        String name = intern(pluginName);
+        Set<String> persisted = persistedPlugins;
+        if (persisted != null && !persisted.contains(name)) {
+            return plugins.computeIfAbsent(name, p -> new ConcurrentHashMap<>());
+        }
+
+        // Flagged before the map is visible, so that no update of it can be flushed before the merge
+        Map<String, Metric> created = new ConcurrentHashMap<>();
+        boolean marked = loading.add(name);
+        metrics = plugins.putIfAbsent(name, created);
+        if (metrics != null) {
+            if (marked) {
+                loading.remove(name);
+            }
+            return metrics;
+        }
+        try {
+            loadExecutor.execute(() -> loadSeries(name, created));
+        } catch (RejectedExecutionException e) {
+            // Shutting down: the plugin keeps the series updated since startup
+            loading.remove(name);
+        }
+        return created;
+    }
+
+    /**
+     * Returns the series of a plugin for reading, loading them only if the plugin has persisted series.
+     */
+    private Map<String, Metric> existing(String pluginName) {
+        Map<String, Metric> metrics = plugins.get(pluginName);
+        Set<String> persisted = persistedPlugins;
+        return metrics == null && persisted != null && persisted.contains(pluginName) ? metrics(pluginName) : metrics;
+    }
+
+    /**
+     * Merges the persisted rows of a plugin into its series map, which may already be in use.
+     * A restored counter adds the stored total to the increments made since startup; a gauge or
+     * value that was already set keeps its newer value. Restored series are not subject to the
+     * limits: existing data is never dropped.
+     */
+    private void loadSeries(String pluginName, Map<String, Metric> metrics) {
+        try {
+            loader.load(pluginName, new Restorer() {
+                @Override
+                public void counter(String key, long value) {
+                    Metric existing = restore(metrics, pluginName,
+                            new CounterMetric(pluginName, intern(key), MetricRegistry.this, 0), m -> m.seed(value));
+                    if (existing instanceof CounterMetric counter && !counter.isRetired()) {
+                        counter.seed(value);
+                        // Shows the series and writes the merged total back
+                        counter.updated();
+                    }
+                }
+
+                @Override
+                public void gauge(String key, double value) {
+                    Metric existing = restore(metrics, pluginName,
+                            new GaugeMetric(pluginName, intern(key), MetricRegistry.this, 0), m -> m.seed(value));
+                    if (existing instanceof GaugeMetric gauge) {
+                        seedHidden(gauge, () -> gauge.seed(value));
+                    }
+                }
+
+                @Override
+                public void value(String key, Object value) {
+                    Metric existing = restore(metrics, pluginName,
+                            new ValueMetric(pluginName, intern(key), MetricRegistry.this, 0, true), m -> m.seed(value));
+                    if (existing instanceof ValueMetric valueMetric && valueMetric.isPersistent()) {
+                        seedHidden(valueMetric, () -> valueMetric.seed(value));
+                    }
+                }
+            });
+        } finally {
+            loading.remove(pluginName);
+        }
+    }
+
+    /**
+     * Adds a restored series unless the plugin already has one for its key, or the plugin was
+     * cleared during the load.
+     * @return the series already present, or null
+     */
+    private <T extends Metric> Metric restore(Map<String, Metric> metrics, String pluginName,
+                                              T restored, Consumer<T> seed) {
+        if (!loading.contains(pluginName)) {
+            return null;
+        }
+        seed.accept(restored);
+        Metric existing = metrics.putIfAbsent(restored.key(), restored);
+        if (existing == null) {
+            seriesCount.incrementAndGet();
+            version.incrementAndGet();
+            if (rankedKeys.contains(restored.key()) && restored.rank()) {
+                rankListener.onRankChanged(restored);
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * Seeds a series resolved before the load but never updated, and shows it.
+     */
+    private static void seedHidden(Metric metric, Runnable seed) {
+        if (!metric.isVisible() && !metric.isRetired()) {
+            seed.run();
+            metric.updated();
+        }
+    }
+
+    private static void copyVisible(Map<String, Metric> metrics, Map<String, Object> target) {
+        for (Metric metric : metrics.values()) {
+            if (metric.isVisible()) {
+                Object value = metric.value();
+                if (value != null) {
+                    target.put(metric.key(), value);
+                }
+            }
+        }
+    }
+}
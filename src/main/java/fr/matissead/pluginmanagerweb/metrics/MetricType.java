@@ -0,0 +1,15 @@
+package fr.matissead.pluginmanagerweb.metrics;
+
+/**
+ * Kinds of metrics held by the {@link MetricRegistry}.
+ */
+public enum MetricType {
+    /** Monotonic long value backed by a {@link java.util.concurrent.atomic.LongAdder}. */
+    COUNTER,
+    /** Numeric value that can go up or down. */
+    GAUGE,
+    /** Arbitrary object reported through {@code setGauge} or events. */
+    VALUE,
+    /** Distribution of recorded values or durations, reported as percentiles. */
+    HISTOGRAM
+}
@@ -0,0 +1,21 @@
+package fr.matissead.pluginmanagerweb.metrics;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Immutable view of the visible metrics of every plugin, published by {@link PluginMetricsService}.
+ *
+ * @param version     registry version the snapshot was taken at; equal versions mean equal content
+ * @param publishedAt time the snapshot was taken
+ * @param plugins     plugin name to metric key to value, for plugins with at least one metric
+ */
+public record MetricsSnapshot(long version, Instant publishedAt, Map<String, Map<String, Object>> plugins) {
+    
+    /**
+     * Returns the metrics of a plugin, or an empty map.
+     */
+    public Map<String, Object> metrics(String pluginName) {
+        return plugins.getOrDefault(pluginName, Map.of());
+    }
+}
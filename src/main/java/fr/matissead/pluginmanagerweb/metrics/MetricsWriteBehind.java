@@ -0,0 +1,299 @@
+package fr.matissead.pluginmanagerweb.metrics;
+
+import com.google.gson.Gson;
+import fr.matissead.pluginmanagerweb.config.MetricsConfig;
+import fr.matissead.pluginmanagerweb.persistence.SqlDialect;
+import fr.matissead.pluginmanagerweb.persistence.WriteQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write-behind buffer between the in-memory metrics cache and the plugin_metrics table.
+ * <p>
+ * Updates only enqueue a series the first time it becomes dirty; repeated updates of the
+ * same metric coalesce into a single row whose value is read at flush time. Dirty metrics
+ * are written in one transaction through the {@link WriteQueue}, either on a fixed interval
+ * or as soon as the configured batch size is reached.
+ */
+public class MetricsWriteBehind {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsWriteBehind.class);
+
+    private final WriteQueue writeQueue;
+    private final SqlDialect dialect;
+    private final String upsertSql;
+    private final String serverId;
+    private final MetricsConfig config;
+    private final ScheduledExecutorService executor;
+    private final Gson gson = new Gson();
+
+    private final Queue<Metric> dirty = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    // Flush statistics, only written by the flushing thread
+    private volatile long flushCount;
+    private volatile long failedFlushCount;
+    private volatile long rejectedRows;
+    private volatile long rowsWritten;
+    private volatile int lastFlushRows;
+    private volatile long lastFlushNanos;
+    private volatile long maxFlushNanos;
+    private volatile long totalFlushNanos;
+    private volatile Instant lastFlushAt;
+
+    public MetricsWriteBehind(WriteQueue writeQueue, SqlDialect dialect, String serverId, MetricsConfig config,
+                              ScheduledExecutorService executor) {
+        this.writeQueue = writeQueue;
+        this.dialect = dialect;
+        // Updates the row in place, where INSERT OR REPLACE deleted it and inserted a new one
+        this.upsertSql = dialect.upsert("plugin_metrics",
+                List.of("server_id", "plugin_name", "metric_key", "metric_value", "metric_type", "timestamp"),
+                List.of("server_id", "plugin_name", "metric_key"));
+        this.serverId = serverId;
+        this.config = config;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts the periodic flush task.
+     */
+    public void start() {
+        long interval = config.getFlushIntervalMs();
+        executor.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues a series that just became dirty. The latest value is read when the next flush runs.
+     */
+    void markDirty(Metric metric) {
+        if (!metric.isPersistent()) {
+            return;
+        }
+        dirty.add(metric);
+        if (pending.incrementAndGet() >= config.getFlushBatchSize()) {
+            requestFlush();
+        }
+    }
+
+    /**
+     * Drops pending updates for a plugin and runs the given action while no flush is in progress.
+     * Used when clearing metrics so a concurrent flush cannot write deleted rows back.
+     */
+    public synchronized void discard(String pluginName, Runnable afterDiscard) {
+        dirty.removeIf(metric -> {
+            if (metric.pluginName().equals(pluginName)) {
+                metric.clearDirty();
+                pending.decrementAndGet();
+                return true;
+            }
+            return false;
+        });
+        afterDiscard.run();
+    }
+
+    /**
+     * Writes every dirty metric to the database in a single transaction.
+     */
+    public synchronized void flush() throws SQLException {
+        flushRequested.set(false);
+        if (dirty.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<Metric> batch = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        // Position of each metric in the batch
+        Map<Metric, Integer> positions = new IdentityHashMap<>();
+        // Series of plugins still loading, written by a later flush once their stored values are merged
+        List<Metric> deferred = new ArrayList<>();
+        Metric metric;
+        while ((metric = dirty.poll()) != null) {
+            pending.decrementAndGet();
+            if (metric.isLoading()) {
+                deferred.add(metric);
+                continue;
+            }
+            // Clear before reading the value: an update racing with this flush re-queues the metric
+            metric.clearDirty();
+            if (!metric.isVisible()) {
+                continue;
+            }
+
+            Object value = metric.value();
+            if (value == null) {
+                continue;
+            }
+            try {
+                String json = gson.toJson(value);
+                // A metric re-queued during this flush is written once, with its latest value: a batched
+                // upsert rewritten as one multi-row statement cannot update the same row twice on PostgreSQL
+                Integer position = positions.putIfAbsent(metric, batch.size());
+                if (position != null) {
+                    values.set(position, json);
+                } else {
+                    values.add(json);
+                    batch.add(metric);
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Skipping metric {}/{}: value cannot be serialized ({})",
+                        metric.pluginName(), metric.key(), e.getMessage());
+            }
+        }
+
+        for (Metric m : deferred) {
+            dirty.add(m);
+            pending.incrementAndGet();
+        }
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        int written = batch.size();
+        try {
+            write(batch, values);
+        } catch (SQLException e) {
+            if (SqlDialect.isRejectedRow(e)) {
+                // One invalid row fails the whole batch: write the others one by one
+                logger.warn("Metrics batch rejected ({}), writing its {} rows one by one", e.getMessage(), batch.size());
+                written -= writeEach(batch, values);
+            } else {
+                failedFlushCount++;
+                retry(batch);
+                throw e;
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        flushCount++;
+        rowsWritten += written;
+        lastFlushRows = written;
+        lastFlushNanos = elapsed;
+        totalFlushNanos += elapsed;
+        maxFlushNanos = Math.max(maxFlushNanos, elapsed);
+        lastFlushAt = Instant.now();
+        logger.debug("Flushed {} metric updates in {} ms", written, elapsed / 1_000_000.0);
+    }
+
+    private void write(List<Metric> batch, List<String> values) throws SQLException {
+        writeQueue.execute(conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(upsertSql)) {
+                long timestamp = System.currentTimeMillis();
+                for (int i = 0; i < batch.size(); i++) {
+                    Metric m = batch.get(i);
+                    stmt.setString(1, serverId);
+                    stmt.setString(2, dialect.truncateKey(m.pluginName()));
+                    stmt.setString(3, dialect.truncateKey(m.key()));
+                    stmt.setString(4, values.get(i));
+                    stmt.setString(5, m.type().name());
+                    stmt.setLong(6, timestamp);
+                    stmt.addBatch();
+                }
+                return stmt.executeBatch();
+            }
+        });
+    }
+
+    /**
+     * Writes the rows of a rejected batch separately. Rows the database rejects are dropped instead of
+     * being retried forever; the others are retried by the next flush if the write fails for another reason.
+     * @return the number of rows dropped
+     */
+    private int writeEach(List<Metric> batch, List<String> values) throws SQLException {
+        int dropped = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            Metric m = batch.get(i);
+            try {
+                write(List.of(m), List.of(values.get(i)));
+            } catch (SQLException e) {
+                if (!SqlDialect.isRejectedRow(e)) {
+                    failedFlushCount++;
+                    retry(batch.subList(i, batch.size()));
+                    throw e;
+                }
+                dropped++;
+                rejectedRows++;
+                logger.warn("Dropping update of metric {}/{} rejected by the database: {}",
+                        m.pluginName(), m.key(), e.getMessage());
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Keeps the updates so the next flush retries them.
+     */
+    private void retry(List<Metric> batch) {
+        for (Metric m : batch) {
+            if (m.markDirty()) {
+                dirty.add(m);
+                pending.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of metrics waiting to be written.
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Returns queue depth and flush latency statistics.
+     */
+    public Map<String, Object> getStats() {
+        long flushes = flushCount;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pendingUpdates", pending.get());
+        stats.put("flushIntervalMs", config.getFlushIntervalMs());
+        stats.put("flushBatchSize", config.getFlushBatchSize());
+        stats.put("flushCount", flushes);
+        stats.put("failedFlushCount", failedFlushCount);
+        stats.put("rejectedRows", rejectedRows);
+        stats.put("rowsWritten", rowsWritten);
+        stats.put("lastFlushRows", lastFlushRows);
+        stats.put("lastFlushMillis", lastFlushNanos / 1_000_000.0);
+        stats.put("maxFlushMillis", maxFlushNanos / 1_000_000.0);
+        stats.put("avgFlushMillis", flushes > 0 ? totalFlushNanos / 1_000_000.0 / flushes : 0.0);
+        stats.put("lastFlushAt", lastFlushAt != null ? lastFlushAt.toString() : null);
+        return stats;
+    }
+
+    private void requestFlush() {
+        if (flushRequested.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::flushQuietly);
+            } catch (RuntimeException e) {
+                // Executor is shutting down; the final flush picks the updates up
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException e) {
+            logger.error("Failed to flush {} pending metric updates", pending.get(), e);
+        } catch (RuntimeException e) {
+            logger.error("Unexpected error while flushing metrics", e);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package fr.matissead.pluginmanagerweb.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Writes the live registry in the Prometheus / OpenMetrics text exposition format.
+ * <p>
+ * Series are read directly from the registry and encoded into a small byte buffer that is
+ * written to the output whenever it fills up, without building intermediate maps.
+ * Every family is emitted in its own pass so that its samples stay contiguous, as the
+ * format requires. Non-numeric values are not exported. An instance serves a single scrape.
+ */
+final class OpenMetricsWriter {
+    static final String OPENMETRICS_CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+    static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+    private static final String[] QUANTILE_LABELS = {"0.5", "0.9", "0.99"};
+    
+    private final MetricRegistry registry;
+    private final boolean openMetrics;
+    private final byte[] buffer = new byte[16384];
+    private OutputStream out;
+    private int position;
+    
+    /**
+     * @param openMetrics true for OpenMetrics 1.0, false for the Prometheus 0.0.4 text format
+     */
+    OpenMetricsWriter(MetricRegistry registry, boolean openMetrics) {
+        this.registry = registry;
+        this.openMetrics = openMetrics;
+    }
+    
+    void write(OutputStream out) throws IOException {
+        this.out = out;
+        Collection<Map<String, Metric>> plugins = registry.seriesByPlugin();
+        
+        // OpenMetrics names the family without the _total suffix of its samples
+        family(openMetrics ? "pmw_counter" : "pmw_counter_total", "counter",
+            "Counters reported by plugins through the PluginManagerWeb API.");
+        for (Map<String, Metric> metrics : plugins) {
+            for (Metric metric : metrics.values()) {
+                if (metric instanceof CounterMetric counter && counter.isVisible()) {
+                    sample("pmw_counter_total", counter, null);
+                    number(counter.get());
+                    newLine();
+                }
+            }
+        }
+        
+        family("pmw_gauge", "gauge", "Numeric gauges reported by plugins through the PluginManagerWeb API.");
+        for (Map<String, Metric> metrics : plugins) {
+            for (Metric metric : metrics.values()) {
+                if (metric instanceof GaugeMetric gauge && gauge.isVisible()) {
+                    double value = gauge.get();
+                    if (!Double.isNaN(value)) {
+                        sample("pmw_gauge", gauge, null);
+                        number(value);
+                        newLine();
+                    }
+                }
+            }
+        }
+        
+        family("pmw_timer_seconds", "summary",
+            "Durations recorded by plugins; quantiles cover the last five complete minutes.");
+        summaries(plugins, "pmw_timer_seconds", true);
+        
+        family("pmw_histogram", "summary",
+            "Value distributions recorded by plugins; quantiles cover the last five complete minutes.");
+        summaries(plugins, "pmw_histogram", false);
+        
+        if (openMetrics) {
+            ascii("# EOF\n");
+        }
+        flush();
+    }
+    
+    private void summaries(Collection<Map<String, Metric>> plugins, String name, boolean durations) throws IOException {
+        double scale = durations ? 1e9 : 1.0;
+        for (Map<String, Metric> metrics : plugins) {
+            for (Metric metric : metrics.values()) {
+                if (!(metric instanceof HistogramMetric histogram) || !histogram.isVisible()
+                        || histogram.isDuration() != durations) {
+                    continue;
+                }
+                
+                LogLinearHistogram.Snapshot window = histogram.window(HistogramMetric.WINDOW_SLICES);
+                for (int i = 0; i < QUANTILES.length; i++) {
+                    sample(name, histogram, QUANTILE_LABELS[i]);
+                    number(window.count() == 0 ? Double.NaN : window.percentile(QUANTILES[i]) / scale);
+                    newLine();
+                }
+                
+                LogLinearHistogram.Snapshot total = histogram.cumulative();
+                sample(name + "_count", histogram, null);
+                number(total.count());
+                newLine();
+                sample(name + "_sum", histogram, null);
+                number(total.sum() / scale);
+                newLine();
+            }
+        }
+    }
+    
+    private void family(String name, String type, String help) throws IOException {
+        ascii("# TYPE ");
+        ascii(name);
+        ascii(" ");
+        ascii(type);
+        ascii("\n# HELP ");
+        ascii(name);
+        ascii(" ");
+        ascii(help);
+        newLine();
+    }
+    
+    /**
+     * Writes the sample name and labels, followed by the space preceding the value.
+     */
+    private void sample(String name, Metric metric, String quantile) throws IOException {
+        ascii(name);
+        ascii("{plugin=\"");
+        labelValue(metric.pluginName());
+        ascii("\",key=\"");
+        labelValue(metric.key());
+        if (quantile != null) {
+            ascii("\",quantile=\"");
+            ascii(quantile);
+        }
+        ascii("\"} ");
+    }
+    
+    /**
+     * Writes a label value as UTF-8, escaping backslashes, double quotes and line feeds.
+     */
+    private void labelValue(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                // Rare: encode the remainder through the charset to handle surrogate pairs
+                bytes(escape(value.substring(i)).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            switch (c) {
+                case '\\' -> ascii("\\\\");
+                case '"' -> ascii("\\\"");
+                case '\n' -> ascii("\\n");
+                default -> put((byte) c);
+            }
+        }
+    }
+    
+    static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+    
+    private void number(long value) throws IOException {
+        ascii(Long.toString(value));
+    }
+    
+    private void number(double value) throws IOException {
+        if (Double.isNaN(value)) {
+            ascii("NaN");
+        } else if (Double.isInfinite(value)) {
+            ascii(value > 0 ? "+Inf" : "-Inf");
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            number((long) value);
+        } else {
+            ascii(Double.toString(value));
+        }
+    }
+    
+    private void newLine() throws IOException {
+        put((byte) '\n');
+    }
+    
+    private void ascii(String text) throws IOException {
+        int length = text.length();
+        if (length > buffer.length - position) {
+            flush();
+            if (length > buffer.length) {
+                bytes(text.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            buffer[position++] = (byte) text.charAt(i);
+        }
+    }
+    
+    private void bytes(byte[] data) throws IOException {
+        flush();
+        out.write(data);
+    }
+    
+    private void put(byte b) throws IOException {
+        if (position == buffer.length) {
+            flush();
+        }
+        buffer[position++] = b;
+    }
+    
+    private void flush() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
@@ -1,171 +1,618 @@
 package fr.matissead.pluginmanagerweb.metrics;
 
 import com.google.gson.Gson;
+import fr.matissead.pluginmanagerweb.api.Counter;
+import fr.matissead.pluginmanagerweb.api.Gauge;
+import fr.matissead.pluginmanagerweb.api.Histogram;
+import fr.matissead.pluginmanagerweb.config.MetricsConfig;
+import fr.matissead.pluginmanagerweb.persistence.SqlDialect;
+import fr.matissead.pluginmanagerweb.persistence.WriteQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.Instant;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Service for collecting and managing plugin metrics.
  * Provides API for plugins to report custom metrics and aggregates them.
- * Future extension point for Prometheus metrics export.
+ * Updates are applied in memory and persisted asynchronously by {@link MetricsWriteBehind},
+ * and can be scraped in the Prometheus / OpenMetrics text format.
  */
 public class PluginMetricsService {
     private static final Logger logger = LoggerFactory.getLogger(PluginMetricsService.class);
     private final DataSource dataSource;
+    private final WriteQueue writeQueue;
+    private final SqlDialect dialect;
+    // Rows of the other servers sharing the database are never read nor deleted
+    private final String serverId;
     private final Gson gson;
     
-    // In-memory cache for quick access
-    private final Map<String, Map<String, Object>> metricsCache = new ConcurrentHashMap<>();
+    // In-memory registry of typed metric series
+    private final MetricRegistry registry;
     
-    public PluginMetricsService(DataSource dataSource) {
+    private final ScheduledExecutorService executor;
+    private final MetricsWriteBehind writeBehind;
+    private final MetricHistory.Layout historyLayout;
+    private final EventStore events;
+    private final Leaderboards leaderboards;
+    private final int maxRankedKeys;
+    private final List<String> defaultLeaderboardKeys;
+    private final long snapshotIntervalMs;
+    private final Object snapshotLock = new Object();
+    private volatile MetricsSnapshot snapshot;
+    private volatile int historySeries;
+    private long histogramSlice = System.currentTimeMillis() / HistogramMetric.SLICE_MS;
+    
+    // Startup statistics: persisted series are loaded per plugin, on first access or by the warm-up task
+    private final long initNanos;
+    private final AtomicInteger loadedPlugins = new AtomicInteger();
+    private final AtomicLong loadedSeries = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+    private volatile long warmUpNanos = -1;
+    
+    public PluginMetricsService(DataSource dataSource, WriteQueue writeQueue, SqlDialect dialect, String serverId,
+                                MetricsConfig config) {
+        long start = System.nanoTime();
         this.dataSource = dataSource;
+        this.writeQueue = writeQueue;
+        this.dialect = dialect;
+        this.serverId = serverId;
         this.gson = new Gson();
-        loadMetricsFromDatabase();
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "PluginManagerWeb-Metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.writeBehind = new MetricsWriteBehind(writeQueue, dialect, serverId, config, executor);
+        this.leaderboards = new Leaderboards(config.getLeaderboardSize());
+        this.maxRankedKeys = config.getLeaderboardMaxKeys();
+        this.defaultLeaderboardKeys = config.getLeaderboardKeys();
+        this.snapshotIntervalMs = config.getSnapshotIntervalMs();
+        this.registry = new MetricRegistry(writeBehind::markDirty, leaderboards::changed, this::loadPersisted,
+                executor, config.getMaxSeriesPerPlugin(), config.getMaxSeriesTotal());
+        config.getLeaderboardKeys().forEach(registry::rankKey);
+        this.historyLayout = MetricHistory.Layout.parse(config.getHistoryTiers());
+        this.events = new EventStore(config);
+        // Persisted metrics are read in the background instead of blocking the server startup
+        executor.execute(this::warmUp);
+        writeBehind.start();
+        
+        // Sample at least every second so histogram windows rotate on time
+        long sampleInterval = Math.min(historyLayout.sampleIntervalMs(), 1000);
+        executor.scheduleAtFixedRate(this::sampleHistory, sampleInterval, sampleInterval, TimeUnit.MILLISECONDS);
+        
+        long refresh = config.getLeaderboardRefreshMs();
+        executor.scheduleWithFixedDelay(leaderboards::drainQuietly, 0, refresh, TimeUnit.MILLISECONDS);
+        
+        this.initNanos = System.nanoTime() - start;
+        logger.info("Metrics service initialized in {} ms", initNanos / 1_000_000.0);
+    }
+    
+    /**
+     * Returns a pre-resolved counter handle for a plugin metric.
+     */
+    public Counter counter(String pluginName, String metricKey) {
+        return registry.counter(pluginName, metricKey);
+    }
+    
+    /**
+     * Returns a pre-resolved numeric gauge handle for a plugin metric.
+     */
+    public Gauge gauge(String pluginName, String metricKey) {
+        return registry.gauge(pluginName, metricKey);
+    }
+    
+    /**
+     * Returns a pre-resolved histogram handle for a plugin metric.
+     */
+    public Histogram histogram(String pluginName, String metricKey) {
+        return registry.histogram(pluginName, metricKey);
     }
     
     /**
      * Increments a counter metric for a plugin.
      */
     public void incrementCounter(String pluginName, String metricKey, long delta) {
-        Map<String, Object> pluginMetrics = metricsCache.computeIfAbsent(pluginName, k -> new ConcurrentHashMap<>());
-        
-        Object current = pluginMetrics.get(metricKey);
-        long newValue;
-        
-        if (current instanceof Number) {
-            newValue = ((Number) current).longValue() + delta;
-        } else {
-            newValue = delta;
-        }
-        
-        pluginMetrics.put(metricKey, newValue);
-        persistMetric(pluginName, metricKey, newValue);
+        registry.counter(pluginName, metricKey).add(delta);
     }
     
     /**
      * Records a custom event for a plugin with metadata.
+     * Every event is counted; sampled events are kept in a bounded per-type ring buffer.
      */
     public void recordEvent(String pluginName, String eventType, Map<String, Object> payload) {
-        String eventKey = "event_" + eventType;
-        Map<String, Object> pluginMetrics = metricsCache.computeIfAbsent(pluginName, k -> new ConcurrentHashMap<>());
-        
-        // Store event count
-        incrementCounter(pluginName, eventKey + "_count", 1);
-        
-        // Store last event data
-        pluginMetrics.put(eventKey + "_last", payload);
-        pluginMetrics.put(eventKey + "_last_time", Instant.now().toString());
+        EventStore.EventRing ring = events.ring(pluginName, eventType);
+        registry.counter(pluginName, ring.countKey).increment();
+        events.record(ring, payload);
         
         logger.debug("Recorded event {} for plugin {}", eventType, pluginName);
     }
     
+    /**
+     * Returns retained events of a plugin older than the given sequence number, newest first.
+     * 
+     * @param eventType event type, or null for all types
+     * @param beforeSeq exclusive upper bound of the sequence numbers, Long.MAX_VALUE for the newest
+     */
+    public List<RetainedEvent> getEvents(String pluginName, String eventType, long beforeSeq, int limit) {
+        return events.page(pluginName, eventType, beforeSeq, limit);
+    }
+    
+    /**
+     * Returns per-type event statistics of a plugin (seen, retained, sample rate, last seen).
+     */
+    public Map<String, Object> getEventStats(String pluginName) {
+        return events.stats(pluginName);
+    }
+    
     /**
      * Sets a gauge metric (a value that can go up or down).
      */
     public void setGauge(String pluginName, String metricKey, Object value) {
-        Map<String, Object> pluginMetrics = metricsCache.computeIfAbsent(pluginName, k -> new ConcurrentHashMap<>());
-        pluginMetrics.put(metricKey, value);
-        persistMetric(pluginName, metricKey, value);
+        registry.setValue(pluginName, metricKey, value, true);
+    }
+    
+    /**
+     * Retrieves percentile summaries of every histogram of a plugin, keyed by metric key.
+     * Each histogram reports its last complete minute, last five minutes and all-time values.
+     */
+    public Map<String, Object> getHistograms(String pluginName) {
+        Map<String, Object> result = new TreeMap<>();
+        registry.forEach(pluginName, metric -> {
+            if (metric instanceof HistogramMetric histogram && histogram.isVisible()) {
+                Map<String, Object> windows = new LinkedHashMap<>();
+                windows.put("1m", histogram.summarize(histogram.window(1)));
+                windows.put("5m", histogram.summarize(histogram.window(5)));
+                windows.put("total", histogram.summarize(histogram.cumulative()));
+                result.put(histogram.key(), Map.of(
+                    "unit", histogram.isDuration() ? "ms" : "value",
+                    "windows", windows
+                ));
+            }
+        });
+        return result;
     }
     
     /**
      * Retrieves all metrics for a specific plugin.
      */
     public Map<String, Object> getMetrics(String pluginName) {
-        Map<String, Object> metrics = metricsCache.get(pluginName);
-        return metrics != null ? new HashMap<>(metrics) : new HashMap<>();
+        return registry.snapshot(pluginName);
+    }
+    
+    /**
+     * Returns the latest published snapshot of every plugin's metrics.
+     * A new snapshot is taken at most once per configured interval, and only if a metric
+     * changed since the previous one, so the version can be used to cache derived responses.
+     */
+    public MetricsSnapshot getSnapshot() {
+        MetricsSnapshot current = snapshot;
+        if (current != null && !isSnapshotStale(current)) {
+            return current;
+        }
+        
+        synchronized (snapshotLock) {
+            current = snapshot;
+            if (current == null || isSnapshotStale(current)) {
+                // Read the version first: changes racing with publish() bump it past this snapshot
+                long version = registry.version();
+                current = new MetricsSnapshot(version, Instant.now(), registry.publish());
+                snapshot = current;
+            }
+            return current;
+        }
+    }
+    
+    private boolean isSnapshotStale(MetricsSnapshot current) {
+        return System.currentTimeMillis() - current.publishedAt().toEpochMilli() >= snapshotIntervalMs
+                && registry.version() != current.version();
+    }
+    
+    /**
+     * Returns a number that changes every time a leaderboard is updated.
+     */
+    public long getLeaderboardVersion() {
+        return leaderboards.version();
     }
     
     /**
      * Retrieves metrics for all plugins.
      */
     public Map<String, Map<String, Object>> getAllMetrics() {
-        Map<String, Map<String, Object>> allMetrics = new HashMap<>();
-        for (Map.Entry<String, Map<String, Object>> entry : metricsCache.entrySet()) {
-            allMetrics.put(entry.getKey(), new HashMap<>(entry.getValue()));
+        return registry.snapshotAll();
+    }
+    
+    /**
+     * Writes every numeric series in the Prometheus text exposition format, straight from the registry.
+     * 
+     * @param openMetrics true for OpenMetrics 1.0, false for the Prometheus 0.0.4 text format
+     */
+    public void writeOpenMetrics(OutputStream out, boolean openMetrics) throws IOException {
+        new OpenMetricsWriter(registry, openMetrics).write(out);
+    }
+    
+    /**
+     * Returns the content type matching {@link #writeOpenMetrics(OutputStream, boolean)}.
+     */
+    public static String openMetricsContentType(boolean openMetrics) {
+        return openMetrics ? OpenMetricsWriter.OPENMETRICS_CONTENT_TYPE : OpenMetricsWriter.PROMETHEUS_CONTENT_TYPE;
+    }
+    
+    /**
+     * Starts ranking the given metric keys if they are not ranked yet, and waits for one
+     * ranking pass on the metrics thread so that their leaderboards are filled.
+     * 
+     * @throws IllegalArgumentException if ranking the keys would exceed the configured maximum
+     */
+    public void rankKeys(List<String> keys) {
+        Set<String> ranked = registry.rankedKeys();
+        long newKeys = keys.stream().distinct().filter(key -> !ranked.contains(key)).count();
+        if (newKeys == 0) {
+            return;
+        }
+        if (ranked.size() + newKeys > maxRankedKeys) {
+            throw new IllegalArgumentException("At most " + maxRankedKeys + " metric keys can be ranked");
+        }
+        
+        boolean added = false;
+        for (String key : keys) {
+            added |= registry.rankKey(key);
+        }
+        if (added) {
+            try {
+                executor.submit(leaderboards::drainQuietly).get(2, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException | RejectedExecutionException e) {
+                logger.debug("Leaderboards not refreshed yet for new keys {}", keys);
+            }
+        }
+    }
+    
+    /**
+     * Returns the top plugins for each metric key, highest value first.
+     * Keys that are not ranked (see {@link #rankKeys(List)}) have an empty leaderboard.
+     */
+    public Map<String, List<LeaderboardEntry>> getLeaderboards(List<String> keys, int limit) {
+        Map<String, List<LeaderboardEntry>> result = new LinkedHashMap<>();
+        for (String key : keys) {
+            result.put(key, leaderboards.top(key, limit));
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the metric keys ranked by default.
+     */
+    public List<String> getDefaultLeaderboardKeys() {
+        return defaultLeaderboardKeys;
+    }
+    
+    /**
+     * Returns the number of plugins kept per leaderboard.
+     */
+    public int getLeaderboardSize() {
+        return leaderboards.size();
+    }
+    
+    /**
+     * Retrieves the recorded history of a numeric metric over the given range.
+     * 
+     * @return history view, or null if the metric does not exist or is not numeric
+     */
+    public HistoryView getHistory(String pluginName, String metricKey, long rangeMs) {
+        Metric metric = registry.find(pluginName, metricKey);
+        MetricHistory history = metric != null ? metric.history() : null;
+        if (history == null) {
+            return null;
         }
-        return allMetrics;
+        
+        MetricHistory.Points points = history.query(System.currentTimeMillis(), rangeMs);
+        return new HistoryView(
+            metric.type().name().toLowerCase(),
+            points.resolutionMs(),
+            points.timestamps(),
+            points.values(),
+            history.memoryBytes()
+        );
+    }
+    
+    /**
+     * Parses a history range such as 10m, 24h or 30d into milliseconds.
+     * 
+     * @throws IllegalArgumentException if the range is malformed
+     */
+    public static long parseDuration(String range) {
+        return MetricHistory.parseDuration(range);
+    }
+    
+    /**
+     * Returns the fixed history memory per series and the total currently allocated.
+     */
+    public Map<String, Object> getHistoryStats() {
+        int series = historySeries;
+        long bytesPerSeries = historyLayout.bytesPerSeries();
+        return Map.of(
+            "tiers", historyLayout.tiers().stream()
+                .map(t -> Map.of("resolutionMs", t.resolutionMs(), "retentionMs", t.retentionMs(), "slots", t.capacity()))
+                .toList(),
+            "bytesPerSeries", bytesPerSeries,
+            "series", series,
+            "totalBytes", bytesPerSeries * series
+        );
+    }
+    
+    /**
+     * Returns series counts, cardinality limits and estimated heap use, in total and per plugin.
+     * Plugins are sorted by estimated heap use, largest first.
+     */
+    public Map<String, Object> getMemoryStats() {
+        List<Map<String, Object>> plugins = new ArrayList<>();
+        long totalBytes = 0;
+        long totalRejected = 0;
+        for (String pluginName : registry.pluginNames()) {
+            long[] bytes = {0};
+            Map<String, Integer> byType = new TreeMap<>();
+            int[] series = {0};
+            registry.forEach(pluginName, metric -> {
+                series[0]++;
+                bytes[0] += metric.memoryBytes();
+                byType.merge(metric.type().name().toLowerCase(), 1, Integer::sum);
+            });
+            long eventBytes = events.memoryBytes(pluginName);
+            long rejected = registry.rejectedKeys(pluginName);
+            
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("plugin", pluginName);
+            stats.put("series", series[0]);
+            stats.put("seriesByType", byType);
+            stats.put("rejectedKeys", rejected);
+            stats.put("metricBytes", bytes[0]);
+            stats.put("eventBytes", eventBytes);
+            stats.put("estimatedBytes", bytes[0] + eventBytes);
+            plugins.add(stats);
+            totalBytes += bytes[0] + eventBytes;
+            totalRejected += rejected;
+        }
+        plugins.sort(Comparator.comparingLong((Map<String, Object> m) -> (Long) m.get("estimatedBytes")).reversed());
+        
+        Map<String, Object> totals = new LinkedHashMap<>();
+        totals.put("series", registry.seriesCount());
+        totals.put("maxSeriesTotal", registry.maxSeriesTotal());
+        totals.put("maxSeriesPerPlugin", registry.maxSeriesPerPlugin());
+        totals.put("rejectedKeys", totalRejected);
+        totals.put("internedKeys", registry.internedKeyCount());
+        totals.put("estimatedBytes", totalBytes);
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("totals", totals);
+        result.put("plugins", plugins);
+        return result;
     }
     
     /**
      * Clears metrics for a specific plugin.
      */
     public void clearMetrics(String pluginName) {
-        metricsCache.remove(pluginName);
-        deleteMetricsFromDatabase(pluginName);
+        registry.clear(pluginName);
+        events.clear(pluginName);
+        writeBehind.discard(pluginName, () -> deleteMetricsFromDatabase(pluginName));
         logger.info("Cleared metrics for plugin: {}", pluginName);
     }
     
-    private void persistMetric(String pluginName, String metricKey, Object value) {
-        String sql = "INSERT OR REPLACE INTO plugin_metrics (plugin_name, metric_key, metric_value, timestamp) " +
-                     "VALUES (?, ?, ?, ?)";
+    /**
+     * Returns write-behind queue depth and flush latency statistics.
+     */
+    public Map<String, Object> getPersistenceStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(writeBehind.getStats());
+        stats.put("startup", getStartupStats());
+        stats.put("writeQueue", writeQueue.getStats());
+        return stats;
+    }
+    
+    /**
+     * Returns the time spent initializing the service at startup and loading persisted series.
+     */
+    public Map<String, Object> getStartupStats() {
+        long warmUp = warmUpNanos;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("initMillis", initNanos / 1_000_000.0);
+        stats.put("warmUpComplete", warmUp >= 0);
+        stats.put("warmUpMillis", warmUp >= 0 ? warmUp / 1_000_000.0 : null);
+        stats.put("loadedPlugins", loadedPlugins.get());
+        stats.put("loadedSeries", loadedSeries.get());
+        stats.put("loadMillis", loadNanos.get() / 1_000_000.0);
+        return stats;
+    }
+    
+    /**
+     * Stops background tasks and writes all pending updates to the database.
+     * Must be called before the data source is closed.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
         
+        try {
+            int pending = writeBehind.getPendingCount();
+            writeBehind.flush();
+            logger.info("Flushed {} pending metric updates on shutdown", pending);
+        } catch (SQLException e) {
+            logger.error("Failed to flush pending metrics on shutdown", e);
+        }
+    }
+    
+    /**
+     * Samples every visible numeric series into its history ring buffers,
+     * and rotates histogram windows when a new minute starts.
+     */
+    private void sampleHistory() {
+        long now = System.currentTimeMillis();
+        long slice = now / HistogramMetric.SLICE_MS;
+        boolean rotate = slice != histogramSlice;
+        histogramSlice = slice;
+        int[] series = {0};
+        try {
+            registry.forEach(metric -> {
+                if (rotate && metric instanceof HistogramMetric histogram) {
+                    histogram.rotate();
+                }
+                if (!metric.isVisible()) {
+                    return;
+                }
+                double value = metric.sample();
+                if (Double.isNaN(value)) {
+                    return;
+                }
+                
+                MetricHistory history = metric.history();
+                if (history == null) {
+                    history = new MetricHistory(historyLayout, metric.type() == MetricType.COUNTER);
+                    metric.history(history);
+                }
+                history.record(now, value);
+                series[0]++;
+            });
+            historySeries = series[0];
+        } catch (RuntimeException e) {
+            logger.error("Failed to sample metric history", e);
+        }
+    }
+    
+    /**
+     * Loads the series of every plugin that has persisted metrics and was not accessed yet.
+     * Runs once on the metrics thread after startup.
+     */
+    private void warmUp() {
+        long start = System.nanoTime();
+        Set<String> pluginNames = new LinkedHashSet<>();
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setString(1, pluginName);
-            stmt.setString(2, metricKey);
-            stmt.setString(3, gson.toJson(value));
-            stmt.setString(4, Instant.now().toString());
-            
-            stmt.executeUpdate();
-            
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT DISTINCT plugin_name FROM plugin_metrics WHERE server_id = ?")) {
+            stmt.setString(1, serverId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    pluginNames.add(rs.getString(1));
+                }
+            }
         } catch (SQLException e) {
-            logger.error("Failed to persist metric for plugin: " + pluginName, e);
+            logger.error("Failed to list persisted metrics, plugins are loaded on first update", e);
+            return;
         }
+        
+        registry.persistedPlugins(pluginNames);
+        for (String pluginName : pluginNames) {
+            registry.load(pluginName);
+        }
+        warmUpNanos = System.nanoTime() - start;
+        logger.info("Loaded metrics for {} plugins ({} series) from database in {} ms",
+                loadedPlugins.get(), loadedSeries.get(), warmUpNanos / 1_000_000.0);
     }
     
-    private void loadMetricsFromDatabase() {
-        String sql = "SELECT plugin_name, metric_key, metric_value FROM plugin_metrics";
+    /**
+     * Streams the persisted rows of one plugin into the registry, with their stored type.
+     */
+    private void loadPersisted(String pluginName, MetricRegistry.Restorer restorer) {
+        String sql = "SELECT metric_key, metric_value, metric_type FROM plugin_metrics WHERE server_id = ? AND plugin_name = ?";
+        long start = System.nanoTime();
+        int rows = 0;
         
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
-            
-            while (rs.next()) {
-                String pluginName = rs.getString("plugin_name");
-                String metricKey = rs.getString("metric_key");
-                String metricValueJson = rs.getString("metric_value");
-                
-                Map<String, Object> pluginMetrics = metricsCache.computeIfAbsent(pluginName, k -> new ConcurrentHashMap<>());
-                
-                // Try to parse as different types
-                try {
-                    Object value = gson.fromJson(metricValueJson, Object.class);
-                    pluginMetrics.put(metricKey, value);
-                } catch (Exception e) {
-                    pluginMetrics.put(metricKey, metricValueJson);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, serverId);
+            stmt.setString(2, dialect.truncateKey(pluginName));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    restore(restorer, rs.getString(1), rs.getString(2), rs.getString(3));
+                    rows++;
                 }
             }
-            
-            logger.info("Loaded metrics for {} plugins from database", metricsCache.size());
-            
+            if (rows > 0) {
+                loadedPlugins.incrementAndGet();
+                loadedSeries.addAndGet(rows);
+            }
         } catch (SQLException e) {
-            logger.error("Failed to load metrics from database", e);
+            logger.error("Failed to load metrics of {} from database", pluginName, e);
+        } finally {
+            loadNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+    
+    /**
+     * Restores a stored value with its metric type. Rows written before the type was stored
+     * are restored as before: numbers as gauges, anything else as a JSON value.
+     */
+    private void restore(MetricRegistry.Restorer restorer, String key, String json, String type) {
+        try {
+            if (MetricType.COUNTER.name().equals(type)) {
+                restorer.counter(key, Long.parseLong(json));
+                return;
+            }
+            if (MetricType.GAUGE.name().equals(type)) {
+                restorer.gauge(key, Double.parseDouble(json));
+                return;
+            }
+            Object value = gson.fromJson(json, Object.class);
+            if (value instanceof Number number) {
+                restorer.gauge(key, number.doubleValue());
+            } else if (value != null) {
+                restorer.value(key, value);
+            }
+        } catch (RuntimeException e) {
+            restorer.value(key, json);
         }
     }
     
     private void deleteMetricsFromDatabase(String pluginName) {
-        String sql = "DELETE FROM plugin_metrics WHERE plugin_name = ?";
+        String sql = "DELETE FROM plugin_metrics WHERE server_id = ? AND plugin_name = ?";
         
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setString(1, pluginName);
-            stmt.executeUpdate();
-            
+        try {
+            writeQueue.execute(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, serverId);
+                    stmt.setString(2, dialect.truncateKey(pluginName));
+                    return stmt.executeUpdate();
+                }
+            });
         } catch (SQLException e) {
             logger.error("Failed to delete metrics for plugin: " + pluginName, e);
         }
     }
+    
+    /**
+     * History of a single metric as returned by the REST API.
+     * Values is a long array for counters and a double array for gauges.
+     */
+    public record HistoryView(String type, long resolutionMs, long[] timestamps, Object values, long memoryBytes) {
+    }
 }
@@ -0,0 +1,18 @@
+package fr.matissead.pluginmanagerweb.metrics;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+import java.time.Instant;
+
+/**
+ * Event kept in the per-type ring buffer of a plugin.
+ *
+ * @param seq        sequence number, increasing across all plugins and types; used for paging
+ * @param type       event type passed to {@code recordEvent}
+ * @param timestamp  time the event was recorded
+ * @param sampleRate fraction of events of this type that are retained
+ * @param payload    payload serialized as JSON, replaced by a marker when over the size cap
+ */
+public record RetainedEvent(long seq, String type, Instant timestamp, double sampleRate,
+                            @JsonRawValue String payload) {
+}
@@ -0,0 +1,87 @@
+package fr.matissead.pluginmanagerweb.metrics;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Series holding an arbitrary object, such as a string gauge or the payload of the last event.
+ */
+final class ValueMetric extends Metric {
+    private final boolean persistent;
+    private volatile Object value;
+    
+    ValueMetric(String pluginName, String key, MetricRegistry registry, int initialState, boolean persistent) {
+        super(pluginName, key, registry, initialState);
+        this.persistent = persistent;
+    }
+    
+    void set(Object value) {
+        this.value = value;
+        updated();
+    }
+    
+    /**
+     * Sets the starting value without flagging the series as updated.
+     */
+    void seed(Object value) {
+        this.value = value;
+    }
+    
+    @Override
+    MetricType type() {
+        return MetricType.VALUE;
+    }
+    
+    @Override
+    Object value() {
+        return value;
+    }
+    
+    @Override
+    void reset() {
+        value = null;
+    }
+    
+    @Override
+    boolean isPersistent() {
+        return persistent;
+    }
+    
+    @Override
+    long valueBytes() {
+        return estimateBytes(value, 0);
+    }
+    
+    /**
+     * Rough size of a value built from strings, numbers, maps and collections.
+     */
+    private static long estimateBytes(Object value, int depth) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String string) {
+            return 40 + string.length();
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return 16;
+        }
+        if (depth >= 4) {
+            return 64;
+        }
+        if (value instanceof Map<?, ?> map) {
+            long bytes = 64;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                bytes += 32 + estimateBytes(entry.getKey(), depth + 1) + estimateBytes(entry.getValue(), depth + 1);
+            }
+            return bytes;
+        }
+        if (value instanceof Collection<?> collection) {
+            long bytes = 64;
+            for (Object element : collection) {
+                bytes += 8 + estimateBytes(element, depth + 1);
+            }
+            return bytes;
+        }
+        return 64;
+    }
+}
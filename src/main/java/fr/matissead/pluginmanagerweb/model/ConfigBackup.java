@@ -13,6 +13,8 @@ public class ConfigBackup {
     private String content;
     private String path;
     private String createdBy;
+    private String contentHash; // SHA-256 of the content, shared by identical backups
+    private long sizeBytes;
     
     public ConfigBackup() {
         this.timestamp = Instant.now();
@@ -72,4 +74,20 @@ public class ConfigBackup {
     public void setCreatedBy(String createdBy) {
         this.createdBy = createdBy;
     }
+    
+    public String getContentHash() {
+        return contentHash;
+    }
+    
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+    
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+    
+    public void setSizeBytes(long sizeBytes) {
+        this.sizeBytes = sizeBytes;
+    }
 }
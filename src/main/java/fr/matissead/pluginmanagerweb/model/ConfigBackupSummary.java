@@ -0,0 +1,11 @@
+package fr.matissead.pluginmanagerweb.model;
+
+import java.time.Instant;
+
+/**
+ * Metadata of a config backup, without its content.
+ * Used to list backups; the content is fetched separately when needed.
+ */
+public record ConfigBackupSummary(long id, String path, Instant timestamp, String createdBy,
+                                  long sizeBytes, String contentHash) {
+}
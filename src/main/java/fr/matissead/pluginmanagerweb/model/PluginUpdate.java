@@ -0,0 +1,23 @@
+package fr.matissead.pluginmanagerweb.model;
+
+import java.time.Instant;
+
+/**
+ * Update state of an installed plugin, compared with the latest release of its GitHub repository.
+ * The release fields are null when no release could be resolved.
+ */
+public record PluginUpdate(String plugin, String repo, String currentVersion, Status status,
+                           String latestVersion, Instant publishedAt, String downloadUrl) {
+
+    public enum Status {
+        UPDATE_AVAILABLE,
+        UP_TO_DATE,
+        // The installed version is newer than the latest release, e.g. a development build
+        AHEAD,
+        // The installed version or the release tag is not a version number
+        UNKNOWN,
+        NO_RELEASE,
+        // Not resolved within the deadline of the check
+        TIMED_OUT
+    }
+}
@@ -0,0 +1,632 @@
+package fr.matissead.pluginmanagerweb.persistence;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import fr.matissead.pluginmanagerweb.model.AuditLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip-compressed NDJSON segments holding the audit entries moved out of the audit_logs table.
+ * <p>
+ * Entries are grouped into fixed time buckets, one segment file per bucket. Each archiving pass
+ * appends a new gzip member to the segments it touches (readers see concatenated members as one
+ * stream) and records the new segment length in audit_archive_segments, in the transaction that
+ * deletes the archived rows. Bytes past the recorded length come from a pass that did not commit:
+ * they are never read and are truncated before the segment is appended again, so every entry is
+ * either in the table or in exactly one segment.
+ * <p>
+ * A shared MySQL or PostgreSQL database keeps the archive itself, so that every server returns the
+ * same entries: each pass stores one gzip member per bucket as a row of audit_archive_chunks, in the
+ * transaction that deletes the archived rows, and archiving passes run on one server at a time under
+ * a database lock, so that two servers never archive the same rows. Segment files written to a shared
+ * database by earlier releases stay indexed by the server_id of the server holding them, which keeps
+ * searching and expiring them.
+ */
+public class AuditArchive {
+    private static final Logger logger = LoggerFactory.getLogger(AuditArchive.class);
+    private static final String SUFFIX = ".ndjson.gz";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final DateTimeFormatter NAME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd").withZone(ZoneOffset.UTC);
+    private static final Comparator<Entry> KEY_ORDER =
+            Comparator.comparingLong(Entry::timestamp).thenComparingLong(Entry::id);
+
+    /**
+     * A segment file and the committed part of it, or the chunks of a bucket stored in a shared
+     * database, which have no name.
+     */
+    record Segment(String name, long startMillis, long endMillis, long rowCount, long sizeBytes) {
+    }
+
+    /**
+     * One archived entry, stored as one NDJSON line.
+     */
+    private record Entry(long id, long timestamp, String user, String action, String target,
+                         String ipAddress, String metadata, boolean success) {
+
+        boolean matches(AuditQuery query) {
+            return (query.action() == null || query.action().equals(action))
+                    && (query.user() == null || query.user().equals(user))
+                    && (query.targetPrefix() == null || (target != null && target.startsWith(query.targetPrefix())))
+                    && (query.success() == null || query.success() == success)
+                    && (query.fromMillis() == null || timestamp >= query.fromMillis())
+                    && (query.toMillis() == null || timestamp < query.toMillis())
+                    && (query.beforeTimestamp() == null || query.beforeId() == null
+                        || timestamp < query.beforeTimestamp()
+                        || (timestamp == query.beforeTimestamp() && id < query.beforeId()));
+        }
+
+        void fill(AuditLog log) {
+            log.setId(id);
+            log.setTimestamp(Instant.ofEpochMilli(timestamp));
+            log.setUser(user);
+            log.setAction(action);
+            log.setTarget(target);
+            log.setIpAddress(ipAddress);
+            log.setMetadata(metadata);
+            log.setSuccess(success);
+        }
+    }
+
+    private final File directory;
+    private final long segmentMillis;
+    private final DataSource dataSource;
+    private final WriteQueue writeQueue;
+    private final SqlDialect dialect;
+    // Whether new archives are stored in the database, where every server reads them
+    private final boolean shared;
+    private final String serverId;
+    private final String filePrefix;
+    private final String upsertSegmentSql;
+    private final Gson gson = new Gson();
+    // Committed segments, by file name
+    private final Map<String, Segment> segments = new ConcurrentHashMap<>();
+
+    AuditArchive(File directory, int segmentDays, DataSource dataSource, WriteQueue writeQueue, SqlDialect dialect,
+                 String serverId) {
+        this.directory = directory;
+        this.segmentMillis = TimeUnit.DAYS.toMillis(segmentDays);
+        this.dataSource = dataSource;
+        this.writeQueue = writeQueue;
+        this.dialect = dialect;
+        this.shared = dialect.isNetworked();
+        this.serverId = serverId;
+        // A SQLite file has a single server, whose segments keep their original names
+        this.filePrefix = serverId.isEmpty() ? "audit-" : "audit-" + serverId.replaceAll("[^A-Za-z0-9_.-]", "_") + "-";
+        this.upsertSegmentSql = dialect.upsert("audit_archive_segments",
+                List.of("server_id", "name", "start_millis", "end_millis", "row_count", "size_bytes", "updated_at"),
+                List.of("server_id", "name"));
+        directory.mkdirs();
+        try {
+            loadSegments();
+        } catch (SQLException e) {
+            // Appending without the committed lengths would truncate existing segments
+            throw new RuntimeException("Failed to load the audit archive index", e);
+        }
+    }
+
+    private void loadSegments() throws SQLException {
+        int unscoped = 0;
+        try (Connection conn = dataSource.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT name, start_millis, end_millis, row_count, "
+                    + "size_bytes FROM audit_archive_segments WHERE server_id = ?")) {
+                stmt.setString(1, serverId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        Segment segment = new Segment(rs.getString("name"), rs.getLong("start_millis"),
+                                rs.getLong("end_millis"), rs.getLong("row_count"), rs.getLong("size_bytes"));
+                        segments.put(segment.name(), segment);
+                    }
+                }
+            }
+            if (!serverId.isEmpty()) {
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery(
+                             "SELECT COUNT(*) FROM audit_archive_segments WHERE server_id = ''")) {
+                    unscoped = rs.next() ? rs.getInt(1) : 0;
+                }
+            }
+        }
+        if (unscoped > 0) {
+            logger.warn("{} audit archive segments were indexed before segments were scoped by server and will "
+                    + "not be searched; their files are left in the archive folders", unscoped);
+        }
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX) && !segments.containsKey(name));
+        if (files != null && files.length > 0) {
+            logger.warn("{} audit archive files in {} are not indexed by this database and will not be searched",
+                    files.length, directory.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Moves the entries older than the cutoff from the table to the archive, a batch per transaction.
+     * Stops between batches if the thread is interrupted.
+     * @return the number of entries archived
+     */
+    int archive(long cutoffMillis, int batchSize) throws SQLException, IOException {
+        if (!dialect.isNetworked()) {
+            return archiveBatches(cutoffMillis, batchSize);
+        }
+        // The lock is held by a read connection: the writer connection stays free for the batches
+        try (Connection conn = dataSource.getConnection();
+             Statement lock = conn.createStatement()) {
+            if (!dialect.tryLockArchive(lock)) {
+                logger.debug("Another server is archiving audit entries, skipping this pass");
+                return 0;
+            }
+            try {
+                return archiveBatches(cutoffMillis, batchSize);
+            } finally {
+                dialect.unlockArchive(lock);
+            }
+        }
+    }
+
+    private int archiveBatches(long cutoffMillis, int batchSize) throws SQLException, IOException {
+        int total = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            List<Entry> batch = readOldest(cutoffMillis, batchSize);
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            Map<Long, List<Entry>> buckets = new TreeMap<>();
+            for (Entry entry : batch) {
+                long start = Math.floorDiv(entry.timestamp(), segmentMillis) * segmentMillis;
+                buckets.computeIfAbsent(start, key -> new ArrayList<>()).add(entry);
+            }
+            if (shared) {
+                commitChunks(batch, buckets);
+            } else {
+                appendSegments(batch, buckets);
+            }
+            total += batch.size();
+            if (batch.size() < batchSize) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Appends each bucket to its segment file, then commits the new segment lengths.
+     */
+    private void appendSegments(List<Entry> batch, Map<Long, List<Entry>> buckets) throws SQLException, IOException {
+        List<Segment> updated = new ArrayList<>(buckets.size());
+        for (Map.Entry<Long, List<Entry>> bucket : buckets.entrySet()) {
+            long start = bucket.getKey();
+            String name = filePrefix + NAME_FORMAT.format(Instant.ofEpochMilli(start)) + SUFFIX;
+            Segment current = segments.get(name);
+            long size = append(name, current, bucket.getValue());
+            updated.add(current == null
+                    ? new Segment(name, start, start + segmentMillis, bucket.getValue().size(), size)
+                    // The segment length changed since the segment was created: keep covering both spans
+                    : new Segment(name, Math.min(current.startMillis(), start),
+                            Math.max(current.endMillis(), start + segmentMillis),
+                            current.rowCount() + bucket.getValue().size(), size));
+        }
+
+        commit(batch, updated);
+        for (Segment segment : updated) {
+            segments.put(segment.name(), segment);
+        }
+    }
+
+    private List<Entry> readOldest(long cutoffMillis, int limit) throws SQLException {
+        List<Entry> entries = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT * FROM audit_logs WHERE timestamp < ? ORDER BY timestamp, id LIMIT ?")) {
+            stmt.setLong(1, cutoffMillis);
+            stmt.setInt(2, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    entries.add(new Entry(rs.getLong("id"), rs.getLong("timestamp"), rs.getString("user"),
+                            rs.getString("action"), rs.getString("target"), rs.getString("ip_address"),
+                            rs.getString("metadata"), rs.getInt("success") == 1));
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Writes the entries as a new gzip member after the committed part of the segment and syncs it.
+     * @return the new length of the segment file
+     */
+    private long append(String name, Segment current, List<Entry> entries) throws IOException {
+        long committed = current != null ? current.sizeBytes() : 0;
+        try (FileChannel channel = FileChannel.open(new File(directory, name).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (channel.size() > committed) {
+                channel.truncate(committed);
+            }
+            channel.position(committed);
+            GZIPOutputStream gzip = new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+                for (Entry entry : entries) {
+                    gson.toJson(entry, writer);
+                    writer.write('\n');
+                }
+                writer.flush();
+                gzip.finish();
+                channel.force(true);
+                return channel.position();
+            }
+        }
+    }
+
+    /**
+     * Deletes the archived rows and records the new segment lengths in one transaction.
+     */
+    private void commit(List<Entry> batch, List<Segment> updated) throws SQLException {
+        long now = System.currentTimeMillis();
+        writeQueue.execute(conn -> {
+            delete(conn, batch);
+            try (PreparedStatement upsert = conn.prepareStatement(upsertSegmentSql)) {
+                for (Segment segment : updated) {
+                    upsert.setString(1, serverId);
+                    upsert.setString(2, segment.name());
+                    upsert.setLong(3, segment.startMillis());
+                    upsert.setLong(4, segment.endMillis());
+                    upsert.setLong(5, segment.rowCount());
+                    upsert.setLong(6, segment.sizeBytes());
+                    upsert.setLong(7, now);
+                    upsert.addBatch();
+                }
+                upsert.executeBatch();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Stores each bucket as a gzip member in audit_archive_chunks and deletes the archived rows,
+     * in one transaction.
+     */
+    private void commitChunks(List<Entry> batch, Map<Long, List<Entry>> buckets) throws SQLException, IOException {
+        List<byte[]> chunks = new ArrayList<>(buckets.size());
+        for (List<Entry> entries : buckets.values()) {
+            chunks.add(compress(entries));
+        }
+        long now = System.currentTimeMillis();
+        writeQueue.execute(conn -> {
+            delete(conn, batch);
+            try (PreparedStatement insert = conn.prepareStatement("INSERT INTO audit_archive_chunks (start_millis, "
+                    + "end_millis, row_count, size_bytes, data, created_at) VALUES (?, ?, ?, ?, ?, ?)")) {
+                int index = 0;
+                for (Map.Entry<Long, List<Entry>> bucket : buckets.entrySet()) {
+                    byte[] data = chunks.get(index++);
+                    insert.setLong(1, bucket.getKey());
+                    insert.setLong(2, bucket.getKey() + segmentMillis);
+                    insert.setLong(3, bucket.getValue().size());
+                    insert.setLong(4, data.length);
+                    insert.setBytes(5, data);
+                    insert.setLong(6, now);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+            return null;
+        });
+    }
+
+    private byte[] compress(List<Entry> entries) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(out, BUFFER_SIZE), StandardCharsets.UTF_8)) {
+            for (Entry entry : entries) {
+                gson.toJson(entry, writer);
+                writer.write('\n');
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void delete(Connection conn, List<Entry> batch) throws SQLException {
+        try (PreparedStatement delete = conn.prepareStatement("DELETE FROM audit_logs WHERE id = ?")) {
+            for (Entry entry : batch) {
+                delete.setLong(1, entry.id());
+                delete.addBatch();
+            }
+            delete.executeBatch();
+        }
+    }
+
+    /**
+     * Deletes the segments and chunks whose whole span is older than the cutoff.
+     * @return the number of segments and chunks deleted
+     */
+    int expire(long cutoffMillis) throws SQLException {
+        int chunks = 0;
+        if (shared) {
+            chunks = writeQueue.execute(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "DELETE FROM audit_archive_chunks WHERE end_millis <= ?")) {
+                    stmt.setLong(1, cutoffMillis);
+                    return stmt.executeUpdate();
+                }
+            });
+        }
+        return chunks + expireSegments(cutoffMillis);
+    }
+
+    private int expireSegments(long cutoffMillis) throws SQLException {
+        List<Segment> expired = segments.values().stream()
+                .filter(segment -> segment.endMillis() <= cutoffMillis)
+                .toList();
+        if (expired.isEmpty()) {
+            return 0;
+        }
+        writeQueue.execute(conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "DELETE FROM audit_archive_segments WHERE server_id = ? AND name = ?")) {
+                for (Segment segment : expired) {
+                    stmt.setString(1, serverId);
+                    stmt.setString(2, segment.name());
+                    stmt.addBatch();
+                }
+                return stmt.executeBatch();
+            }
+        });
+        for (Segment segment : expired) {
+            segments.remove(segment.name());
+            File file = new File(directory, segment.name());
+            if (file.exists() && !file.delete()) {
+                logger.warn("Failed to delete expired audit archive {}", file.getAbsolutePath());
+            }
+        }
+        return expired.size();
+    }
+
+    /**
+     * Streams the archived entries matching a query, newest first. Segments are read newest first
+     * and skipped when outside of the queried time range; at most {@code limit} matching entries
+     * of a segment are held in memory to order them.
+     * @return the number of entries visited
+     */
+    int forEach(AuditQuery query, AuditLogDao.RowVisitor visitor) throws SQLException, IOException {
+        long upper = query.toMillis() != null ? query.toMillis() : Long.MAX_VALUE;
+        if (query.beforeTimestamp() != null && query.beforeTimestamp() < upper) {
+            upper = query.beforeTimestamp() + 1;
+        }
+        long lower = query.fromMillis() != null ? query.fromMillis() : Long.MIN_VALUE;
+        long upperBound = upper;
+        List<Segment> candidates = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            if (segment.startMillis() < upperBound && segment.endMillis() > lower) {
+                candidates.add(segment);
+            }
+        }
+        if (shared) {
+            candidates.addAll(chunkBuckets(lower, upperBound));
+        }
+        candidates.sort(Comparator.comparingLong(Segment::startMillis).reversed());
+
+        int count = 0;
+        AuditLog row = new AuditLog();
+        for (Segment segment : candidates) {
+            if (count >= query.limit()) {
+                break;
+            }
+            for (Entry entry : newest(segment, query, query.limit() - count)) {
+                entry.fill(row);
+                visitor.visit(row);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Lists the buckets of chunks overlapping a time range.
+     */
+    private List<Segment> chunkBuckets(long lower, long upper) throws SQLException {
+        List<Segment> buckets = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT start_millis, MAX(end_millis), SUM(row_count), "
+                     + "SUM(size_bytes) FROM audit_archive_chunks WHERE start_millis < ? AND end_millis > ? "
+                     + "GROUP BY start_millis")) {
+            stmt.setLong(1, upper);
+            stmt.setLong(2, lower);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    buckets.add(new Segment(null, rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4)));
+                }
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * Returns the newest entries of a segment, or of a bucket of chunks, matching the query, newest first.
+     */
+    private List<Entry> newest(Segment segment, AuditQuery query, int limit) throws SQLException, IOException {
+        PriorityQueue<Entry> newest = new PriorityQueue<>(KEY_ORDER);
+        if (segment.name() == null) {
+            collectChunks(segment.startMillis(), query, limit, newest);
+        } else {
+            File file = new File(directory, segment.name());
+            try (InputStream in = new BoundedInputStream(Files.newInputStream(file.toPath()), segment.sizeBytes())) {
+                collect(in, query, limit, newest);
+            } catch (NoSuchFileException e) {
+                logger.warn("Audit archive {} is missing, its {} entries are skipped",
+                        file.getAbsolutePath(), segment.rowCount());
+                return List.of();
+            } catch (JsonParseException e) {
+                throw new IOException("Corrupted audit archive " + file.getAbsolutePath(), e);
+            }
+        }
+
+        List<Entry> ordered = new ArrayList<>(newest);
+        ordered.sort(KEY_ORDER.reversed());
+        return ordered;
+    }
+
+    private void collectChunks(long startMillis, AuditQuery query, int limit, PriorityQueue<Entry> newest)
+            throws SQLException, IOException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT id, data FROM audit_archive_chunks WHERE start_millis = ? ORDER BY id")) {
+            stmt.setLong(1, startMillis);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    try {
+                        collect(new ByteArrayInputStream(rs.getBytes(2)), query, limit, newest);
+                    } catch (JsonParseException e) {
+                        throw new IOException("Corrupted audit archive chunk " + rs.getLong(1), e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the entries of a gzip stream matching the query, keeping the newest {@code limit} ones.
+     */
+    private void collect(InputStream in, AuditQuery query, int limit, PriorityQueue<Entry> newest) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(in, BUFFER_SIZE), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Entry entry = gson.fromJson(line, Entry.class);
+                if (entry != null && entry.matches(query)) {
+                    newest.add(entry);
+                    if (newest.size() > limit) {
+                        newest.poll();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of segments and chunks, archived entries and bytes stored.
+     */
+    Map<String, Object> getStats() {
+        long count = segments.size();
+        long rows = 0;
+        long bytes = 0;
+        long oldest = Long.MAX_VALUE;
+        for (Segment segment : segments.values()) {
+            rows += segment.rowCount();
+            bytes += segment.sizeBytes();
+            oldest = Math.min(oldest, segment.startMillis());
+        }
+        if (shared) {
+            try (Connection conn = dataSource.getConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*), SUM(row_count), SUM(size_bytes), MIN(start_millis) "
+                         + "FROM audit_archive_chunks")) {
+                if (rs.next() && rs.getLong(1) > 0) {
+                    count += rs.getLong(1);
+                    rows += rs.getLong(2);
+                    bytes += rs.getLong(3);
+                    oldest = Math.min(oldest, rs.getLong(4));
+                }
+            } catch (SQLException e) {
+                logger.warn("Failed to read the audit archive chunk statistics", e);
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("storage", shared ? "database" : "files");
+        stats.put("directory", directory.getAbsolutePath());
+        stats.put("segments", count);
+        stats.put("archivedEntries", rows);
+        stats.put("archiveBytes", bytes);
+        stats.put("oldestSegment", oldest == Long.MAX_VALUE ? null : Instant.ofEpochMilli(oldest).toString());
+        return stats;
+    }
+
+    /**
+     * Stops reading at the committed length of a segment, hiding the tail of an uncommitted pass.
+     */
+    private static final class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            // GZIPInputStream looks for a further member only while bytes are available
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -1,56 +1,258 @@
 package fr.matissead.pluginmanagerweb.persistence;
 
+import fr.matissead.pluginmanagerweb.config.AuditConfig;
 import fr.matissead.pluginmanagerweb.model.AuditLog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
 import java.sql.*;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Data Access Object for AuditLog entries.
  * Handles persistence of audit trail for administrative actions.
+ * Writes are asynchronous and batched by an {@link AuditLogWriter}; entries older than
+ * the retention age are moved to an {@link AuditArchive} and still returned by queries.
  */
 public class AuditLogDao {
     private static final Logger logger = LoggerFactory.getLogger(AuditLogDao.class);
+    private static final String ROW_PLACEHOLDERS = "(?, ?, ?, ?, ?, ?, ?)";
+    // Rows read per connection checkout when streaming a page
+    private static final int CHUNK_ROWS = 256;
+    
     private final DataSource dataSource;
+    private final WriteQueue writeQueue;
+    private final SqlDialect dialect;
+    // user is reserved by PostgreSQL
+    private final String userColumn;
+    private final String insertPrefix;
+    private final AuditLogWriter writer;
+    private final AuditArchive archive;
+    private final AuditRetention retention;
     
-    public AuditLogDao(DataSource dataSource) {
+    /**
+     * @param serverId id of this server in a shared database, which scopes the segment files of earlier releases;
+     *                 empty for SQLite
+     */
+    public AuditLogDao(DataSource dataSource, WriteQueue writeQueue, SqlDialect dialect, AuditConfig config,
+                       File dataFolder, String serverId) {
         this.dataSource = dataSource;
+        this.writeQueue = writeQueue;
+        this.dialect = dialect;
+        this.userColumn = dialect.quote("user");
+        this.insertPrefix = "INSERT INTO audit_logs (timestamp, " + userColumn
+                + ", action, target, ip_address, metadata, success) VALUES ";
+        this.archive = new AuditArchive(new File(dataFolder, config.getArchiveDirectory()),
+                config.getSegmentDays(), dataSource, writeQueue, dialect, serverId);
+        this.writer = new AuditLogWriter(config, this::insertBatch);
+        this.retention = config.isRetentionEnabled() ? new AuditRetention(config, archive, writeQueue, dialect) : null;
     }
     
     /**
-     * Saves an audit log entry to the database.
+     * Queues an audit log entry; it is written asynchronously with other pending entries.
+     * Entries are dropped (and counted) when the queue stays full, see {@link AuditConfig}.
      */
     public void save(AuditLog auditLog) {
-        String sql = "INSERT INTO audit_logs (timestamp, user, action, target, ip_address, metadata, success) " +
-                     "VALUES (?, ?, ?, ?, ?, ?, ?)";
+        writer.enqueue(auditLog);
+    }
+    
+    /**
+     * Returns the enqueued, written and dropped entry counts of the audit queue,
+     * the archive size and the results of the retention passes.
+     */
+    public Map<String, Object> getWriteStats() {
+        Map<String, Object> stats = writer.getStats();
+        stats.put("archive", archive.getStats());
+        stats.put("retention", retention != null ? retention.getStats() : null);
+        return stats;
+    }
+    
+    /**
+     * Stops the retention passes, writes the queued entries and stops the audit writer.
+     * Must be called before the write queue is closed.
+     */
+    public void close() {
+        if (retention != null) {
+            retention.close();
+        }
+        writer.close();
+    }
+    
+    /**
+     * Inserts entries with one multi-row statement, in one transaction.
+     */
+    private void insertBatch(List<AuditLog> batch) throws SQLException {
+        StringBuilder sql = new StringBuilder(insertPrefix.length() + batch.size() * (ROW_PLACEHOLDERS.length() + 2));
+        sql.append(insertPrefix);
+        for (int i = 0; i < batch.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append(ROW_PLACEHOLDERS);
+        }
         
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            
-            stmt.setString(1, auditLog.getTimestamp().toString());
-            stmt.setString(2, auditLog.getUser());
-            stmt.setString(3, auditLog.getAction());
-            stmt.setString(4, auditLog.getTarget());
-            stmt.setString(5, auditLog.getIpAddress());
-            stmt.setString(6, auditLog.getMetadata());
-            stmt.setInt(7, auditLog.isSuccess() ? 1 : 0);
-            
-            stmt.executeUpdate();
-            
-            try (ResultSet keys = stmt.getGeneratedKeys()) {
-                if (keys.next()) {
-                    auditLog.setId(keys.getLong(1));
+        writeQueue.execute(conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+                int index = 1;
+                for (AuditLog auditLog : batch) {
+                    // Indexed columns are bounded on MySQL: one long request path must not fail the batch
+                    stmt.setLong(index++, auditLog.getTimestamp().toEpochMilli());
+                    stmt.setString(index++, dialect.truncateKey(auditLog.getUser()));
+                    stmt.setString(index++, dialect.truncateKey(auditLog.getAction()));
+                    stmt.setString(index++, dialect.truncateKey(auditLog.getTarget()));
+                    stmt.setString(index++, dialect.truncateKey(auditLog.getIpAddress()));
+                    stmt.setString(index++, auditLog.getMetadata());
+                    stmt.setInt(index++, auditLog.isSuccess() ? 1 : 0);
+                }
+                return stmt.executeUpdate();
+            }
+        });
+    }
+    
+    /**
+     * Receives the rows of a streamed query.
+     */
+    @FunctionalInterface
+    public interface RowVisitor {
+        /**
+         * @param auditLog the current row, which may be refilled for the next one
+         */
+        void visit(AuditLog auditLog) throws IOException;
+    }
+    
+    /**
+     * Streams the entries matching a query, newest first.
+     * Entries of the table come first: archived entries are all older, as only entries past
+     * the retention age are archived. The page continues into the archive when the table
+     * does not fill it.
+     * @return the number of rows visited
+     */
+    public int forEach(AuditQuery query, RowVisitor visitor) throws SQLException, IOException {
+        long[] lastKey = new long[2];
+        int count = forEachInTable(query, auditLog -> {
+            visitor.visit(auditLog);
+            lastKey[0] = auditLog.getTimestamp().toEpochMilli();
+            lastKey[1] = auditLog.getId();
+        });
+        if (count >= query.limit()) {
+            return count;
+        }
+        AuditQuery older = count == 0 ? query : query.continueBefore(lastKey[0], lastKey[1], query.limit() - count);
+        return count + archive.forEach(older, visitor);
+    }
+    
+    /**
+     * Visits the entries of the audit_logs table matching a query. The page is read in keyset chunks
+     * of {@link #CHUNK_ROWS} rows, each on its own connection released before its rows are visited,
+     * so that writing the response to a slow client neither holds a pool connection nor, on SQLite,
+     * a WAL snapshot that would block checkpoints, and at most one chunk of rows is held in memory.
+     */
+    private int forEachInTable(AuditQuery query, RowVisitor visitor) throws SQLException, IOException {
+        StringBuilder sql = new StringBuilder("SELECT * FROM audit_logs WHERE 1 = 1");
+        List<Object> params = new ArrayList<>();
+        if (query.action() != null) {
+            sql.append(" AND action = ?");
+            params.add(query.action());
+        }
+        if (query.user() != null) {
+            sql.append(" AND ").append(userColumn).append(" = ?");
+            params.add(query.user());
+        }
+        if (query.targetPrefix() != null && !query.targetPrefix().isEmpty()) {
+            // A range rather than LIKE, which is case-insensitive and cannot use the index
+            sql.append(" AND target >= ?");
+            params.add(query.targetPrefix());
+            String upper = prefixUpperBound(query.targetPrefix());
+            if (upper != null) {
+                sql.append(" AND target < ?");
+                params.add(upper);
+            }
+        }
+        if (query.success() != null) {
+            sql.append(" AND success = ?");
+            params.add(query.success() ? 1 : 0);
+        }
+        if (query.fromMillis() != null) {
+            sql.append(" AND timestamp >= ?");
+            params.add(query.fromMillis());
+        }
+        if (query.toMillis() != null) {
+            sql.append(" AND timestamp < ?");
+            params.add(query.toMillis());
+        }
+        String filtered = sql.toString();
+        String continued = filtered + " AND (timestamp, id) < (?, ?) ORDER BY timestamp DESC, id DESC LIMIT ?";
+        String first = filtered + " ORDER BY timestamp DESC, id DESC LIMIT ?";
+        
+        boolean continues = query.beforeTimestamp() != null && query.beforeId() != null;
+        Long beforeTimestamp = continues ? query.beforeTimestamp() : null;
+        long beforeId = continues ? query.beforeId() : 0;
+        // Rows of the current chunk, refilled by the next one
+        List<AuditLog> chunk = new ArrayList<>(Math.min(query.limit(), CHUNK_ROWS));
+        int count = 0;
+        while (count < query.limit()) {
+            int limit = Math.min(CHUNK_ROWS, query.limit() - count);
+            int size = 0;
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(beforeTimestamp != null ? continued : first)) {
+                int index = 1;
+                for (Object param : params) {
+                    stmt.setObject(index++, param);
+                }
+                if (beforeTimestamp != null) {
+                    stmt.setLong(index++, beforeTimestamp);
+                    stmt.setLong(index++, beforeId);
+                }
+                stmt.setInt(index, limit);
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        if (size == chunk.size()) {
+                            chunk.add(new AuditLog());
+                        }
+                        fill(rs, chunk.get(size++));
+                    }
                 }
             }
             
-        } catch (SQLException e) {
-            logger.error("Failed to save audit log", e);
+            // Visited once the connection is back in the pool: a slow client never holds it
+            for (int i = 0; i < size; i++) {
+                visitor.visit(chunk.get(i));
+            }
+            count += size;
+            if (size < limit) {
+                break;
+            }
+            AuditLog last = chunk.get(size - 1);
+            beforeTimestamp = last.getTimestamp().toEpochMilli();
+            beforeId = last.getId();
         }
+        return count;
+    }
+    
+    /**
+     * Returns the smallest string greater than every string starting with the prefix,
+     * or null if there is none.
+     */
+    static String prefixUpperBound(String prefix) {
+        int end = prefix.length();
+        while (end > 0) {
+            int last = prefix.codePointBefore(end);
+            int start = end - Character.charCount(last);
+            if (last < Character.MAX_CODE_POINT) {
+                int next = last + 1;
+                // Skip the surrogate range, which is not a valid code point on its own
+                if (next >= Character.MIN_SURROGATE && next <= Character.MAX_SURROGATE) {
+                    next = Character.MAX_SURROGATE + 1;
+                }
+                return prefix.substring(0, start) + new String(Character.toChars(next));
+            }
+            end = start;
+        }
+        return null;
     }
     
     /**
@@ -82,7 +284,7 @@ public class AuditLogDao {
      * Retrieves audit logs for a specific user.
      */
     public List<AuditLog> getByUser(String user, int limit) {
-        String sql = "SELECT * FROM audit_logs WHERE user = ? ORDER BY timestamp DESC LIMIT ?";
+        String sql = "SELECT * FROM audit_logs WHERE " + userColumn + " = ? ORDER BY timestamp DESC LIMIT ?";
         List<AuditLog> logs = new ArrayList<>();
         
         try (Connection conn = dataSource.getConnection();
@@ -106,14 +308,18 @@ public class AuditLogDao {
     
     private AuditLog mapResultSet(ResultSet rs) throws SQLException {
         AuditLog log = new AuditLog();
+        fill(rs, log);
+        return log;
+    }
+    
+    private void fill(ResultSet rs, AuditLog log) throws SQLException {
         log.setId(rs.getLong("id"));
-        log.setTimestamp(Instant.parse(rs.getString("timestamp")));
+        log.setTimestamp(Instant.ofEpochMilli(rs.getLong("timestamp")));
         log.setUser(rs.getString("user"));
         log.setAction(rs.getString("action"));
         log.setTarget(rs.getString("target"));
         log.setIpAddress(rs.getString("ip_address"));
         log.setMetadata(rs.getString("metadata"));
         log.setSuccess(rs.getInt("success") == 1);
-        return log;
     }
 }
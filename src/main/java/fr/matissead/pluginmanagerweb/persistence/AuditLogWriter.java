@@ -0,0 +1,171 @@
+package fr.matissead.pluginmanagerweb.persistence;
+
+import fr.matissead.pluginmanagerweb.config.AuditConfig;
+import fr.matissead.pluginmanagerweb.model.AuditLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded queue between request threads and the audit_logs table.
+ * <p>
+ * Request threads only enqueue entries; a background thread takes whatever is waiting,
+ * up to the batch size, and writes it with one multi-row insert. When the queue is full
+ * the configured {@link AuditConfig.OverflowPolicy} applies, so a flood of audited requests
+ * (e.g. rejected tokens) cannot turn into a flood of database writes.
+ */
+class AuditLogWriter {
+    private static final Logger logger = LoggerFactory.getLogger(AuditLogWriter.class);
+    private static final long DROP_WARNING_INTERVAL_MS = 10_000;
+
+    /**
+     * Writes a batch of entries in one transaction.
+     */
+    @FunctionalInterface
+    interface BatchInserter {
+        void insert(List<AuditLog> batch) throws SQLException;
+    }
+
+    private final AuditConfig config;
+    private final BatchInserter inserter;
+    private final BlockingQueue<AuditLog> queue;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong lastDropWarning = new AtomicLong();
+    // Only written by the writer thread
+    private volatile long written;
+    private volatile long failed;
+    private volatile long batches;
+
+    AuditLogWriter(AuditConfig config, BatchInserter inserter) {
+        this.config = config;
+        this.inserter = inserter;
+        this.queue = new ArrayBlockingQueue<>(config.getQueueCapacity());
+        this.thread = new Thread(this::run, "PluginManagerWeb-Audit");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues an entry, applying the overflow policy if the queue is full.
+     * @return false if the entry was dropped
+     */
+    boolean enqueue(AuditLog auditLog) {
+        boolean accepted = running && offer(auditLog);
+        if (accepted) {
+            enqueued.increment();
+        } else {
+            dropped.increment();
+            warnDropped();
+        }
+        return accepted;
+    }
+
+    private boolean offer(AuditLog auditLog) {
+        if (config.getOverflowPolicy() == AuditConfig.OverflowPolicy.DROP) {
+            return queue.offer(auditLog);
+        }
+        try {
+            return queue.offer(auditLog, config.getBlockTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void warnDropped() {
+        long now = System.currentTimeMillis();
+        long last = lastDropWarning.get();
+        if (now - last >= DROP_WARNING_INTERVAL_MS && lastDropWarning.compareAndSet(last, now)) {
+            logger.warn("Audit queue is full ({} entries), {} audit entries dropped so far",
+                    config.getQueueCapacity(), dropped.sum());
+        }
+    }
+
+    /**
+     * Returns queue depth and enqueued, written and dropped counts.
+     */
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pending", queue.size());
+        stats.put("queueCapacity", config.getQueueCapacity());
+        stats.put("overflowPolicy", config.getOverflowPolicy().name().toLowerCase(Locale.ROOT));
+        stats.put("enqueued", enqueued.sum());
+        stats.put("written", written);
+        stats.put("dropped", dropped.sum());
+        stats.put("failed", failed);
+        stats.put("batches", batches);
+        return stats;
+    }
+
+    /**
+     * Stops accepting entries and writes the queued ones.
+     */
+    void close() {
+        running = false;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            logger.warn("Audit writer did not stop in time, {} audit entries are lost", queue.size());
+            thread.interrupt();
+        }
+    }
+
+    private void run() {
+        List<AuditLog> batch = new ArrayList<>(config.getBatchSize());
+        while (running || !queue.isEmpty()) {
+            try {
+                AuditLog first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, config.getBatchSize() - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<AuditLog> batch) {
+        try {
+            inserter.insert(batch);
+            written += batch.size();
+            batches++;
+        } catch (SQLException e) {
+            if (batch.size() > 1 && SqlDialect.isRejectedRow(e)) {
+                // One invalid entry fails the multi-row insert: write the others one by one
+                logger.warn("Audit batch rejected ({}), writing its {} entries one by one", e.getMessage(), batch.size());
+                for (AuditLog entry : batch) {
+                    write(List.of(entry));
+                }
+                return;
+            }
+            failed += batch.size();
+            logger.error("Failed to write {} audit entries", batch.size(), e);
+        } catch (RuntimeException e) {
+            failed += batch.size();
+            logger.error("Failed to write {} audit entries", batch.size(), e);
+        }
+    }
+}
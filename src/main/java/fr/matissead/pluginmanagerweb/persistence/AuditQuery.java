@@ -0,0 +1,21 @@
+package fr.matissead.pluginmanagerweb.persistence;
+
+/**
+ * Filters and keyset cursor of an audit log query. Null filters are ignored.
+ * Results are ordered newest first by (timestamp, id); a page continues strictly
+ * after the entry identified by {@code beforeTimestamp} and {@code beforeId}.
+ *
+ * @param fromMillis   inclusive lower bound of the timestamp
+ * @param toMillis     exclusive upper bound of the timestamp
+ * @param targetPrefix entries whose target starts with this value
+ */
+public record AuditQuery(String action, String targetPrefix, String user, Boolean success,
+                         Long fromMillis, Long toMillis, Long beforeTimestamp, Long beforeId, int limit) {
+
+    /**
+     * Returns the same filters, continuing after the given entry with a new limit.
+     */
+    public AuditQuery continueBefore(long timestamp, long id, int limit) {
+        return new AuditQuery(action, targetPrefix, user, success, fromMillis, toMillis, timestamp, id, limit);
+    }
+}
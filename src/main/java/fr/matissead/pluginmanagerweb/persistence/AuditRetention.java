@@ -0,0 +1,153 @@
+package fr.matissead.pluginmanagerweb.persistence;
+
+import fr.matissead.pluginmanagerweb.config.AuditConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically moves audit entries older than the retention age to the {@link AuditArchive},
+ * deletes expired archive segments and returns the pages freed in the database file to the
+ * file system with an incremental vacuum, keeping the table and its indexes small.
+ */
+class AuditRetention {
+    private static final Logger logger = LoggerFactory.getLogger(AuditRetention.class);
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    private final AuditConfig config;
+    private final AuditArchive archive;
+    private final WriteQueue writeQueue;
+    private final SqlDialect dialect;
+    private final ScheduledExecutorService executor;
+    private volatile boolean incrementalVacuum;
+
+    // Statistics, only written by the retention thread
+    private volatile long lastRunMillis;
+    private volatile long lastRunDurationMillis;
+    private volatile long lastArchived;
+    private volatile long totalArchived;
+    private volatile long expiredSegments;
+    private volatile long vacuumedPages;
+    private volatile long failedRuns;
+
+    AuditRetention(AuditConfig config, AuditArchive archive, WriteQueue writeQueue, SqlDialect dialect) {
+        this.config = config;
+        this.archive = archive;
+        this.writeQueue = writeQueue;
+        this.dialect = dialect;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "PluginManagerWeb-Audit-Retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // The first pass waits a minute to stay out of the server startup
+        long interval = config.getRetentionIntervalMinutes();
+        executor.scheduleWithFixedDelay(this::runQuietly, 1, interval, TimeUnit.MINUTES);
+    }
+
+    private void runQuietly() {
+        try {
+            run();
+        } catch (SQLException | IOException | RuntimeException e) {
+            failedRuns++;
+            logger.error("Audit retention pass failed", e);
+        }
+    }
+
+    private void run() throws SQLException, IOException {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+
+        int archived = archive.archive(now - TimeUnit.DAYS.toMillis(config.getMaxAgeDays()),
+                config.getArchiveBatchSize());
+        int expired = config.getArchiveMaxAgeDays() > 0
+                ? archive.expire(now - TimeUnit.DAYS.toMillis(config.getArchiveMaxAgeDays()))
+                : 0;
+        // MySQL and PostgreSQL reuse and reclaim free pages themselves
+        long vacuumed = config.getVacuumMaxPages() > 0 && !dialect.isNetworked() ? vacuum(config.getVacuumMaxPages()) : 0;
+
+        lastRunMillis = now;
+        lastRunDurationMillis = (System.nanoTime() - start) / 1_000_000;
+        lastArchived = archived;
+        totalArchived += archived;
+        expiredSegments += expired;
+        vacuumedPages += vacuumed;
+        if (archived > 0 || expired > 0 || vacuumed > 0) {
+            logger.info("Audit retention archived {} entries, deleted {} archive segments and freed {} pages in {} ms",
+                    archived, expired, vacuumed, lastRunDurationMillis);
+        }
+    }
+
+    /**
+     * Releases up to maxPages free pages at the end of the database file.
+     * @return the number of pages released
+     */
+    private long vacuum(int maxPages) throws SQLException {
+        return writeQueue.executeOutsideTransaction(conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                if (!incrementalVacuum) {
+                    if (pragma(stmt, "auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+                        // Databases created before retention existed: the mode only changes with a full rebuild
+                        logger.info("Enabling incremental vacuum, the database file is rebuilt once");
+                        stmt.executeUpdate("PRAGMA auto_vacuum = INCREMENTAL");
+                        stmt.executeUpdate("VACUUM");
+                    }
+                    incrementalVacuum = true;
+                }
+                long free = pragma(stmt, "freelist_count");
+                if (free == 0) {
+                    return 0L;
+                }
+                // executeUpdate runs the pragma to completion, a single step would free one page
+                stmt.executeUpdate("PRAGMA incremental_vacuum(" + Math.min(free, maxPages) + ")");
+                return free - pragma(stmt, "freelist_count");
+            }
+        });
+    }
+
+    private static long pragma(Statement stmt, String name) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA " + name)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Returns the settings and results of the retention passes.
+     */
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxAgeDays", config.getMaxAgeDays());
+        stats.put("lastRun", lastRunMillis > 0 ? Instant.ofEpochMilli(lastRunMillis).toString() : null);
+        stats.put("lastRunMillis", lastRunDurationMillis);
+        stats.put("lastArchived", lastArchived);
+        stats.put("totalArchived", totalArchived);
+        stats.put("expiredSegments", expiredSegments);
+        stats.put("vacuumedPages", vacuumedPages);
+        stats.put("failedRuns", failedRuns);
+        return stats;
+    }
+
+    /**
+     * Stops the retention thread, interrupting a running pass between two batches.
+     */
+    void close() {
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("Audit retention pass did not stop in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
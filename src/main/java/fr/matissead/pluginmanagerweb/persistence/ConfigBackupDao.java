@@ -1,79 +1,229 @@
 package fr.matissead.pluginmanagerweb.persistence;
 
 import fr.matissead.pluginmanagerweb.model.ConfigBackup;
+import fr.matissead.pluginmanagerweb.model.ConfigBackupSummary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Data Access Object for ConfigBackup entries.
  * Manages configuration file backups for rollback functionality.
+ * Contents are stored once per distinct content by the {@link ConfigBlobStore}, successive
+ * versions of a file as line deltas with a full keyframe every {@code keyframeInterval} versions.
  */
 public class ConfigBackupDao {
     private static final Logger logger = LoggerFactory.getLogger(ConfigBackupDao.class);
     private final DataSource dataSource;
+    private final WriteQueue writeQueue;
+    private final SqlDialect dialect;
+    private final int keyframeInterval;
     
-    public ConfigBackupDao(DataSource dataSource) {
+    public ConfigBackupDao(DataSource dataSource, WriteQueue writeQueue, SqlDialect dialect, int keyframeInterval) {
         this.dataSource = dataSource;
+        this.writeQueue = writeQueue;
+        this.dialect = dialect;
+        this.keyframeInterval = keyframeInterval;
     }
     
     /**
-     * Saves a configuration backup to the database.
+     * Saves a configuration backup to the database. A content identical to a stored one
+     * only adds a metadata row referencing the existing blob; a new content is encoded,
+     * as a delta against the previous backup of the same file if smaller, before it is queued.
+     * The plugin name, path and author are cut to the length of their columns.
      */
     public void save(ConfigBackup backup) {
-        String sql = "INSERT INTO config_backups (plugin_name, timestamp, content, path, created_by) " +
-                     "VALUES (?, ?, ?, ?, ?)";
+        String sql = "INSERT INTO config_backups (plugin_name, timestamp, path, created_by, content_hash, size_bytes) " +
+                     "VALUES (?, ?, ?, ?, ?, ?)";
+        byte[] content = ConfigBlobStore.bytes(backup.getContent());
+        String hash = ConfigBlobStore.hash(content);
+        backup.setContentHash(hash);
+        backup.setSizeBytes(content.length);
         
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            
-            stmt.setString(1, backup.getPluginName());
-            stmt.setString(2, backup.getTimestamp().toString());
-            stmt.setString(3, backup.getContent());
-            stmt.setString(4, backup.getPath());
-            stmt.setString(5, backup.getCreatedBy());
-            
-            stmt.executeUpdate();
-            
-            try (ResultSet keys = stmt.getGeneratedKeys()) {
-                if (keys.next()) {
-                    backup.setId(keys.getLong(1));
+        try {
+            ConfigBlobStore.Encoded encoded = encode(backup, hash, content);
+            writeQueue.execute(conn -> {
+                ConfigBlobStore.acquire(conn, hash, content, encoded);
+                try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                    stmt.setString(1, dialect.truncateKey(backup.getPluginName()));
+                    stmt.setLong(2, backup.getTimestamp().toEpochMilli());
+                    stmt.setString(3, dialect.truncateKey(backup.getPath()));
+                    stmt.setString(4, dialect.truncateKey(backup.getCreatedBy()));
+                    stmt.setString(5, hash);
+                    stmt.setInt(6, content.length);
+
+                    stmt.executeUpdate();
+
+                    try (ResultSet keys = stmt.getGeneratedKeys()) {
+                        if (keys.next()) {
+                            backup.setId(keys.getLong(1));
+                        }
+                    }
                 }
-            }
-            
+                return null;
+            });
         } catch (SQLException e) {
             logger.error("Failed to save config backup", e);
         }
     }
     
     /**
-     * Retrieves all backups for a specific plugin.
+     * Encodes a content on the caller's thread, keeping the writer free during the diff.
+     * @return null if the content is already stored
+     */
+    private ConfigBlobStore.Encoded encode(ConfigBackup backup, String hash, byte[] content) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            String baseHash = null;
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT content_hash FROM config_backups WHERE plugin_name = ? AND path = ? "
+                            + "ORDER BY timestamp DESC, id DESC LIMIT 1")) {
+                stmt.setString(1, dialect.truncateKey(backup.getPluginName()));
+                stmt.setString(2, dialect.truncateKey(backup.getPath()));
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        baseHash = rs.getString(1);
+                    }
+                }
+            }
+            if (hash.equals(baseHash)) {
+                return null;
+            }
+            return ConfigBlobStore.encode(conn, content, baseHash, keyframeInterval);
+        }
+    }
+    
+    /**
+     * Deletes a backup, and its content if no other backup references it.
+     * @return false if no backup has this ID
      */
-    public List<ConfigBackup> getByPlugin(String pluginName) {
-        String sql = "SELECT * FROM config_backups WHERE plugin_name = ? ORDER BY timestamp DESC";
-        List<ConfigBackup> backups = new ArrayList<>();
+    public boolean delete(long id) {
+        try {
+            return writeQueue.execute(conn -> {
+                String hash;
+                try (PreparedStatement stmt = conn.prepareStatement("SELECT content_hash FROM config_backups WHERE id = ?")) {
+                    stmt.setLong(1, id);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (!rs.next()) {
+                            return false;
+                        }
+                        hash = rs.getString(1);
+                    }
+                }
+                try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM config_backups WHERE id = ?")) {
+                    stmt.setLong(1, id);
+                    stmt.executeUpdate();
+                }
+                ConfigBlobStore.release(conn, hash);
+                return true;
+            });
+        } catch (SQLException e) {
+            logger.error("Failed to delete config backup: " + id, e);
+            return false;
+        }
+    }
+    
+    /**
+     * Returns how much space deduplication and compression save: the size of every backup
+     * as if stored in full, of the distinct contents, and of the distinct contents as stored.
+     */
+    public Map<String, Object> getStorageStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        try (Connection conn = dataSource.getConnection()) {
+            long backups;
+            long logicalBytes;
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT COUNT(*), COALESCE(SUM(size_bytes), 0) FROM config_backups");
+                 ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                backups = rs.getLong(1);
+                logicalBytes = rs.getLong(2);
+            }
+            long[] blobs = ConfigBlobStore.totals(conn);
+            stats.put("backups", backups);
+            stats.put("blobs", blobs[0]);
+            stats.put("deltaBlobs", blobs[3]);
+            stats.put("keyframeInterval", keyframeInterval);
+            stats.put("logicalBytes", logicalBytes);
+            stats.put("uniqueBytes", blobs[1]);
+            stats.put("storedBytes", blobs[2]);
+            stats.put("dedupSavedBytes", logicalBytes - blobs[1]);
+            stats.put("compressionSavedBytes", blobs[1] - blobs[2]);
+            stats.put("savedBytes", logicalBytes - blobs[2]);
+            stats.put("savedRatio", logicalBytes > 0 ? (double) (logicalBytes - blobs[2]) / logicalBytes : 0.0);
+        } catch (SQLException e) {
+            logger.error("Failed to compute config backup storage stats", e);
+        }
+        return stats;
+    }
+    
+    /**
+     * Lists backup metadata for a plugin, newest first, without reading any content.
+     * @param path            only backups of this file, or null for all files
+     * @param beforeTimestamp with beforeId, the page continues after this backup; null for the first page
+     */
+    public List<ConfigBackupSummary> listSummaries(String pluginName, String path, Long beforeTimestamp,
+                                                   Long beforeId, int limit) throws SQLException {
+        StringBuilder sql = new StringBuilder(
+                "SELECT id, path, timestamp, created_by, size_bytes, content_hash FROM config_backups WHERE plugin_name = ?");
+        List<Object> params = new ArrayList<>();
+        params.add(dialect.truncateKey(pluginName));
+        if (path != null) {
+            sql.append(" AND path = ?");
+            params.add(dialect.truncateKey(path));
+        }
+        if (beforeTimestamp != null && beforeId != null) {
+            sql.append(" AND (timestamp, id) < (?, ?)");
+            params.add(beforeTimestamp);
+            params.add(beforeId);
+        }
+        sql.append(" ORDER BY timestamp DESC, id DESC LIMIT ?");
+        params.add(limit);
         
+        List<ConfigBackupSummary> summaries = new ArrayList<>();
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setString(1, pluginName);
-            
+             PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            for (int i = 0; i < params.size(); i++) {
+                stmt.setObject(i + 1, params.get(i));
+            }
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    backups.add(mapResultSet(rs));
+                    summaries.add(new ConfigBackupSummary(rs.getLong("id"), rs.getString("path"),
+                            Instant.ofEpochMilli(rs.getLong("timestamp")), rs.getString("created_by"),
+                            rs.getLong("size_bytes"), rs.getString("content_hash")));
                 }
             }
-            
-        } catch (SQLException e) {
-            logger.error("Failed to retrieve config backups for plugin: " + pluginName, e);
         }
-        
-        return backups;
+        return summaries;
+    }
+    
+    /**
+     * Retrieves the metadata of a backup, without its content.
+     */
+    public ConfigBackup getMetadataById(long id) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT * FROM config_backups WHERE id = ?")) {
+            stmt.setLong(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? mapMetadata(rs) : null;
+            }
+        }
+    }
+    
+    /**
+     * Rebuilds the content of a backup from its blob, in UTF-8.
+     */
+    public byte[] getContent(ConfigBackup backup) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            return ConfigBlobStore.load(conn, backup.getContentHash());
+        }
     }
     
     /**
@@ -89,7 +239,7 @@ public class ConfigBackupDao {
             
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return mapResultSet(rs);
+                    return mapResultSet(conn, rs);
                 }
             }
             
@@ -100,14 +250,25 @@ public class ConfigBackupDao {
         return null;
     }
     
-    private ConfigBackup mapResultSet(ResultSet rs) throws SQLException {
+    /**
+     * Maps a backup row, rebuilding its content from at most {@code keyframeInterval} blobs.
+     */
+    private ConfigBackup mapResultSet(Connection conn, ResultSet rs) throws SQLException {
+        ConfigBackup backup = mapMetadata(rs);
+        byte[] content = ConfigBlobStore.load(conn, backup.getContentHash());
+        backup.setContent(new String(content, StandardCharsets.UTF_8));
+        return backup;
+    }
+    
+    private ConfigBackup mapMetadata(ResultSet rs) throws SQLException {
         ConfigBackup backup = new ConfigBackup();
         backup.setId(rs.getLong("id"));
         backup.setPluginName(rs.getString("plugin_name"));
-        backup.setTimestamp(Instant.parse(rs.getString("timestamp")));
-        backup.setContent(rs.getString("content"));
+        backup.setTimestamp(Instant.ofEpochMilli(rs.getLong("timestamp")));
         backup.setPath(rs.getString("path"));
         backup.setCreatedBy(rs.getString("created_by"));
+        backup.setContentHash(rs.getString("content_hash"));
+        backup.setSizeBytes(rs.getLong("size_bytes"));
         return backup;
     }
 }
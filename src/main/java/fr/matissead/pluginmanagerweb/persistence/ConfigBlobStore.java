@@ -0,0 +1,281 @@
+package fr.matissead.pluginmanagerweb.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Content-addressed storage of config file contents in the config_blobs table.
+ * <p>
+ * A blob is keyed by the SHA-256 of its content, stored deflated (or as is when deflating
+ * does not make it smaller) and counts the references to it: saving a content that is
+ * already stored only increments its count, and the blob is deleted with its last reference.
+ * <p>
+ * A new version of a file can instead be stored as a deflated {@link LineDelta} against the blob
+ * of the previous version, its base, which the delta blob references. Every
+ * {@code keyframeInterval} versions a full keyframe is stored, so rebuilding a content never
+ * applies more than {@code keyframeInterval - 1} deltas.
+ * The reference methods run on the writer connection, inside the caller's transaction.
+ */
+final class ConfigBlobStore {
+    static final String DEFLATE = "deflate";
+    static final String IDENTITY = "identity";
+    static final String DELTA = "delta";
+
+    /**
+     * A content as stored: its encoding and encoded bytes, and for a delta its base blob
+     * and the number of deltas between it and a keyframe.
+     */
+    record Encoded(String encoding, byte[] bytes, String baseHash, int depth) {
+        Encoded(String encoding, byte[] bytes) {
+            this(encoding, bytes, null, 0);
+        }
+    }
+
+    private record Stored(String encoding, byte[] bytes, String baseHash, int rawSize) {
+    }
+
+    private ConfigBlobStore() {
+    }
+
+    /**
+     * Returns the hex SHA-256 of a content, its blob key.
+     */
+    static String hash(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static Encoded encode(byte[] content) {
+        byte[] deflated = deflate(content);
+        return deflated.length < content.length
+                ? new Encoded(DEFLATE, deflated)
+                : new Encoded(IDENTITY, content);
+    }
+
+    /**
+     * Encodes a new version of a file, as a delta against the blob of the previous version
+     * when that is smaller than a keyframe and the chain has room for it.
+     * @param baseHash blob of the previous version, or null
+     */
+    static Encoded encode(Connection conn, byte[] content, String baseHash, int keyframeInterval) throws SQLException {
+        Encoded keyframe = encode(content);
+        if (baseHash == null || keyframeInterval <= 1) {
+            return keyframe;
+        }
+        int depth;
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT chain_depth FROM config_blobs WHERE hash = ?")) {
+            stmt.setString(1, baseHash);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return keyframe;
+                }
+                depth = rs.getInt(1) + 1;
+            }
+        }
+        if (depth >= keyframeInterval) {
+            return keyframe;
+        }
+        String base = new String(load(conn, baseHash), StandardCharsets.UTF_8);
+        byte[] delta = deflate(LineDelta.diff(base, new String(content, StandardCharsets.UTF_8)));
+        return delta.length < keyframe.bytes().length ? new Encoded(DELTA, delta, baseHash, depth) : keyframe;
+    }
+
+    private static byte[] deflate(byte[] content) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, content.length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Rebuilds the content of a blob, applying its delta chain from the nearest keyframe.
+     */
+    static byte[] load(Connection conn, String hash) throws SQLException {
+        Deque<Stored> chain = new ArrayDeque<>();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT encoding, content, base_hash, raw_size FROM config_blobs WHERE hash = ?")) {
+            String next = hash;
+            while (next != null) {
+                stmt.setString(1, next);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next()) {
+                        throw new SQLException("Missing config blob " + next);
+                    }
+                    Stored stored = new Stored(rs.getString(1), rs.getBytes(2), rs.getString(3), rs.getInt(4));
+                    chain.push(stored);
+                    next = DELTA.equals(stored.encoding()) ? stored.baseHash() : null;
+                }
+            }
+        }
+
+        Stored keyframe = chain.pop();
+        byte[] content = decode(keyframe.encoding(), keyframe.bytes(), keyframe.rawSize());
+        while (!chain.isEmpty()) {
+            Stored delta = chain.pop();
+            byte[] operations = inflate(delta.bytes(), -1);
+            try {
+                String target = LineDelta.apply(new String(content, StandardCharsets.UTF_8), operations, delta.rawSize());
+                content = target.getBytes(StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new SQLException("Corrupted config delta", e);
+            }
+            if (content.length != delta.rawSize()) {
+                throw new SQLException("Config delta rebuilt " + content.length + " bytes, expected " + delta.rawSize());
+            }
+        }
+        return content;
+    }
+
+    static byte[] decode(String encoding, byte[] stored, int size) throws SQLException {
+        if (IDENTITY.equals(encoding)) {
+            return stored;
+        }
+        if (!DEFLATE.equals(encoding)) {
+            throw new SQLException("Unknown config blob encoding: " + encoding);
+        }
+        return inflate(stored, size);
+    }
+
+    /**
+     * Inflates deflated bytes.
+     * @param size expected length, or -1 if unknown
+     */
+    private static byte[] inflate(byte[] stored, int size) throws SQLException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(size >= 0 ? size : stored.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int read = inflater.inflate(buffer);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                out.write(buffer, 0, read);
+            }
+            if (!inflater.finished() || (size >= 0 && out.size() != size)) {
+                throw new SQLException("Truncated config blob: expected " + (size >= 0 ? size + " bytes" : "more data")
+                        + ", got " + out.size());
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new SQLException("Corrupted config blob", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Adds a reference to the blob of a content, storing the content as a keyframe if no blob has its hash.
+     */
+    static void acquire(Connection conn, String hash, byte[] content) throws SQLException {
+        acquire(conn, hash, content, null);
+    }
+
+    /**
+     * Adds a reference to the blob of a content, storing it with the given encoding if no blob
+     * has its hash. A delta whose base was deleted in the meantime is stored as a keyframe.
+     * @param encoded the content encoded off the writer thread, or null to encode it here
+     */
+    static void acquire(Connection conn, String hash, byte[] content, Encoded encoded) throws SQLException {
+        if (addReference(conn, hash)) {
+            return;
+        }
+        if (encoded == null || (encoded.baseHash() != null && !addReference(conn, encoded.baseHash()))) {
+            // Only new contents are compressed
+            encoded = encode(content);
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO config_blobs (hash, encoding, content, raw_size, stored_size, ref_count, base_hash, chain_depth) "
+                        + "VALUES (?, ?, ?, ?, ?, 1, ?, ?)")) {
+            stmt.setString(1, hash);
+            stmt.setString(2, encoded.encoding());
+            stmt.setBytes(3, encoded.bytes());
+            stmt.setInt(4, content.length);
+            stmt.setInt(5, encoded.bytes().length);
+            stmt.setString(6, encoded.baseHash());
+            stmt.setInt(7, encoded.depth());
+            stmt.executeUpdate();
+        }
+    }
+
+    private static boolean addReference(Connection conn, String hash) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE config_blobs SET ref_count = ref_count + 1 WHERE hash = ?")) {
+            stmt.setString(1, hash);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * Removes a reference to a blob, deleting the blob with its last reference,
+     * which in turn releases the base of a delta.
+     */
+    static void release(Connection conn, String hash) throws SQLException {
+        try (PreparedStatement decrement = conn.prepareStatement(
+                     "UPDATE config_blobs SET ref_count = ref_count - 1 WHERE hash = ?");
+             PreparedStatement select = conn.prepareStatement(
+                     "SELECT base_hash FROM config_blobs WHERE hash = ? AND ref_count <= 0");
+             PreparedStatement delete = conn.prepareStatement("DELETE FROM config_blobs WHERE hash = ?")) {
+            String next = hash;
+            while (next != null) {
+                decrement.setString(1, next);
+                decrement.executeUpdate();
+                select.setString(1, next);
+                String base;
+                try (ResultSet rs = select.executeQuery()) {
+                    if (!rs.next()) {
+                        return;
+                    }
+                    base = rs.getString(1);
+                }
+                delete.setString(1, next);
+                delete.executeUpdate();
+                next = base;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of blobs, the total size of their contents, decoded and as stored,
+     * and the number of delta blobs.
+     */
+    static long[] totals(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT COUNT(*), COALESCE(SUM(raw_size), 0), COALESCE(SUM(stored_size), 0), "
+                        + "COALESCE(SUM(CASE WHEN encoding = '" + DELTA + "' THEN 1 ELSE 0 END), 0) FROM config_blobs");
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return new long[] {rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4)};
+        }
+    }
+}
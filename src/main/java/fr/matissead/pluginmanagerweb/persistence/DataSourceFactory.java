@@ -10,114 +10,178 @@ import javax.sql.DataSource;
 import java.io.File;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.sql.Statement;
 
 /**
  * Factory for creating and managing database connections.
- * Supports SQLite by default with HikariCP connection pooling.
- * Can be extended to support MySQL/PostgreSQL in the future.
+ * Supports SQLite by default, and MySQL/PostgreSQL shared by the servers of a network,
+ * with HikariCP connection pooling.
+ * <p>
+ * Every database has two pools: a single writer connection, only used by the {@link WriteQueue},
+ * and a pool of read-only connections. SQLite runs in WAL mode, where the readers query while
+ * the writer commits. On a database server the write queue still batches the writes of this
+ * server into group commits, saving a round trip per write; servers write concurrently.
  */
 public class DataSourceFactory {
     private static final Logger logger = LoggerFactory.getLogger(DataSourceFactory.class);
-    private final HikariDataSource dataSource;
+    // Idle connections are probed this often, before firewalls and server timeouts drop them
+    private static final long KEEPALIVE_MS = 300_000;
+    private final SqlDialect dialect;
+    private final JdbcInstrumentation instrumentation;
+    private final HikariDataSource writePool;
+    private final WriteQueue writeQueue;
+    private final HikariDataSource readPool;
+    private final DataSource dataSource;
     
     public DataSourceFactory(DatabaseConfig config, File dataFolder) {
-        if (config.isSQLite()) {
-            this.dataSource = createSQLiteDataSource(config, dataFolder);
+        this.dialect = SqlDialect.of(config.getType());
+        this.instrumentation = new JdbcInstrumentation(config.isInstrumentationEnabled(),
+                config.getSlowQueryMs(), config.getSlowQueryLogSize());
+        
+        File dbFile = null;
+        if (dialect.isNetworked()) {
+            logger.info("Connecting to {} database {} at {}:{} as server '{}'", dialect.getDisplayName(),
+                    config.getDatabase(), config.getHost(), port(config), config.getServerId());
+            this.writePool = createNetworkDataSource(config, true);
         } else {
-            throw new UnsupportedOperationException("Only SQLite is currently supported. Type: " + config.getType());
+            dbFile = new File(dataFolder, config.getSqlitePath());
+            dbFile.getParentFile().mkdirs();
+            logger.info("Initializing SQLite database at: {}", dbFile.getAbsolutePath());
+            this.writePool = createSQLiteDataSource(config, dbFile, true);
         }
         
-        initializeTables();
+        this.writeQueue = new WriteQueue(instrumentation.wrap(writePool), config.getWriteBatchSize(), config.getWriteQueueCapacity());
+        try {
+            initializeTables();
+        } catch (RuntimeException e) {
+            writeQueue.close();
+            writePool.close();
+            throw e;
+        }
+        this.readPool = dialect.isNetworked()
+                ? createNetworkDataSource(config, false)
+                : createSQLiteDataSource(config, dbFile, false);
+        this.dataSource = instrumentation.wrap(readPool);
     }
     
-    private HikariDataSource createSQLiteDataSource(DatabaseConfig config, File dataFolder) {
-        File dbFile = new File(dataFolder, config.getSqlitePath());
-        dbFile.getParentFile().mkdirs();
-        
+    private HikariDataSource createSQLiteDataSource(DatabaseConfig config, File dbFile, boolean writer) {
         HikariConfig hikariConfig = new HikariConfig();
         hikariConfig.setJdbcUrl("jdbc:sqlite:" + dbFile.getAbsolutePath());
         hikariConfig.setDriverClassName("org.sqlite.JDBC");
-        hikariConfig.setMaximumPoolSize(10);
         hikariConfig.setConnectionTestQuery("SELECT 1");
-        hikariConfig.setPoolName("PluginManagerWeb-SQLite-Pool");
         
-        logger.info("Initializing SQLite database at: {}", dbFile.getAbsolutePath());
+        // Pragmas applied by the driver when each connection opens
+        hikariConfig.addDataSourceProperty("synchronous", config.getSynchronous());
+        hikariConfig.addDataSourceProperty("cache_size", String.valueOf(-config.getCacheSizeKb()));
+        hikariConfig.addDataSourceProperty("mmap_size", String.valueOf(config.getMmapSizeMb() * 1024L * 1024L));
+        hikariConfig.addDataSourceProperty("busy_timeout", String.valueOf(config.getBusyTimeoutMs()));
+        if (writer) {
+            // The journal mode is stored in the database file, the writer sets it once
+            hikariConfig.addDataSourceProperty("journal_mode", config.getJournalMode());
+            // Only applies to new databases, audit retention converts existing ones
+            hikariConfig.addDataSourceProperty("auto_vacuum", "incremental");
+            hikariConfig.setMaximumPoolSize(1);
+            hikariConfig.setPoolName("PluginManagerWeb-SQLite-Writer");
+        } else {
+            hikariConfig.setConnectionInitSql("PRAGMA query_only = 1");
+            hikariConfig.setMaximumPoolSize(config.getReadPoolSize());
+            hikariConfig.setPoolName("PluginManagerWeb-SQLite-Reader");
+        }
         return new HikariDataSource(hikariConfig);
     }
     
     /**
-     * Creates database tables if they don't exist.
-     * Simple migration system - in production, consider using Flyway or Liquibase.
+     * Pools of a database server, sized for a network: each server holds one writer connection
+     * and up to {@code pool_size} readers, only {@code minimum_idle} of which stay open while idle.
+     */
+    private HikariDataSource createNetworkDataSource(DatabaseConfig config, boolean writer) {
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setJdbcUrl(dialect.jdbcUrl(config.getHost(), port(config), config.getDatabase(), config.isSsl()));
+        hikariConfig.setDriverClassName(dialect.getDriverClassName());
+        hikariConfig.setUsername(config.getUsername());
+        hikariConfig.setPassword(config.getPassword());
+        dialect.dataSourceProperties().forEach(hikariConfig::addDataSourceProperty);
+        
+        hikariConfig.setConnectionTimeout(config.getConnectionTimeoutMs());
+        hikariConfig.setIdleTimeout(config.getIdleTimeoutMs());
+        hikariConfig.setMaxLifetime(config.getMaxLifetimeMs());
+        if (config.getMaxLifetimeMs() > KEEPALIVE_MS) {
+            hikariConfig.setKeepaliveTime(KEEPALIVE_MS);
+        }
+        if (writer) {
+            hikariConfig.setMaximumPoolSize(1);
+            hikariConfig.setMinimumIdle(Math.min(1, config.getMinimumIdle()));
+            hikariConfig.setPoolName("PluginManagerWeb-" + dialect.getDisplayName() + "-Writer");
+        } else {
+            // Read-only transactions, the counterpart of SQLite's query_only readers
+            hikariConfig.setReadOnly(true);
+            hikariConfig.setMaximumPoolSize(config.getPoolSize());
+            hikariConfig.setMinimumIdle(config.getMinimumIdle());
+            hikariConfig.setPoolName("PluginManagerWeb-" + dialect.getDisplayName() + "-Reader");
+        }
+        return new HikariDataSource(hikariConfig);
+    }
+    
+    private int port(DatabaseConfig config) {
+        return config.getPort() > 0 ? config.getPort() : dialect.getDefaultPort();
+    }
+    
+    /**
+     * Creates the tables or upgrades them to the latest schema version.
      */
     private void initializeTables() {
-        try (Connection conn = dataSource.getConnection();
-             Statement stmt = conn.createStatement()) {
-            
-            // AuditLog table
-            stmt.execute("""
-                CREATE TABLE IF NOT EXISTS audit_logs (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    timestamp TEXT NOT NULL,
-                    user TEXT,
-                    action TEXT NOT NULL,
-                    target TEXT,
-                    ip_address TEXT,
-                    metadata TEXT,
-                    success INTEGER NOT NULL DEFAULT 1
-                )
-                """);
-            
-            // ConfigBackup table
-            stmt.execute("""
-                CREATE TABLE IF NOT EXISTS config_backups (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    plugin_name TEXT NOT NULL,
-                    timestamp TEXT NOT NULL,
-                    content TEXT NOT NULL,
-                    path TEXT NOT NULL,
-                    created_by TEXT
-                )
-                """);
-            
-            // PluginMetrics table
-            stmt.execute("""
-                CREATE TABLE IF NOT EXISTS plugin_metrics (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    plugin_name TEXT NOT NULL,
-                    metric_key TEXT NOT NULL,
-                    metric_value TEXT NOT NULL,
-                    timestamp TEXT NOT NULL,
-                    UNIQUE(plugin_name, metric_key)
-                )
-                """);
-            
-            // Create indexes for better query performance
-            stmt.execute("CREATE INDEX IF NOT EXISTS idx_audit_logs_timestamp ON audit_logs(timestamp)");
-            stmt.execute("CREATE INDEX IF NOT EXISTS idx_audit_logs_user ON audit_logs(user)");
-            stmt.execute("CREATE INDEX IF NOT EXISTS idx_config_backups_plugin ON config_backups(plugin_name)");
-            stmt.execute("CREATE INDEX IF NOT EXISTS idx_plugin_metrics_plugin ON plugin_metrics(plugin_name)");
-            
-            logger.info("Database tables initialized successfully");
-            
+        try {
+            int version = new SchemaMigrator(writeQueue, dialect).migrate();
+            logger.info("Database tables initialized successfully (schema version {})", version);
         } catch (SQLException e) {
             logger.error("Failed to initialize database tables", e);
             throw new RuntimeException("Database initialization failed", e);
         }
     }
     
+    /**
+     * Returns the SQL dialect of the configured database.
+     */
+    public SqlDialect getDialect() {
+        return dialect;
+    }
+    
+    /**
+     * Returns the state of both pools, statement latencies by SQL shape and recent slow queries.
+     */
+    public JdbcInstrumentation getInstrumentation() {
+        return instrumentation;
+    }
+    
+    /**
+     * Returns the pool serving queries. Its connections are read-only:
+     * writes go through {@link #getWriteQueue()}.
+     */
     public DataSource getDataSource() {
         return dataSource;
     }
     
+    /**
+     * Returns the queue through which every write is committed by the single writer connection.
+     */
+    public WriteQueue getWriteQueue() {
+        return writeQueue;
+    }
+    
     public Connection getConnection() throws SQLException {
         return dataSource.getConnection();
     }
     
+    /**
+     * Commits the queued writes, then closes both pools.
+     */
     public void close() {
-        if (dataSource != null && !dataSource.isClosed()) {
-            dataSource.close();
-            logger.info("Database connection pool closed");
+        writeQueue.close();
+        if (readPool != null && !readPool.isClosed()) {
+            readPool.close();
+        }
+        if (!writePool.isClosed()) {
+            writePool.close();
         }
+        logger.info("Database connection pools closed");
     }
 }
@@ -0,0 +1,305 @@
+package fr.matissead.pluginmanagerweb.persistence;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import fr.matissead.pluginmanagerweb.metrics.LogLinearHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Times the statements run through the connection pools and reports the state of the pools.
+ * <p>
+ * Statements are grouped by SQL shape: literals become {@code ?} and repeated row tuples
+ * (multi-row inserts of any size) collapse to one, so each query of the code maps to a single
+ * latency histogram. Only the execution is timed, not the reading of the rows. Statements
+ * slower than the threshold are logged without their parameters and kept in a short list.
+ */
+public class JdbcInstrumentation {
+    private static final Logger logger = LoggerFactory.getLogger(JdbcInstrumentation.class);
+    // Beyond these, new shapes share one entry and raw SQL strings are normalized on every run
+    private static final int MAX_SHAPES = 128;
+    private static final int MAX_CACHED_SQL = 1024;
+    private static final String OTHER_SHAPE = "(other)";
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern REPEATED_TUPLES = Pattern.compile("(\\([^()]*\\))(?:\\s*,\\s*\\1)+");
+    private static final Pattern IN_LIST = Pattern.compile("(?i)\\bIN \\(\\?(?:, \\?)+\\)");
+
+    private final boolean enabled;
+    private final long slowQueryNanos;
+    private final int slowQueryLogSize;
+    private final List<Pool> pools = new CopyOnWriteArrayList<>();
+    private final Map<String, QueryStats> byShape = new ConcurrentHashMap<>();
+    private final Map<String, QueryStats> bySql = new ConcurrentHashMap<>();
+    private final Deque<SlowQuery> slowQueries = new ArrayDeque<>();
+    private final LongAdder slowQueryCount = new LongAdder();
+
+    private static final class Pool {
+        final String name;
+        final HikariDataSource dataSource;
+        final LogLinearHistogram connectionWait = new LogLinearHistogram();
+        final LongAdder connectionFailures = new LongAdder();
+
+        Pool(HikariDataSource dataSource) {
+            this.name = dataSource.getPoolName();
+            this.dataSource = dataSource;
+        }
+    }
+
+    private static final class QueryStats {
+        final String shape;
+        final LogLinearHistogram latency = new LogLinearHistogram();
+        final LongAdder errors = new LongAdder();
+        final LongAdder slow = new LongAdder();
+
+        QueryStats(String shape) {
+            this.shape = shape;
+        }
+    }
+
+    private record SlowQuery(long timestamp, String pool, String sql, double millis, boolean failed) {
+    }
+
+    /**
+     * @param enabled whether statements and connection waits are timed; pool states are always reported
+     * @param slowQueryMillis statements taking at least this long are logged, 0 disables the log
+     * @param slowQueryLogSize number of recent slow statements kept for {@link #getStats()}
+     */
+    public JdbcInstrumentation(boolean enabled, long slowQueryMillis, int slowQueryLogSize) {
+        this.enabled = enabled;
+        this.slowQueryNanos = slowQueryMillis > 0 ? slowQueryMillis * 1_000_000 : Long.MAX_VALUE;
+        this.slowQueryLogSize = slowQueryLogSize;
+    }
+
+    /**
+     * Registers a pool and returns the data source to use in its place, timing connection
+     * checkouts and statements when instrumentation is enabled.
+     */
+    DataSource wrap(HikariDataSource dataSource) {
+        Pool pool = new Pool(dataSource);
+        pools.add(pool);
+        if (!enabled) {
+            return dataSource;
+        }
+        return proxy(DataSource.class, dataSource, (proxy, method, args) -> {
+            if (!method.getName().equals("getConnection")) {
+                return invoke(dataSource, method, args);
+            }
+            long start = System.nanoTime();
+            Connection conn;
+            try {
+                conn = (Connection) invoke(dataSource, method, args);
+            } catch (Throwable e) {
+                // Timed out waiting for a connection, or the database refused a new one
+                pool.connectionFailures.increment();
+                throw e;
+            }
+            pool.connectionWait.record(System.nanoTime() - start);
+            return proxy(Connection.class, conn, connectionHandler(pool, conn));
+        });
+    }
+
+    private InvocationHandler connectionHandler(Pool pool, Connection conn) {
+        return (proxy, method, args) -> {
+            Object result = invoke(conn, method, args);
+            if (result instanceof Statement statement) {
+                // prepareStatement/prepareCall carry their SQL, plain statements get it at execution
+                String sql = args != null && args.length > 0 && args[0] instanceof String s ? s : null;
+                return proxy(method.getReturnType(), statement, statementHandler(pool, statement, sql));
+            }
+            return result;
+        };
+    }
+
+    private InvocationHandler statementHandler(Pool pool, Statement statement, String preparedSql) {
+        QueryStats prepared = preparedSql != null ? statsFor(preparedSql) : null;
+        return (proxy, method, args) -> {
+            if (!method.getName().startsWith("execute")) {
+                return invoke(statement, method, args);
+            }
+            QueryStats stats = prepared;
+            if (stats == null && args != null && args.length > 0 && args[0] instanceof String sql) {
+                stats = statsFor(sql);
+            }
+            if (stats == null) {
+                // executeBatch of a plain statement, whose SQL was added piecemeal
+                return invoke(statement, method, args);
+            }
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = invoke(statement, method, args);
+                failed = false;
+                return result;
+            } finally {
+                record(pool, stats, System.nanoTime() - start, failed);
+            }
+        };
+    }
+
+    private void record(Pool pool, QueryStats stats, long nanos, boolean failed) {
+        stats.latency.record(nanos);
+        if (failed) {
+            stats.errors.increment();
+        }
+        if (nanos < slowQueryNanos) {
+            return;
+        }
+        stats.slow.increment();
+        slowQueryCount.increment();
+        double millis = nanos / 1_000_000.0;
+        logger.warn("Slow query on {} ({} ms{}): {}", pool.name, String.format("%.1f", millis),
+                failed ? ", failed" : "", stats.shape);
+        if (slowQueryLogSize == 0) {
+            return;
+        }
+        synchronized (slowQueries) {
+            if (slowQueries.size() >= slowQueryLogSize) {
+                slowQueries.removeLast();
+            }
+            slowQueries.addFirst(new SlowQuery(System.currentTimeMillis(), pool.name, stats.shape, millis, failed));
+        }
+    }
+
+    private QueryStats statsFor(String sql) {
+        QueryStats stats = bySql.get(sql);
+        if (stats != null) {
+            return stats;
+        }
+        String shape = shape(sql);
+        stats = byShape.get(shape);
+        if (stats == null) {
+            stats = byShape.size() < MAX_SHAPES
+                    ? byShape.computeIfAbsent(shape, QueryStats::new)
+                    : byShape.computeIfAbsent(OTHER_SHAPE, QueryStats::new);
+        }
+        if (bySql.size() < MAX_CACHED_SQL) {
+            bySql.putIfAbsent(sql, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the shape of a statement: literals replaced by {@code ?}, whitespace collapsed,
+     * repeated row tuples and {@code IN} lists reduced to one element.
+     */
+    static String shape(String sql) {
+        String shape = STRING_LITERAL.matcher(sql).replaceAll("?");
+        shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+        shape = WHITESPACE.matcher(shape).replaceAll(" ").trim();
+        shape = REPEATED_TUPLES.matcher(shape).replaceAll("$1, ...");
+        return IN_LIST.matcher(shape).replaceAll("IN (?, ...)");
+    }
+
+    /**
+     * Returns the state of each pool, the latency of each statement shape (slowest total first)
+     * and the recent slow statements, newest first. Durations are in milliseconds.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> poolStats = new LinkedHashMap<>();
+        for (Pool pool : pools) {
+            poolStats.put(pool.name, poolStats(pool));
+        }
+
+        List<Map<String, Object>> statements = new ArrayList<>();
+        byShape.values().stream()
+                .map(stats -> Map.entry(stats, stats.latency.snapshot()))
+                .sorted(Comparator.comparingLong((Map.Entry<QueryStats, LogLinearHistogram.Snapshot> e) -> e.getValue().sum())
+                        .reversed())
+                .forEach(e -> {
+                    Map<String, Object> statement = new LinkedHashMap<>();
+                    statement.put("sql", e.getKey().shape);
+                    statement.put("errors", e.getKey().errors.sum());
+                    statement.put("slow", e.getKey().slow.sum());
+                    statement.put("totalMillis", e.getValue().sum() / 1_000_000.0);
+                    statement.putAll(summarize(e.getValue()));
+                    statements.add(statement);
+                });
+
+        List<Map<String, Object>> recent = new ArrayList<>();
+        synchronized (slowQueries) {
+            for (SlowQuery query : slowQueries) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("timestamp", query.timestamp());
+                entry.put("pool", query.pool());
+                entry.put("sql", query.sql());
+                entry.put("millis", query.millis());
+                entry.put("failed", query.failed());
+                recent.add(entry);
+            }
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("instrumented", enabled);
+        stats.put("pools", poolStats);
+        stats.put("statements", statements);
+        stats.put("slowQueryThresholdMillis", slowQueryNanos == Long.MAX_VALUE ? 0 : slowQueryNanos / 1_000_000);
+        stats.put("slowQueryCount", slowQueryCount.sum());
+        stats.put("slowQueries", recent);
+        return stats;
+    }
+
+    private Map<String, Object> poolStats(Pool pool) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        HikariPoolMXBean bean = pool.dataSource.isClosed() ? null : pool.dataSource.getHikariPoolMXBean();
+        stats.put("active", bean != null ? bean.getActiveConnections() : 0);
+        stats.put("idle", bean != null ? bean.getIdleConnections() : 0);
+        stats.put("total", bean != null ? bean.getTotalConnections() : 0);
+        stats.put("pending", bean != null ? bean.getThreadsAwaitingConnection() : 0);
+        stats.put("maximumPoolSize", pool.dataSource.getMaximumPoolSize());
+        if (enabled) {
+            stats.put("connectionWait", summarize(pool.connectionWait.snapshot()));
+            stats.put("connectionFailures", pool.connectionFailures.sum());
+        }
+        return stats;
+    }
+
+    /**
+     * Returns count, mean, p50, p90, p99 and max of a nanosecond histogram, in milliseconds.
+     */
+    private static Map<String, Object> summarize(LogLinearHistogram.Snapshot snapshot) {
+        double scale = 1_000_000.0;
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", snapshot.count());
+        summary.put("mean", snapshot.mean() / scale);
+        summary.put("p50", snapshot.percentile(0.50) / scale);
+        summary.put("p90", snapshot.percentile(0.90) / scale);
+        summary.put("p99", snapshot.percentile(0.99) / scale);
+        summary.put("max", snapshot.max() / scale);
+        return summary;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Object target, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(JdbcInstrumentation.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package fr.matissead.pluginmanagerweb.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Line-level delta between two versions of a text file.
+ * <p>
+ * A delta is a sequence of operations rebuilding the target from the base: copy a run of base
+ * lines, or insert new lines. Lines keep their terminator, so the target is rebuilt byte for
+ * byte. Each target line is looked up in a hash index of the base lines and the longest run
+ * among the occurrences closest to the previous copy is taken, which finds edited, inserted,
+ * deleted and moved blocks in about linear time for typical config edits.
+ */
+final class LineDelta {
+    private static final int FORMAT_VERSION = 1;
+    private static final int OP_COPY = 0;
+    private static final int OP_INSERT = 1;
+    // Occurrences of a line examined on each side of the expected position
+    private static final int CANDIDATES_PER_SIDE = 4;
+
+    private LineDelta() {
+    }
+
+    /**
+     * Returns the operations rebuilding {@code target} from {@code base}, uncompressed.
+     */
+    static byte[] diff(String base, String target) {
+        List<String> baseLines = lines(base);
+        List<String> targetLines = lines(target);
+        Map<String, List<Integer>> index = new HashMap<>(baseLines.size() * 2);
+        for (int i = 0; i < baseLines.size(); i++) {
+            index.computeIfAbsent(baseLines.get(i), line -> new ArrayList<>(1)).add(i);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        out.write(FORMAT_VERSION);
+        List<String> inserted = new ArrayList<>();
+        int expected = 0;
+        int i = 0;
+        while (i < targetLines.size()) {
+            int bestStart = -1;
+            int bestLength = 0;
+            if (expected < baseLines.size() && baseLines.get(expected).equals(targetLines.get(i))) {
+                bestStart = expected;
+                bestLength = runLength(baseLines, expected, targetLines, i);
+            }
+            List<Integer> positions = index.get(targetLines.get(i));
+            if (positions != null && bestStart < 0) {
+                int insertionPoint = Collections.binarySearch(positions, expected);
+                int from = insertionPoint >= 0 ? insertionPoint : -insertionPoint - 1;
+                int low = Math.max(0, from - CANDIDATES_PER_SIDE);
+                int high = Math.min(positions.size(), from + CANDIDATES_PER_SIDE);
+                for (int c = low; c < high; c++) {
+                    int length = runLength(baseLines, positions.get(c), targetLines, i);
+                    if (length > bestLength) {
+                        bestStart = positions.get(c);
+                        bestLength = length;
+                    }
+                }
+            }
+
+            if (bestLength == 0) {
+                inserted.add(targetLines.get(i));
+                i++;
+                continue;
+            }
+            writeInsert(out, inserted);
+            out.write(OP_COPY);
+            writeVarInt(out, bestStart);
+            writeVarInt(out, bestLength);
+            i += bestLength;
+            expected = bestStart + bestLength;
+        }
+        writeInsert(out, inserted);
+        return out.toByteArray();
+    }
+
+    /**
+     * Rebuilds the target of a delta from its base.
+     * @param size length of the target in UTF-8 bytes, used to size the buffer
+     */
+    static String apply(String base, byte[] delta, int size) throws IOException {
+        List<String> baseLines = lines(base);
+        StringBuilder target = new StringBuilder(size);
+        int[] position = {0};
+        if (delta.length == 0 || delta[position[0]++] != FORMAT_VERSION) {
+            throw new IOException("Unsupported config delta format");
+        }
+        try {
+            while (position[0] < delta.length) {
+                int op = delta[position[0]++];
+                if (op == OP_COPY) {
+                    int start = readVarInt(delta, position);
+                    int length = readVarInt(delta, position);
+                    for (int line = start; line < start + length; line++) {
+                        target.append(baseLines.get(line));
+                    }
+                } else if (op == OP_INSERT) {
+                    int count = readVarInt(delta, position);
+                    for (int line = 0; line < count; line++) {
+                        int length = readVarInt(delta, position);
+                        target.append(new String(delta, position[0], length, StandardCharsets.UTF_8));
+                        position[0] += length;
+                    }
+                } else {
+                    throw new IOException("Unknown config delta operation " + op);
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Corrupted config delta", e);
+        }
+        return target.toString();
+    }
+
+    /**
+     * Splits a text after each line feed, keeping the terminators.
+     */
+    static List<String> lines(String text) {
+        List<String> lines = new ArrayList<>(text.length() / 32 + 1);
+        int start = 0;
+        int end;
+        while ((end = text.indexOf('\n', start)) >= 0) {
+            lines.add(text.substring(start, end + 1));
+            start = end + 1;
+        }
+        if (start < text.length()) {
+            lines.add(text.substring(start));
+        }
+        return lines;
+    }
+
+    private static int runLength(List<String> base, int baseStart, List<String> target, int targetStart) {
+        int length = 0;
+        while (baseStart + length < base.size() && targetStart + length < target.size()
+                && base.get(baseStart + length).equals(target.get(targetStart + length))) {
+            length++;
+        }
+        return length;
+    }
+
+    private static void writeInsert(ByteArrayOutputStream out, List<String> lines) {
+        if (lines.isEmpty()) {
+            return;
+        }
+        out.write(OP_INSERT);
+        writeVarInt(out, lines.size());
+        for (String line : lines) {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(out, bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+        lines.clear();
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(byte[] bytes, int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[position[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
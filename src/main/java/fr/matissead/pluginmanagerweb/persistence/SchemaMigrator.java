@@ -0,0 +1,618 @@
+package fr.matissead.pluginmanagerweb.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Versioned schema migrations, tracked in the schema_version table.
+ * <p>
+ * Each migration runs once, in its own transaction together with the row recording it,
+ * so an interrupted upgrade resumes from the last applied version. Databases created
+ * before migrations existed start at version 0: the first migrations only create what
+ * is missing, and later ones upgrade those databases in place.
+ * <p>
+ * Those migrations upgrade SQLite files of earlier releases. A new MySQL or PostgreSQL database
+ * is created directly at {@link #BASELINE_VERSION} with the types of its {@link SqlDialect};
+ * migrations after the baseline must run on every dialect. Servers sharing a database migrate
+ * it one at a time, under a lock held by the database. MySQL commits DDL statements implicitly,
+ * so an interrupted migration is not rolled back there.
+ */
+public class SchemaMigrator {
+    private static final Logger logger = LoggerFactory.getLogger(SchemaMigrator.class);
+
+    /**
+     * Changes applied to the schema by one migration. Migrations up to the baseline only run on SQLite.
+     */
+    @FunctionalInterface
+    interface Step {
+        void apply(Connection conn, SqlDialect dialect) throws SQLException;
+    }
+
+    record Migration(int version, String description, Step step) {
+    }
+
+    // Append only: released migrations must never be edited or reordered
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Create audit, backup and metric tables", (conn, dialect) -> createTables(conn)),
+            new Migration(2, "Store the type of metric series", (conn, dialect) -> addMetricType(conn)),
+            new Migration(3, "Store timestamps as epoch milliseconds with composite indexes",
+                    (conn, dialect) -> epochMillisTimestamps(conn)),
+            new Migration(4, "Index audit log filters", (conn, dialect) -> auditFilterIndexes(conn)),
+            new Migration(5, "Track audit archive segments", (conn, dialect) -> auditArchiveSegments(conn)),
+            new Migration(6, "Store config backup contents as deduplicated compressed blobs",
+                    (conn, dialect) -> configBlobs(conn)),
+            new Migration(7, "Store config blobs as delta chains", (conn, dialect) -> configBlobDeltas(conn)),
+            new Migration(8, "Index config backups by file", (conn, dialect) -> configBackupPathIndex(conn)),
+            new Migration(9, "Scope metrics by server", (conn, dialect) -> metricsServerId(conn)),
+            new Migration(10, "Scope audit archive segments by server", SchemaMigrator::auditArchiveServerId),
+            new Migration(11, "Store audit archives in shared databases", SchemaMigrator::auditArchiveChunks)
+    );
+
+    /**
+     * Version at which MySQL and PostgreSQL databases are created.
+     */
+    static final int BASELINE_VERSION = 9;
+
+    private final WriteQueue writeQueue;
+    private final SqlDialect dialect;
+
+    public SchemaMigrator(WriteQueue writeQueue, SqlDialect dialect) {
+        this.writeQueue = writeQueue;
+        this.dialect = dialect;
+    }
+
+    /**
+     * Returns the schema version this build expects.
+     */
+    public static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version();
+    }
+
+    /**
+     * Applies every migration newer than the database.
+     * @return the schema version of the database after migrating
+     */
+    public int migrate() throws SQLException {
+        // Runs on the writer connection, which holds the schema lock, managing one transaction per migration
+        return writeQueue.executeOutsideTransaction(conn -> {
+            try (Statement lock = conn.createStatement()) {
+                dialect.lockSchema(lock);
+                try {
+                    return migrate(conn);
+                } finally {
+                    dialect.unlockSchema(lock);
+                }
+            }
+        });
+    }
+
+    private int migrate(Connection conn) throws SQLException {
+        int current = currentVersion(conn);
+        if (current > latestVersion()) {
+            throw new SQLException("Database schema version " + current
+                    + " is newer than the version supported by this build (" + latestVersion() + ")");
+        }
+
+        List<Migration> migrations = MIGRATIONS;
+        if (dialect.isNetworked() && current == 0) {
+            List<Migration> baseline = new ArrayList<>();
+            baseline.add(new Migration(BASELINE_VERSION, "Create the " + dialect.getDisplayName() + " schema",
+                    SchemaMigrator::createSchema));
+            baseline.addAll(MIGRATIONS.subList(BASELINE_VERSION, MIGRATIONS.size()));
+            migrations = baseline;
+        }
+
+        for (Migration migration : migrations) {
+            if (migration.version() <= current) {
+                continue;
+            }
+            long start = System.nanoTime();
+            conn.setAutoCommit(false);
+            try {
+                migration.step().apply(conn, dialect);
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "INSERT INTO schema_version (version, description, applied_at) VALUES (?, ?, ?)")) {
+                    stmt.setInt(1, migration.version());
+                    stmt.setString(2, migration.description());
+                    stmt.setLong(3, System.currentTimeMillis());
+                    stmt.executeUpdate();
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+            current = migration.version();
+            logger.info("Applied schema migration {} ({}) in {} ms",
+                    migration.version(), migration.description(), (System.nanoTime() - start) / 1_000_000);
+        }
+        return current;
+    }
+
+    private int currentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(dialect.ddl("""
+                CREATE TABLE IF NOT EXISTS schema_version (
+                    version INTEGER PRIMARY KEY,
+                    description {TEXT} NOT NULL,
+                    applied_at {BIGINT} NOT NULL
+                ){TABLE_OPTIONS}
+                """));
+            try (ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Version 1: the original schema, with ISO-8601 text timestamps.
+     */
+    private static void createTables(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS audit_logs (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    timestamp TEXT NOT NULL,
+                    user TEXT,
+                    action TEXT NOT NULL,
+                    target TEXT,
+                    ip_address TEXT,
+                    metadata TEXT,
+                    success INTEGER NOT NULL DEFAULT 1
+                )
+                """);
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS config_backups (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    plugin_name TEXT NOT NULL,
+                    timestamp TEXT NOT NULL,
+                    content TEXT NOT NULL,
+                    path TEXT NOT NULL,
+                    created_by TEXT
+                )
+                """);
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS plugin_metrics (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    plugin_name TEXT NOT NULL,
+                    metric_key TEXT NOT NULL,
+                    metric_value TEXT NOT NULL,
+                    timestamp TEXT NOT NULL,
+                    UNIQUE(plugin_name, metric_key)
+                )
+                """);
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_audit_logs_timestamp ON audit_logs(timestamp)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_audit_logs_user ON audit_logs(user)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_config_backups_plugin ON config_backups(plugin_name)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_plugin_metrics_plugin ON plugin_metrics(plugin_name)");
+        }
+    }
+
+    /**
+     * Version 2: metric series type, already present on databases that added it before migrations existed.
+     */
+    private static void addMetricType(Connection conn) throws SQLException {
+        if (!hasColumn(conn, "plugin_metrics", "metric_type")) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE plugin_metrics ADD COLUMN metric_type TEXT");
+            }
+        }
+    }
+
+    /**
+     * Version 3: rebuilds the tables with INTEGER epoch-millisecond timestamps, so that sorting
+     * compares numbers and rows are mapped without parsing, and indexes the (filter, timestamp)
+     * pairs the DAOs query.
+     */
+    private static void epochMillisTimestamps(Connection conn) throws SQLException {
+        rebuildTable(conn, "audit_logs", """
+                CREATE TABLE audit_logs_new (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    timestamp INTEGER NOT NULL,
+                    user TEXT,
+                    action TEXT NOT NULL,
+                    target TEXT,
+                    ip_address TEXT,
+                    metadata TEXT,
+                    success INTEGER NOT NULL DEFAULT 1
+                )
+                """,
+                "id, timestamp, user, action, target, ip_address, metadata, success",
+                "id, " + epochMillis("timestamp") + ", user, action, target, ip_address, metadata, success");
+        rebuildTable(conn, "config_backups", """
+                CREATE TABLE config_backups_new (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    plugin_name TEXT NOT NULL,
+                    timestamp INTEGER NOT NULL,
+                    content TEXT NOT NULL,
+                    path TEXT NOT NULL,
+                    created_by TEXT
+                )
+                """,
+                "id, plugin_name, timestamp, content, path, created_by",
+                "id, plugin_name, " + epochMillis("timestamp") + ", content, path, created_by");
+        rebuildTable(conn, "plugin_metrics", """
+                CREATE TABLE plugin_metrics_new (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    plugin_name TEXT NOT NULL,
+                    metric_key TEXT NOT NULL,
+                    metric_value TEXT NOT NULL,
+                    metric_type TEXT,
+                    timestamp INTEGER NOT NULL,
+                    UNIQUE(plugin_name, metric_key)
+                )
+                """,
+                "id, plugin_name, metric_key, metric_value, metric_type, timestamp",
+                "id, plugin_name, metric_key, metric_value, metric_type, " + epochMillis("timestamp"));
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE INDEX idx_audit_logs_timestamp ON audit_logs(timestamp)");
+            stmt.execute("CREATE INDEX idx_audit_logs_user_timestamp ON audit_logs(user, timestamp)");
+            stmt.execute("CREATE INDEX idx_config_backups_plugin_timestamp ON config_backups(plugin_name, timestamp)");
+            // plugin_metrics lookups by plugin use the UNIQUE(plugin_name, metric_key) index
+        }
+    }
+
+    /**
+     * Version 4: one (filter, timestamp) index per equality or prefix filter of GET /api/audit,
+     * so that each filtered page is an index range scan in (timestamp, id) order.
+     */
+    private static void auditFilterIndexes(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_audit_logs_action_timestamp ON audit_logs(action, timestamp)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_audit_logs_target_timestamp ON audit_logs(target, timestamp)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_audit_logs_success_timestamp ON audit_logs(success, timestamp)");
+        }
+    }
+
+    /**
+     * Version 5: archive segments holding audit entries moved out of audit_logs. size_bytes is the
+     * committed length of the segment file, see {@link AuditArchive}.
+     */
+    private static void auditArchiveSegments(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS audit_archive_segments (
+                    name TEXT PRIMARY KEY,
+                    start_millis INTEGER NOT NULL,
+                    end_millis INTEGER NOT NULL,
+                    row_count INTEGER NOT NULL,
+                    size_bytes INTEGER NOT NULL,
+                    updated_at INTEGER NOT NULL
+                )
+                """);
+        }
+    }
+
+    /**
+     * Version 6: moves backup contents to config_blobs, keyed by SHA-256, and rebuilds
+     * config_backups with a reference to the blob instead of the content.
+     */
+    private static void configBlobs(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS config_blobs (
+                    hash TEXT PRIMARY KEY,
+                    encoding TEXT NOT NULL,
+                    content BLOB NOT NULL,
+                    raw_size INTEGER NOT NULL,
+                    stored_size INTEGER NOT NULL,
+                    ref_count INTEGER NOT NULL
+                )
+                """);
+            stmt.execute("ALTER TABLE config_backups ADD COLUMN content_hash TEXT");
+            stmt.execute("ALTER TABLE config_backups ADD COLUMN size_bytes INTEGER");
+        }
+
+        // One content in memory at a time
+        List<Long> ids = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id FROM config_backups")) {
+            while (rs.next()) {
+                ids.add(rs.getLong(1));
+            }
+        }
+        try (PreparedStatement select = conn.prepareStatement("SELECT content FROM config_backups WHERE id = ?");
+             PreparedStatement reference = conn.prepareStatement(
+                     "UPDATE config_blobs SET ref_count = ref_count + 1 WHERE hash = ?");
+             PreparedStatement insert = conn.prepareStatement(
+                     "INSERT INTO config_blobs (hash, encoding, content, raw_size, stored_size, ref_count) "
+                             + "VALUES (?, ?, ?, ?, ?, 1)");
+             PreparedStatement update = conn.prepareStatement(
+                     "UPDATE config_backups SET content_hash = ?, size_bytes = ? WHERE id = ?")) {
+            for (long id : ids) {
+                select.setLong(1, id);
+                byte[] content;
+                try (ResultSet rs = select.executeQuery()) {
+                    rs.next();
+                    content = ConfigBlobStore.bytes(rs.getString(1));
+                }
+                String hash = ConfigBlobStore.hash(content);
+                reference.setString(1, hash);
+                if (reference.executeUpdate() == 0) {
+                    ConfigBlobStore.Encoded encoded = ConfigBlobStore.encode(content);
+                    insert.setString(1, hash);
+                    insert.setString(2, encoded.encoding());
+                    insert.setBytes(3, encoded.bytes());
+                    insert.setInt(4, content.length);
+                    insert.setInt(5, encoded.bytes().length);
+                    insert.executeUpdate();
+                }
+                update.setString(1, hash);
+                update.setInt(2, content.length);
+                update.setLong(3, id);
+                update.executeUpdate();
+            }
+        }
+
+        rebuildTable(conn, "config_backups", """
+                CREATE TABLE config_backups_new (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    plugin_name TEXT NOT NULL,
+                    timestamp INTEGER NOT NULL,
+                    path TEXT NOT NULL,
+                    created_by TEXT,
+                    content_hash TEXT NOT NULL,
+                    size_bytes INTEGER NOT NULL
+                )
+                """,
+                "id, plugin_name, timestamp, path, created_by, content_hash, size_bytes",
+                "id, plugin_name, timestamp, path, created_by, content_hash, size_bytes");
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE INDEX idx_config_backups_plugin_timestamp ON config_backups(plugin_name, timestamp)");
+        }
+    }
+
+    /**
+     * Version 7: a blob can be a delta against a base blob; chain_depth counts the deltas
+     * between it and its keyframe (0 for a keyframe).
+     */
+    private static void configBlobDeltas(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE config_blobs ADD COLUMN base_hash TEXT");
+            stmt.execute("ALTER TABLE config_blobs ADD COLUMN chain_depth INTEGER NOT NULL DEFAULT 0");
+        }
+    }
+
+    /**
+     * Version 8: backup listings filtered by file and the lookup of the previous version of a file
+     * scan (plugin_name, path, timestamp) instead of every backup of the plugin.
+     */
+    private static void configBackupPathIndex(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_config_backups_plugin_path_timestamp "
+                    + "ON config_backups(plugin_name, path, timestamp)");
+        }
+    }
+
+    /**
+     * Version 9: a shared database holds the metrics of several servers, keyed by server_id.
+     * A SQLite file has a single server, whose rows keep an empty id.
+     */
+    private static void metricsServerId(Connection conn) throws SQLException {
+        rebuildTable(conn, "plugin_metrics", """
+                CREATE TABLE plugin_metrics_new (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    server_id TEXT NOT NULL DEFAULT '',
+                    plugin_name TEXT NOT NULL,
+                    metric_key TEXT NOT NULL,
+                    metric_value TEXT NOT NULL,
+                    metric_type TEXT,
+                    timestamp INTEGER NOT NULL,
+                    UNIQUE(server_id, plugin_name, metric_key)
+                )
+                """,
+                "id, plugin_name, metric_key, metric_value, metric_type, timestamp",
+                "id, plugin_name, metric_key, metric_value, metric_type, timestamp");
+    }
+
+    /**
+     * Version 10: archive segment files are local to the server that wrote them, so a shared database
+     * indexes them per server. Segments indexed before keep an empty id and are no longer searched.
+     */
+    private static void auditArchiveServerId(Connection conn, SqlDialect dialect) throws SQLException {
+        switch (dialect) {
+            case SQLITE -> rebuildTable(conn, "audit_archive_segments", """
+                    CREATE TABLE audit_archive_segments_new (
+                        server_id TEXT NOT NULL DEFAULT '',
+                        name TEXT NOT NULL,
+                        start_millis INTEGER NOT NULL,
+                        end_millis INTEGER NOT NULL,
+                        row_count INTEGER NOT NULL,
+                        size_bytes INTEGER NOT NULL,
+                        updated_at INTEGER NOT NULL,
+                        PRIMARY KEY (server_id, name)
+                    )
+                    """,
+                    "name, start_millis, end_millis, row_count, size_bytes, updated_at",
+                    "name, start_millis, end_millis, row_count, size_bytes, updated_at");
+            case MYSQL -> {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute(dialect.ddl("ALTER TABLE audit_archive_segments "
+                            + "ADD COLUMN server_id {KEY} NOT NULL DEFAULT '' FIRST, "
+                            + "DROP PRIMARY KEY, ADD PRIMARY KEY (server_id, name)"));
+                }
+            }
+            case POSTGRESQL -> {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute(dialect.ddl("ALTER TABLE audit_archive_segments "
+                            + "ADD COLUMN server_id {KEY} NOT NULL DEFAULT ''"));
+                    stmt.execute("ALTER TABLE audit_archive_segments DROP CONSTRAINT audit_archive_segments_pkey, "
+                            + "ADD PRIMARY KEY (server_id, name)");
+                }
+            }
+        }
+    }
+
+    /**
+     * Version 11: a shared database keeps the archived audit entries, one gzip member per bucket and
+     * archiving pass, so that every server searches the same archive. SQLite keeps archiving to files.
+     */
+    private static void auditArchiveChunks(Connection conn, SqlDialect dialect) throws SQLException {
+        if (!dialect.isNetworked()) {
+            return;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(dialect.ddl("""
+                CREATE TABLE audit_archive_chunks (
+                    id {ID},
+                    start_millis {BIGINT} NOT NULL,
+                    end_millis {BIGINT} NOT NULL,
+                    row_count {BIGINT} NOT NULL,
+                    size_bytes {BIGINT} NOT NULL,
+                    data {BLOB} NOT NULL,
+                    created_at {BIGINT} NOT NULL
+                ){TABLE_OPTIONS}
+                """));
+            stmt.execute("CREATE INDEX idx_audit_archive_chunks_start ON audit_archive_chunks(start_millis)");
+        }
+    }
+
+    /**
+     * Baseline of MySQL and PostgreSQL databases: the schema of {@link #BASELINE_VERSION}, with the
+     * column types of the dialect. Timestamps and sizes are 64-bit, indexed text has a bounded length
+     * and a binary collation on MySQL, and {@code user} is quoted as PostgreSQL reserves it.
+     */
+    private static void createSchema(Connection conn, SqlDialect dialect) throws SQLException {
+        String user = dialect.quote("user");
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(dialect.ddl("""
+                CREATE TABLE audit_logs (
+                    id {ID},
+                    timestamp {BIGINT} NOT NULL,
+                    %s {KEY},
+                    action {KEY} NOT NULL,
+                    target {KEY},
+                    ip_address {KEY},
+                    metadata {TEXT},
+                    success INTEGER NOT NULL DEFAULT 1
+                ){TABLE_OPTIONS}
+                """.formatted(user)));
+            stmt.execute(dialect.ddl("""
+                CREATE TABLE audit_archive_segments (
+                    name {KEY} PRIMARY KEY,
+                    start_millis {BIGINT} NOT NULL,
+                    end_millis {BIGINT} NOT NULL,
+                    row_count {BIGINT} NOT NULL,
+                    size_bytes {BIGINT} NOT NULL,
+                    updated_at {BIGINT} NOT NULL
+                ){TABLE_OPTIONS}
+                """));
+            stmt.execute(dialect.ddl("""
+                CREATE TABLE config_blobs (
+                    hash {KEY} PRIMARY KEY,
+                    encoding {KEY} NOT NULL,
+                    content {BLOB} NOT NULL,
+                    raw_size INTEGER NOT NULL,
+                    stored_size INTEGER NOT NULL,
+                    ref_count INTEGER NOT NULL,
+                    base_hash {KEY},
+                    chain_depth INTEGER NOT NULL DEFAULT 0
+                ){TABLE_OPTIONS}
+                """));
+            stmt.execute(dialect.ddl("""
+                CREATE TABLE config_backups (
+                    id {ID},
+                    plugin_name {KEY} NOT NULL,
+                    timestamp {BIGINT} NOT NULL,
+                    path {KEY} NOT NULL,
+                    created_by {KEY},
+                    content_hash {KEY} NOT NULL,
+                    size_bytes {BIGINT} NOT NULL
+                ){TABLE_OPTIONS}
+                """));
+            stmt.execute(dialect.ddl("""
+                CREATE TABLE plugin_metrics (
+                    id {ID},
+                    server_id {KEY} NOT NULL DEFAULT '',
+                    plugin_name {KEY} NOT NULL,
+                    metric_key {KEY} NOT NULL,
+                    metric_value {TEXT} NOT NULL,
+                    metric_type {KEY},
+                    timestamp {BIGINT} NOT NULL,
+                    UNIQUE(server_id, plugin_name, metric_key)
+                ){TABLE_OPTIONS}
+                """));
+
+            stmt.execute("CREATE INDEX idx_audit_logs_timestamp ON audit_logs(timestamp)");
+            stmt.execute("CREATE INDEX idx_audit_logs_user_timestamp ON audit_logs(" + user + ", timestamp)");
+            stmt.execute("CREATE INDEX idx_audit_logs_action_timestamp ON audit_logs(action, timestamp)");
+            stmt.execute("CREATE INDEX idx_audit_logs_target_timestamp ON audit_logs(target, timestamp)");
+            stmt.execute("CREATE INDEX idx_audit_logs_success_timestamp ON audit_logs(success, timestamp)");
+            stmt.execute("CREATE INDEX idx_config_backups_plugin_timestamp ON config_backups(plugin_name, timestamp)");
+            stmt.execute("CREATE INDEX idx_config_backups_plugin_path_timestamp "
+                    + "ON config_backups(plugin_name, path, timestamp)");
+        }
+    }
+
+    /**
+     * Replaces a table by a new definition, as SQLite cannot change column types: the rows are
+     * copied into {@code <table>_new}, which then takes the name of the dropped table. Indexes
+     * of the old table are dropped with it; the AUTOINCREMENT counter is carried over so that
+     * ids of deleted rows are never reused.
+     */
+    private static void rebuildTable(Connection conn, String table, String createSql,
+                                     String columns, String select) throws SQLException {
+        long sequence = 0;
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT seq FROM sqlite_sequence WHERE name = ?")) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    sequence = rs.getLong(1);
+                }
+            }
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(createSql);
+            stmt.execute("INSERT INTO " + table + "_new (" + columns + ") SELECT " + select + " FROM " + table);
+            stmt.execute("DROP TABLE " + table);
+            stmt.execute("ALTER TABLE " + table + "_new RENAME TO " + table);
+        }
+
+        if (sequence > 0) {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "UPDATE sqlite_sequence SET seq = MAX(seq, ?) WHERE name = ?")) {
+                stmt.setLong(1, sequence);
+                stmt.setString(2, table);
+                if (stmt.executeUpdate() == 0) {
+                    try (PreparedStatement insert = conn.prepareStatement(
+                            "INSERT INTO sqlite_sequence (name, seq) VALUES (?, ?)")) {
+                        insert.setString(1, table);
+                        insert.setLong(2, sequence);
+                        insert.executeUpdate();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * SQL expression converting an ISO-8601 text column to epoch milliseconds (0 if unparseable).
+     */
+    private static String epochMillis(String column) {
+        return "COALESCE(CAST(ROUND((julianday(" + column + ") - 2440587.5) * 86400000) AS INTEGER), 0)";
+    }
+
+    private static boolean hasColumn(Connection conn, String table, String column) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,265 @@
+package fr.matissead.pluginmanagerweb.persistence;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * SQL differences between the supported databases.
+ * <p>
+ * Queries are written in the SQL the three databases share; what differs is generated here:
+ * column types of the schema, upserts, identifier quoting and the driver settings. Text columns
+ * that are indexed or compared with ranges use a binary collation on MySQL and PostgreSQL, so
+ * that ordering and prefix ranges behave as in SQLite.
+ */
+public enum SqlDialect {
+    SQLITE("SQLite", "org.sqlite.JDBC", 0, '"', Map.of(
+            "ID", "INTEGER PRIMARY KEY AUTOINCREMENT",
+            "BIGINT", "INTEGER",
+            "KEY", "TEXT",
+            "TEXT", "TEXT",
+            "BLOB", "BLOB",
+            "TABLE_OPTIONS", "")),
+    MYSQL("MySQL", "com.mysql.cj.jdbc.Driver", 3306, '`', Map.of(
+            "ID", "BIGINT PRIMARY KEY AUTO_INCREMENT",
+            "BIGINT", "BIGINT",
+            // Indexed columns need a bounded length: 255 utf8mb4 characters fit in an InnoDB index
+            "KEY", "VARCHAR(255)",
+            "TEXT", "MEDIUMTEXT",
+            "BLOB", "LONGBLOB",
+            "TABLE_OPTIONS", " ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_bin")),
+    POSTGRESQL("PostgreSQL", "org.postgresql.Driver", 5432, '"', Map.of(
+            "ID", "BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY",
+            "BIGINT", "BIGINT",
+            "KEY", "TEXT COLLATE \"C\"",
+            "TEXT", "TEXT",
+            "BLOB", "BYTEA",
+            "TABLE_OPTIONS", ""));
+
+    // Length of the {KEY} columns of MySQL
+    private static final int MYSQL_KEY_LENGTH = 255;
+    // Arbitrary key of the advisory lock held while migrating, shared by every server
+    private static final long SCHEMA_LOCK_KEY = 0x504D_5753_4348L;
+    private static final String SCHEMA_LOCK_NAME = "pluginmanagerweb_schema";
+    private static final int SCHEMA_LOCK_TIMEOUT_SECONDS = 120;
+    // Held by the server running an audit archiving pass
+    private static final long ARCHIVE_LOCK_KEY = 0x504D_5741_5243L;
+    private static final String ARCHIVE_LOCK_NAME = "pluginmanagerweb_audit_archive";
+
+    private final String displayName;
+    private final String driverClassName;
+    private final int defaultPort;
+    private final char quote;
+    private final Map<String, String> types;
+
+    SqlDialect(String displayName, String driverClassName, int defaultPort, char quote, Map<String, String> types) {
+        this.displayName = displayName;
+        this.driverClassName = driverClassName;
+        this.defaultPort = defaultPort;
+        this.quote = quote;
+        this.types = types;
+    }
+
+    /**
+     * Returns the dialect of a configured database type.
+     * @throws IllegalArgumentException if the type is not supported
+     */
+    public static SqlDialect of(String type) {
+        return switch (type.toLowerCase(Locale.ROOT)) {
+            case "sqlite" -> SQLITE;
+            case "mysql", "mariadb" -> MYSQL;
+            case "postgresql", "postgres" -> POSTGRESQL;
+            default -> throw new IllegalArgumentException("Unsupported database type: " + type
+                    + " (expected sqlite, mysql or postgresql)");
+        };
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public String getDriverClassName() {
+        return driverClassName;
+    }
+
+    /**
+     * Port used when none is configured; 0 for SQLite.
+     */
+    public int getDefaultPort() {
+        return defaultPort;
+    }
+
+    /**
+     * Whether the database is a server shared by several connections of several servers,
+     * rather than a local file with a single writer.
+     */
+    public boolean isNetworked() {
+        return this != SQLITE;
+    }
+
+    /**
+     * Returns the JDBC URL of a database server.
+     */
+    public String jdbcUrl(String host, int port, String database, boolean ssl) {
+        return switch (this) {
+            case SQLITE -> throw new IllegalStateException("SQLite databases are files, not servers");
+            case MYSQL -> "jdbc:mysql://" + host + ":" + port + "/" + database
+                    + "?sslMode=" + (ssl ? "REQUIRED" : "DISABLED") + "&characterEncoding=UTF-8";
+            case POSTGRESQL -> "jdbc:postgresql://" + host + ":" + port + "/" + database
+                    + "?sslmode=" + (ssl ? "require" : "disable");
+        };
+    }
+
+    /**
+     * Driver properties of the connection pools. The batching properties make the drivers send
+     * a batch of inserts as multi-row statements instead of one round trip per row.
+     */
+    public Map<String, String> dataSourceProperties() {
+        return switch (this) {
+            case SQLITE -> Map.of();
+            case MYSQL -> Map.of(
+                    "rewriteBatchedStatements", "true",
+                    "cachePrepStmts", "true",
+                    "prepStmtCacheSize", "250",
+                    "prepStmtCacheSqlLimit", "2048",
+                    "useServerPrepStmts", "true",
+                    "useLocalSessionState", "true",
+                    "cacheServerConfiguration", "true",
+                    "elideSetAutoCommits", "true",
+                    "maintainTimeStats", "false");
+            case POSTGRESQL -> Map.of(
+                    "reWriteBatchedInserts", "true",
+                    "ApplicationName", "PluginManagerWeb");
+        };
+    }
+
+    /**
+     * Cuts a value stored in an indexed text column ({@code {KEY}}) to the length of the column:
+     * MySQL rejects longer values in strict mode, failing the whole statement. Other dialects keep it whole.
+     */
+    public String truncateKey(String value) {
+        if (this != MYSQL || value == null || value.length() <= MYSQL_KEY_LENGTH) {
+            return value;
+        }
+        // VARCHAR lengths count code points: never split a surrogate pair
+        int end = MYSQL_KEY_LENGTH;
+        if (Character.isHighSurrogate(value.charAt(end - 1))) {
+            end--;
+        }
+        return value.substring(0, end);
+    }
+
+    /**
+     * Whether the database refused a value of the statement (SQLSTATE class 22, data exception,
+     * or 23, constraint violation), rather than failing as a whole.
+     */
+    public static boolean isRejectedRow(SQLException e) {
+        String state = e.getSQLState();
+        return state != null && (state.startsWith("22") || state.startsWith("23"));
+    }
+
+    /**
+     * Quotes an identifier that is a reserved word in some dialect, such as {@code user}.
+     */
+    public String quote(String identifier) {
+        return quote + identifier + quote;
+    }
+
+    /**
+     * Replaces the type placeholders of a DDL statement: {@code {ID}} (auto-increment primary key),
+     * {@code {BIGINT}}, {@code {KEY}} (indexed text), {@code {TEXT}}, {@code {BLOB}} and
+     * {@code {TABLE_OPTIONS}}, which goes after the closing parenthesis of a CREATE TABLE.
+     */
+    public String ddl(String sql) {
+        String result = sql;
+        for (Map.Entry<String, String> type : types.entrySet()) {
+            result = result.replace("{" + type.getKey() + "}", type.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Returns an insert of one row that updates the row instead when one with the same keys exists.
+     */
+    public String upsert(String table, List<String> columns, List<String> keyColumns) {
+        String insert = "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES ("
+                + columns.stream().map(column -> "?").collect(Collectors.joining(", ")) + ")";
+        List<String> updated = columns.stream().filter(column -> !keyColumns.contains(column)).toList();
+        if (this == MYSQL) {
+            return insert + " ON DUPLICATE KEY UPDATE " + updated.stream()
+                    .map(column -> column + " = VALUES(" + column + ")")
+                    .collect(Collectors.joining(", "));
+        }
+        return insert + " ON CONFLICT (" + String.join(", ", keyColumns) + ") DO UPDATE SET " + updated.stream()
+                .map(column -> column + " = excluded." + column)
+                .collect(Collectors.joining(", "));
+    }
+
+    /**
+     * Takes the lock that keeps two servers from migrating a shared database at the same time.
+     * It belongs to the connection and must be released on it with {@link #unlockSchema}.
+     * SQLite needs none: its migrations run on the single writer connection.
+     */
+    void lockSchema(Statement stmt) throws SQLException {
+        String sql = switch (this) {
+            case SQLITE -> null;
+            case MYSQL -> "SELECT GET_LOCK('" + SCHEMA_LOCK_NAME + "', " + SCHEMA_LOCK_TIMEOUT_SECONDS + ")";
+            case POSTGRESQL -> "SELECT pg_advisory_lock(" + SCHEMA_LOCK_KEY + ")";
+        };
+        if (sql == null) {
+            return;
+        }
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            // GET_LOCK returns 0 on timeout; pg_advisory_lock waits and returns void
+            if (this == MYSQL && (!rs.next() || rs.getInt(1) != 1)) {
+                throw new SQLException("Timed out waiting for another server to finish migrating the database");
+            }
+        }
+    }
+
+    void unlockSchema(Statement stmt) throws SQLException {
+        String sql = switch (this) {
+            case SQLITE -> null;
+            case MYSQL -> "SELECT RELEASE_LOCK('" + SCHEMA_LOCK_NAME + "')";
+            case POSTGRESQL -> "SELECT pg_advisory_unlock(" + SCHEMA_LOCK_KEY + ")";
+        };
+        if (sql != null) {
+            stmt.executeQuery(sql).close();
+        }
+    }
+
+    /**
+     * Tries, without waiting, to take the lock that lets a single server at a time archive the shared
+     * audit_logs table. It belongs to the connection and must be released on it with {@link #unlockArchive}.
+     * @return false if another server holds it
+     */
+    boolean tryLockArchive(Statement stmt) throws SQLException {
+        String sql = switch (this) {
+            case SQLITE -> null;
+            case MYSQL -> "SELECT GET_LOCK('" + ARCHIVE_LOCK_NAME + "', 0)";
+            case POSTGRESQL -> "SELECT pg_try_advisory_lock(" + ARCHIVE_LOCK_KEY + ")";
+        };
+        if (sql == null) {
+            return true;
+        }
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            // 1 or true when taken; GET_LOCK returns NULL on error, read as false
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    void unlockArchive(Statement stmt) throws SQLException {
+        String sql = switch (this) {
+            case SQLITE -> null;
+            case MYSQL -> "SELECT RELEASE_LOCK('" + ARCHIVE_LOCK_NAME + "')";
+            case POSTGRESQL -> "SELECT pg_advisory_unlock(" + ARCHIVE_LOCK_KEY + ")";
+        };
+        if (sql != null) {
+            stmt.executeQuery(sql).close();
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package fr.matissead.pluginmanagerweb.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serializes the database writes of this server on a single connection owned by a dedicated thread.
+ * <p>
+ * SQLite allows one writer at a time: instead of letting pooled connections compete for the
+ * file lock (and fail with SQLITE_BUSY), writes are queued and the writer thread commits all
+ * the writes waiting at that moment in one transaction. Each write runs in its own savepoint,
+ * so a failing write is rolled back alone and reported to its submitter only. On MySQL and
+ * PostgreSQL, the group commits save a network round trip per write.
+ */
+public class WriteQueue implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(WriteQueue.class);
+
+    /**
+     * A unit of work run on the writer connection. It runs inside a transaction managed by
+     * the queue and must not commit, roll back or change the auto-commit mode.
+     */
+    @FunctionalInterface
+    public interface Write<T> {
+        T run(Connection conn) throws SQLException;
+    }
+
+    private record Task<T>(Write<T> write, CompletableFuture<T> future, boolean transactional) {
+    }
+
+    private final DataSource dataSource;
+    private final int batchSize;
+    private final BlockingQueue<Task<?>> queue;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // Statistics, only written by the writer thread
+    private volatile long transactions;
+    private volatile long completedWrites;
+    private volatile long failedWrites;
+    private volatile int maxBatch;
+    private volatile long totalCommitNanos;
+    private final AtomicLong submitted = new AtomicLong();
+
+    public WriteQueue(DataSource dataSource, int batchSize, int capacity) {
+        this.dataSource = dataSource;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.thread = new Thread(this::run, "PluginManagerWeb-DB-Writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues a write. Blocks while the queue is full.
+     * @return a future completed once the write is committed, or failed if it was rolled back
+     */
+    public <T> CompletableFuture<T> submit(Write<T> write) {
+        return submit(write, true);
+    }
+
+    private <T> CompletableFuture<T> submit(Write<T> write, boolean transactional) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (!running) {
+            future.completeExceptionally(new SQLException("Database writer is closed"));
+            return future;
+        }
+        try {
+            Task<T> task = new Task<>(write, future, transactional);
+            queue.put(task);
+            submitted.incrementAndGet();
+            if (!thread.isAlive() && queue.remove(task)) {
+                future.completeExceptionally(new SQLException("Database writer is closed"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(new SQLException("Interrupted while queueing a database write", e));
+        }
+        return future;
+    }
+
+    /**
+     * Queues a write and waits until it is committed.
+     */
+    public <T> T execute(Write<T> write) throws SQLException {
+        return await(write, true);
+    }
+
+    /**
+     * Queues a statement that cannot run inside a transaction (e.g. VACUUM) and waits until it
+     * completes. It runs alone, in auto-commit mode, between two group commits. It may run its
+     * own transactions, as long as it leaves the connection in auto-commit mode.
+     */
+    public <T> T executeOutsideTransaction(Write<T> write) throws SQLException {
+        return await(write, false);
+    }
+
+    private <T> T await(Write<T> write, boolean transactional) throws SQLException {
+        if (Thread.currentThread() == thread) {
+            throw new IllegalStateException("Writes cannot be queued from the database writer thread");
+        }
+        try {
+            return submit(write, transactional).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database write", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new SQLException(cause);
+        }
+    }
+
+    /**
+     * Returns the number of writes waiting for the writer thread.
+     */
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    /**
+     * Returns queue depth and group commit statistics.
+     */
+    public Map<String, Object> getStats() {
+        long commits = transactions;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pendingWrites", queue.size());
+        stats.put("submittedWrites", submitted.get());
+        stats.put("completedWrites", completedWrites);
+        stats.put("failedWrites", failedWrites);
+        stats.put("transactions", commits);
+        stats.put("avgWritesPerTransaction", commits > 0 ? (double) (completedWrites + failedWrites) / commits : 0.0);
+        stats.put("maxWritesPerTransaction", maxBatch);
+        stats.put("avgCommitMillis", commits > 0 ? totalCommitNanos / 1_000_000.0 / commits : 0.0);
+        return stats;
+    }
+
+    /**
+     * Stops accepting writes, commits the queued ones and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            logger.warn("Database writer did not stop in time, {} writes are lost", queue.size());
+            thread.interrupt();
+        }
+    }
+
+    private void run() {
+        List<Task<?>> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Task<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                commitInOrder(batch);
+            } catch (InterruptedException e) {
+                break;
+            } catch (RuntimeException e) {
+                logger.error("Unexpected error in the database writer", e);
+            } finally {
+                batch.clear();
+            }
+        }
+        Task<?> task;
+        while ((task = queue.poll()) != null) {
+            task.future().completeExceptionally(new SQLException("Database writer is closed"));
+        }
+    }
+
+    /**
+     * Commits the transactional writes of a batch together, running the others alone where they were queued.
+     */
+    private void commitInOrder(List<Task<?>> batch) {
+        int from = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            if (!batch.get(i).transactional()) {
+                if (i > from) {
+                    commit(batch.subList(from, i));
+                }
+                runAlone(batch.get(i));
+                from = i + 1;
+            }
+        }
+        if (from < batch.size()) {
+            commit(batch.subList(from, batch.size()));
+        }
+    }
+
+    /**
+     * Runs a write in auto-commit mode.
+     */
+    private void runAlone(Task<?> task) {
+        Object result = null;
+        Throwable error = null;
+        try (Connection conn = dataSource.getConnection()) {
+            result = task.write().run(conn);
+        } catch (SQLException | RuntimeException e) {
+            error = e;
+        }
+        complete(task, result, error);
+    }
+
+    /**
+     * Runs a batch of writes in one transaction, each in its own savepoint.
+     */
+    private void commit(List<Task<?>> batch) {
+        long start = System.nanoTime();
+        Object[] results = new Object[batch.size()];
+        Throwable[] errors = new Throwable[batch.size()];
+
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    Savepoint savepoint = batch.size() > 1 ? conn.setSavepoint() : null;
+                    try {
+                        results[i] = batch.get(i).write().run(conn);
+                        if (savepoint != null) {
+                            conn.releaseSavepoint(savepoint);
+                        }
+                    } catch (SQLException | RuntimeException e) {
+                        errors[i] = e;
+                        if (savepoint != null) {
+                            conn.rollback(savepoint);
+                        } else {
+                            conn.rollback();
+                        }
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                rollbackQuietly(conn);
+                failAll(errors, e);
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            failAll(errors, e);
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            complete(batch.get(i), results[i], errors[i]);
+        }
+        transactions++;
+        maxBatch = Math.max(maxBatch, batch.size());
+        totalCommitNanos += System.nanoTime() - start;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> void complete(Task<T> task, Object result, Throwable error) {
+        if (error != null) {
+            failedWrites++;
+            task.future().completeExceptionally(error);
+        } else {
+            completedWrites++;
+            task.future().complete((T) result);
+        }
+    }
+
+    private static void failAll(Throwable[] errors, SQLException cause) {
+        for (int i = 0; i < errors.length; i++) {
+            if (errors[i] == null) {
+                errors[i] = cause;
+            }
+        }
+    }
+
+    private static void rollbackQuietly(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            logger.warn("Failed to roll back a database write transaction", e);
+        }
+    }
+}
@@ -11,7 +11,8 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Authentication middleware for Javalin routes.
- * Validates tokens and enforces IP restrictions.
+ * Validates tokens and enforces IP restrictions. Rejected requests end with an {@link AccessDeniedException},
+ * so that the route handler never runs; {@code WebServer} maps it to the error response.
  */
 public class AuthMiddleware implements Handler {
     private static final Logger logger = LoggerFactory.getLogger(AuthMiddleware.class);
@@ -33,8 +34,7 @@ public class AuthMiddleware implements Handler {
         if (!webConfig.isIpAllowed(clientIp)) {
             logger.warn("Blocked access from unauthorized IP: {}", clientIp);
             logFailedAccess(clientIp, "IP_NOT_ALLOWED", ctx.path());
-            ctx.status(403).json(new ErrorResponse("Access denied from this IP address"));
-            return;
+            throw new AccessDeniedException(403, "Access denied from this IP address");
         }
         
         // Extract token from Authorization header
@@ -42,8 +42,7 @@ public class AuthMiddleware implements Handler {
         if (authHeader == null || !authHeader.startsWith("Bearer ")) {
             logger.warn("Missing or invalid Authorization header from IP: {}", clientIp);
             logFailedAccess(clientIp, "MISSING_TOKEN", ctx.path());
-            ctx.status(401).json(new ErrorResponse("Missing or invalid Authorization header"));
-            return;
+            throw new AccessDeniedException(401, "Missing or invalid Authorization header");
         }
         
         String token = authHeader.substring(7); // Remove "Bearer " prefix
@@ -52,8 +51,7 @@ public class AuthMiddleware implements Handler {
         if (session == null) {
             logger.warn("Invalid token from IP: {}", clientIp);
             logFailedAccess(clientIp, "INVALID_TOKEN", ctx.path());
-            ctx.status(401).json(new ErrorResponse("Invalid or expired token"));
-            return;
+            throw new AccessDeniedException(401, "Invalid or expired token");
         }
         
         // Store session in context for route handlers
@@ -69,6 +67,27 @@ public class AuthMiddleware implements Handler {
         auditLogDao.save(log);
     }
 
+    /**
+     * Ends a request rejected by the middleware, with its status and error response.
+     */
+    public static final class AccessDeniedException extends RuntimeException {
+        private final int status;
+
+        AccessDeniedException(int status, String message) {
+            // Control flow only: no stack trace
+            super(message, null, false, false);
+            this.status = status;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public ErrorResponse toResponse() {
+            return new ErrorResponse(getMessage());
+        }
+    }
+
     /**
          * Simple error response class for JSON serialization.
          */
@@ -115,8 +115,13 @@ class PluginManagerAPI {
         return this.request(`/api/plugins/${encodeURIComponent(name)}/metrics`);
     }
 
-    async getMetricsOverview() {
-        return this.request('/api/metrics/overview');
+    async getMetricsOverview(options = {}) {
+        const params = new URLSearchParams();
+        if (options.keys) params.set('keys', options.keys.join(','));
+        if (options.limit) params.set('limit', options.limit);
+        if (options.includeAll) params.set('include', 'all');
+        const query = params.toString();
+        return this.request(`/api/metrics/overview${query ? '?' + query : ''}`);
     }
 
     // WebSocket
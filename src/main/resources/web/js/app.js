@@ -320,12 +320,21 @@ const app = {
     
     async loadMetrics() {
         try {
-            const data = await window.api.getMetricsOverview();
+            const data = await window.api.getMetricsOverview({ includeAll: true });
+            const leaderboards = Object.entries(data.leaderboards).map(([key, entries]) => `
+                <div class="card mt-20">
+                    <h3>Top plugins: ${key}</h3>
+                    ${entries.length > 0 ?
+                        `<ol>${entries.map(e => `<li>${e.plugin}: ${e.value}</li>`).join('')}</ol>` :
+                        '<p>No data yet</p>'}
+                </div>
+            `).join('');
             const html = `
                 <div class="card">
                     <h3>Metrics Summary</h3>
                     <p>Plugins with metrics: ${data.summary.totalPluginsWithMetrics}</p>
                 </div>
+                ${leaderboards}
                 <div class="card mt-20">
                     <h3>All Metrics</h3>
                     <pre>${JSON.stringify(data.allMetrics, null, 2)}</pre>